@@ -5,91 +5,84 @@ import jason.asSyntax.Literal;
 import jason.bb.BeliefBase;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.logging.*;
 
+import example.ActionRegistry.ActionSchema;
+
 
 /**
  * Represents selection, execution and recovering an action performed by an agent.
+ * An Action holds no per-call state, so one runner can serve every agent. It changes beliefs through BeliefUpdate,
+ * which holds the lock of the agent's belief base while it does. Callers that execute whole actions, such as Env,
+ * also hold the agent's monitor so an action's precondition check, effects and recovery are not interleaved with
+ * another action of the same agent.
  */
 public class Action {
-    // Initialise Key Variables
-    BeliefBase bb;
-    boolean recoveryRequired;
-    List<Literal> predicate;
-    List<Literal> beliefsToAdd;
-    List<Literal> beliefsToDelete;
-
     /**
-     * Choice of Planner: Offline (1) or Online (2)
+     * Choice of Planner: Offline (1), Online (2), Offline with the built-in STRIPS planner (3), Online with
+     * execution monitoring (4), which plans once and only replans when the world diverges from the plan, or Offline
+     * with the planner portfolio (5), which races several planners and uses the first valid plan, or Online with the
+     * built-in STRIPS planner (6), which reuses what its previous search learned instead of starting again
      */
-    public int typeOfPlanning = 2;
+    public final int typeOfPlanning;
+
+    // Type of planning of runners created without one, set with -Dplanning.type=n
+    private static final int TYPE_OF_PLANNING = Integer.getInteger("planning.type", 2);
 
     // Logger for normal logging
     private Logger logger = Logger.getLogger("t1."+Env.class.getName());
     // Logger for recovery logging
     private Logger recoveryLogger = Logger.getLogger("t1."+"Recovery");
 
-   /**
+    /**
+     * Creates an action runner with the configured type of planning, online (2) unless -Dplanning.type is set.
+     */
+    public Action() {
+        this(TYPE_OF_PLANNING);
+    }
+
+    /**
+     * Creates an action runner with a type of planning.
+     * @param typeOfPlanning The type of planning, 1 to 6, any other value plans online (2).
+     */
+    public Action(int typeOfPlanning) {
+        this.typeOfPlanning = typeOfPlanning;
+    }
+
+    /**
      * Selects and executes the corresponding action.
+     * The preconditions and effects of each action are read from domain.pddl by the ActionRegistry.
      * @param ag The agent performing the action.
      * @param action The name of the action to execute.
      * @return True if the action was executed successfully, otherwise false.
      */
     public boolean startAction(Agent ag, String action) {
-        logger.info(getAgName(ag)+" executing: " + action); 
-        
-        predicate = new ArrayList<>();
-        beliefsToAdd = new ArrayList<>();
-        beliefsToDelete = new ArrayList<>();
-        
-        if (action.equals("buyphone")) {
-            boolean success = buyPhone(ag, action);
-            if(success) {return true;} else {return false;}
-        }
+        return startAction(ag, action, null);
+    }
 
-        if (action.equals("dochores")) {
-            boolean success = doChores(ag, action);
-            if(success) {return true;} else {return false;}
-        }
+    /**
+     * Selects and executes the corresponding action as a step of a recovery, so a recovery it needs spends the same
+     * budget instead of starting a new one.
+     * @param ag The agent performing the action.
+     * @param action The name of the action to execute.
+     * @param budget The budget of the recovery executing the action, or null if it is not part of a recovery.
+     * @return True if the action was executed successfully, otherwise false.
+     */
+    public boolean startAction(Agent ag, String action, RecoveryBudget budget) {
+        logger.info(getAgName(ag)+" executing: " + action); 
 
-        if (action.equals("earnsalary")) {
-            boolean success = earnSalary(ag, action);
-            if(success) {return true;} else {return false;}
+        ActionSchema schema = null;
+        try {schema = ActionRegistry.getInstance().get(action);} catch (Exception e) {e.printStackTrace();}
+        if (schema == null) {
+            logger.info(action+" not Implemented....");
+            return false;
         }
 
-        if (action.equals("usephone")) {
-            boolean success = usePhone(ag, action);
-            if(success) {return true;} else {return false;}
-        }   
-
-        if (action.equals("textfriend")) {
-            boolean success = textFriend(ag, action);
-            if(success) {return true;} else {return false;}
-        }    
-
-        if (action.equals("gooffphone")) {
-            boolean success = goOffPhone(ag, action);
-            if(success) {return true;} else {return false;}
-        }     
-
-        if (action.equals("gotogym")) {
-            boolean success = goToGym(ag, action);
-            if(success) {return true;} else {return false;}
-        }     
-
-        if (action.equals("getincar")) {
-            boolean success = getInCar(ag, action);
-            if(success) {return true;} else {return false;}
-        }     
-
-        if (action.equals("gotowork")) {
-            boolean success = goToWork(ag, action);
-            if(success) {return true;} else {return false;}
-        }     
-
-        logger.info(action+" not Implemented....");
-        return false;    
+        List<Literal> predicate = schema.getPreconditions().isEmpty() ? null : schema.getPreconditions();
+        boolean success = runAction(ag, action, predicate, schema.getAddList(), schema.getDeleteList(), budget);
+        if(success) {return true;} else {return false;}
     }
 
     /**
@@ -102,35 +95,41 @@ public class Action {
      * @return True if the action was executed successfully, otherwise false.
      */
     public Boolean runAction(Agent ag, String action, List<Literal> predicate, List<Literal> beliefsToAdd, List<Literal> beliefsToDelete) { // Could make the literals lists
-        bb = ag.getBB(); 
-        recoveryRequired = false;
+        return runAction(ag, action, predicate, beliefsToAdd, beliefsToDelete, null);
+    }
+
+    /**
+     * Runs the selected action as a step of a recovery, so a recovery it needs spends the same budget.
+     * @param ag The agent performing the action.
+     * @param action The name of the action to execute.
+     * @param predicate The predicate associated with the action.
+     * @param beliefsToAdd The beliefs to add after executing the action.
+     * @param beliefsToDelete The beliefs to delete after executing the action.
+     * @param budget The budget of the recovery executing the action, or null if it is not part of a recovery.
+     * @return True if the action was executed successfully, otherwise false.
+     */
+    public Boolean runAction(Agent ag, String action, List<Literal> predicate, List<Literal> beliefsToAdd, List<Literal> beliefsToDelete, RecoveryBudget budget) {
+        BeliefBase bb = ag.getBB(); 
+        boolean recoveryRequired = false;
 
-        // No Predicate... add/del beliefs
+        // No Predicate... add/del beliefs, all together or none
         if (predicate == null) {
-            try {
-                if(beliefsToAdd != null) {for (Literal belief : beliefsToAdd) {ag.addBel(belief);}}
-                if(beliefsToDelete != null) {for (Literal belief : beliefsToDelete) {ag.delBel(belief);}}
-                return true; // Ran action successfully
-            } catch (Exception e) {e.printStackTrace();}    
+            return BeliefUpdate.apply(ag, beliefsToAdd, beliefsToDelete);
         }
 
         // Checks if all predicates are in ag beliefbase
         boolean allBelsPresent = false;
         allBelsPresent = allBeliefsPresent(bb, predicate);
 
-        // If all predicates in bb add/del bels...
+        // If all predicates in bb add/del bels, all together or none...
         if (allBelsPresent) { 
-            try {
-                if(beliefsToAdd != null) {for (Literal belief : beliefsToAdd) {ag.addBel(belief);}}
-                if(beliefsToDelete != null) {for (Literal belief : beliefsToDelete) {ag.delBel(belief);}}
-                return true; // Ran action successfully
-            } catch (Exception e) {e.printStackTrace();}         
+            return BeliefUpdate.apply(ag, beliefsToAdd, beliefsToDelete);
         } else { 
             recoveryRequired = true; // if all predicates not present... recovery required...
         }
 
         if(recoveryRequired) { // Extract Knowledge for Failure Recovery...
-            boolean success = recoveryOperation(ag, action, predicate); // Change type of Planning to swap between OFFLINE (1) and ONLINE (2)
+            boolean success = recoveryOperation(ag, action, predicate, budget); // Change type of Planning to swap between OFFLINE (1) and ONLINE (2)
             if(success) {return true;} else {return false;}
         }
 
@@ -143,91 +142,132 @@ public class Action {
      * @param ag The agent for which the recovery operation is performed.
      * @param action The action to be executed during the recovery operation.
      * @param predicates The list of predicates representing the desired state to recover.
+     * @param outer The budget of the recovery this one is nested in, or null to start a new budget.
      * @return True if the recovery operation succeeds, otherwise false.
      */
-    private boolean recoveryOperation(Agent ag, String action, List<Literal> predicates) {
+    private boolean recoveryOperation(Agent ag, String action, List<Literal> predicates, RecoveryBudget outer) {
+        // A nested recovery is part of the outer one, which reports it when it finishes
+        if (outer != null) {
+            outer.enterNested();
+            try {return recover(ag, action, predicates, outer);} finally {outer.leaveNested();}
+        }
+        RecoveryBudget budget = RecoveryBudget.start();
+        return recorded(recover(ag, action, predicates, budget), budget);
+    }
+
+    /**
+     * Recovers the predicates of an action and executes it, spending the given budget.
+     * 
+     * @param ag The agent for which the recovery operation is performed.
+     * @param action The action to be executed during the recovery operation.
+     * @param predicates The list of predicates representing the desired state to recover.
+     * @param budget The budget of the recovery.
+     * @return True if the recovery operation succeeds, otherwise false.
+     */
+    private boolean recover(Agent ag, String action, List<Literal> predicates, RecoveryBudget budget) {
 
         // Extract Beliefs, Find which predicates are not in bb...
-        List<String> beliefs = extractBeliefs(ag);
-        List<String> goalStates = findPredicates(beliefs, predicates); 
+        List<String> predicateStrings = new ArrayList<>();
+        for (Literal pred : predicates) {predicateStrings.add(pred.toString());}
+        BitSet facts = FactTable.snapshot(ag);
+        List<String> beliefs = FactTable.names(facts);
+        List<String> goalStates = FactTable.missing(facts, predicateStrings); 
+        PlanningConfig config = PlanningConfig.forAgent(ag);
+
+        // Goals no action can reach fail at once, without running a search
+        List<String> unreachable = RunPlanner.unreachable(beliefs, goalStates);
+        if (!unreachable.isEmpty()) {
+            recoveryLogger.info(getAgName(ag)+" --> Action Predicate Failure --> Unreachable "+unreachable);
+            return false;
+        }
 
-        // If Type of planning selected is invalid... Default to Online
-        if (typeOfPlanning != 1 && typeOfPlanning != 2) {
+        // If Type of planning selected is invalid... Default to Online, for this recovery only
+        int typeOfPlanning = this.typeOfPlanning;
+        if (typeOfPlanning < 1 || typeOfPlanning > 6) {
             recoveryLogger.info("Invalid Type of Planning Selected... Defaulting to Online Planning");
             typeOfPlanning = 2;
         }
 
-        // Offline Planning
-        if (typeOfPlanning == 1) {
-            List<String> plan = RunPlanner.run(getAgName(ag), beliefs, goalStates, 1); 
-            if(plan.isEmpty()){
-                System.out.println("An error occured with the planner");
-                System.out.println("To debug: Go to RunPlanner.java and print the output.");
-                return false;
-            }
-            recoveryLogger.info(getAgName(ag)+" --> Action Predicate Failure --> "+plan);
-            for (String act : plan) {
-                boolean success = startAction(ag, act.toLowerCase()); 
-                if (!success) {recoveryLogger.info("Recovery failure");}
+        // Offline Planning (FF, built-in STRIPS planner or portfolio), planning again if the plan falls short
+        if (typeOfPlanning == 1 || typeOfPlanning == 3 || typeOfPlanning == 5) {
+            while (goalStates.size() != 0) {
+                if (!budget.plannerCall()) {return stopped(ag, budget);}
+                List<String> plan = RunPlanner.run(getAgName(ag), beliefs, goalStates, typeOfPlanning, budget.getDeadline(), config); 
+                if(plan.isEmpty()){
+                    if (budget.expired()) {return stopped(ag, budget);}
+                    System.out.println("An error occured with the planner");
+                    System.out.println("To debug: Go to RunPlanner.java and print the output.");
+                    return false;
+                }
+                recoveryLogger.info(getAgName(ag)+" --> Action Predicate Failure --> "+plan);
+                for (String act : plan) {
+                    if (!budget.action()) {return stopped(ag, budget);}
+                    boolean success = startAction(ag, act.toLowerCase(), budget); 
+                    if (success) {budget.executed(act.toLowerCase());} else {recoveryLogger.info("Recovery failure");}
+                }
+                facts = FactTable.snapshot(ag);
+                beliefs = FactTable.names(facts);
+                goalStates = FactTable.missing(facts, predicateStrings);
             }
         }
 
-        // Online Planning
-        if (typeOfPlanning==2) {
+        // Online Planning, with PDDL4J (2) or the incremental built-in STRIPS planner (6)
+        if (typeOfPlanning == 2 || typeOfPlanning == 6) {
             while (goalStates.size() != 0) {
-                List<String> plan = RunPlanner.run(getAgName(ag), beliefs, goalStates, 2); 
+                if (!budget.plannerCall()) {return stopped(ag, budget);}
+                List<String> plan = RunPlanner.run(getAgName(ag), beliefs, goalStates, typeOfPlanning, budget.getDeadline(), config); 
                 if(plan.isEmpty()){
+                    if (budget.expired()) {return stopped(ag, budget);}
                     System.out.println("An error occured with the planner");
                     System.out.println("To debug: Go to RunPlanner.java and print the output.");
                     return false;
                 }
                 recoveryLogger.info(getAgName(ag)+" --> Action Predicate Failure --> Running Action --> "+plan.get(0).toString() );
                 
-                boolean success = startAction(ag, plan.get(0).toLowerCase()); //execute action .get(0) as simulating online using FF
-                if (!success) {recoveryLogger.info("Recovery failure");}
-                beliefs = extractBeliefs(ag); //Check env again
-                goalStates = findPredicates(beliefs, predicates); //Recheck
+                if (!budget.action()) {return stopped(ag, budget);}
+                boolean success = startAction(ag, plan.get(0).toLowerCase(), budget); //execute action .get(0) as simulating online using FF
+                if (success) {budget.executed(plan.get(0).toLowerCase());} else {recoveryLogger.info("Recovery failure");}
+                facts = FactTable.snapshot(ag); //Check env again
+                beliefs = FactTable.names(facts);
+                goalStates = FactTable.missing(facts, predicateStrings); //Recheck
             }
         }
 
+        // Online Planning with execution monitoring
+        if (typeOfPlanning == 4) {
+            boolean recovered = new PlanMonitor(getAgName(ag)+" --> Action Predicate Failure").achieve(ag, this, predicateStrings, budget, config);
+            if (!recovered) {return budget.getReason() != null ? stopped(ag, budget) : false;}
+        }
+
         // Execute Original Action
-        boolean success = startAction(ag, action.toLowerCase());
-        if (success) {return true;}else {return false;}
+        return startAction(ag, action.toLowerCase(), budget);
     }
 
     /**
-     * Checks which predicates are present in the belief base.
-     * @param beliefs The list of beliefs.
-     * @param predicates The list of predicates to check.
-     * @return The list of predicates that are missing from the belief base.
+     * Logs a recovery that ran out of budget.
+     * 
+     * @param ag The agent.
+     * @param budget The budget of the recovery.
+     * @return False, the recovery failed.
      */
-    private static List<String> findPredicates(List<String> beliefs, List<Literal> predicates) {
-        List<String> missingPredicates = new ArrayList<>();
-        for (Literal pred : predicates) {
-            if (!beliefs.contains(pred.toString())) {
-                missingPredicates.add(pred.toString());
-            }
-        }
-        return missingPredicates;
+    private boolean stopped(Agent ag, RecoveryBudget budget) {
+        recoveryLogger.info(getAgName(ag)+" --> Action Predicate Failure --> Recovery Stopped, "+budget.getReason());
+        return false;
     }
 
     /**
-     * Extracts beliefs from the agent's belief base, filtering out KQML beliefs and irrelevant sources.
-     * @param ag The agent.
-     * @return The list of filtered beliefs.
+     * Reports a finished recovery to the planning metrics, and the actions of a successful one to the macro library.
+     * 
+     * @param success True if the recovery succeeded.
+     * @param budget The budget of the recovery.
+     * @return The success of the recovery.
      */
-    public List<String> extractBeliefs(Agent ag) {
-        List<String> filteredBeliefs = new ArrayList<>();
-        for (Literal b : ag.getBB()) {
-            String beliefString = b.toString();
-            if (!beliefString.startsWith("kqml")) {
-                beliefString = beliefString.replace("[source(self)]", "").replace("[source(percepts)]", "");
-                filteredBeliefs.add(beliefString.trim());
-            }
-        }
-        return filteredBeliefs;
+    private boolean recorded(boolean success, RecoveryBudget budget) {
+        PlanningMetrics.getInstance().recordRecovery(PlanningMetrics.ACTION, budget, success);
+        if (success) {MacroLibrary.getInstance().record(budget.getSteps());}
+        return success;
     }
-    
+
     /**
      * Checks if all predicates are present in the belief base.
      * @param beliefBase The belief base to check.
@@ -251,107 +291,4 @@ public class Action {
     private String getAgName(Agent ag) {
         return ag.getTS().getAgArch().getAgName();
     }
-
-    /* When creating your customActionFunction(Agent ag, String action) -- Must these contain arguments at minimum
-     * To add predicates use: predicate.add(Literal)
-     * To add beliefs use: beliefsToAdd.add(Literal)
-     * To delete beliefs use: beliefsToDelete(literal)
-     * 
-     * Once you are happy with what your function will do use:
-     * boolean success = runAction(Agent ag, String action, List<Literal> predicate, List<Literal> beliefsToAdd, List<Literal> beliefsToDelete)
-     * if you are not using a variable replace with null.
-     * 
-     * Followed by
-     * if(success) {return true;} else {return false;}
-     */
-
-    // Action 1
-    private boolean doChores(Agent ag, String action) {
-        beliefsToAdd.add(Literal.parseLiteral("hasMoney"));
-        beliefsToAdd.add(Literal.parseLiteral("parentsHappy"));
-
-        boolean success = runAction(ag, action, null, beliefsToAdd, null);
-        if(success) {return true;} else {return false;}
-    }
-
-    // Action 2
-    private boolean buyPhone(Agent ag, String action) {
-        predicate.add(Literal.parseLiteral("hasMoney"));
-        beliefsToAdd.add(Literal.parseLiteral("hasPhone"));
-        beliefsToDelete.add(Literal.parseLiteral("hasMoney"));
-
-        Boolean success = runAction(ag, action, predicate, beliefsToAdd, beliefsToDelete);
-        if(success) {return true;} else {return false;}
-    }
-
-    // Action 3
-    private boolean earnSalary(Agent ag, String action) {
-        beliefsToAdd.add(Literal.parseLiteral("hasMoney"));
-
-        boolean success = runAction(ag, action, null, beliefsToAdd, null);
-        if(success) {return true;} else {return false;}
-    }
-
-    // Action 4
-    private boolean textFriend(Agent ag, String action) {
-        predicate.add(Literal.parseLiteral("onPhone"));
-        predicate.add(Literal.parseLiteral("hasPhone"));
-        beliefsToAdd.add(Literal.parseLiteral("messageSent"));
-
-        Boolean success = runAction(ag, action, predicate, beliefsToAdd, null);
-        if(success) {return true;} else {return false;}
-    }
-
-    // Action 5
-    private boolean usePhone(Agent ag, String action) {
-        predicate.add(Literal.parseLiteral("hasPhone"));
-        beliefsToAdd.add(Literal.parseLiteral("onPhone"));
-
-        Boolean success = runAction(ag, action, predicate, beliefsToAdd, null);
-        if(success) {return true;} else {return false;}
-    }
-
-    // Action 6
-    private boolean goOffPhone(Agent ag, String action) {
-        predicate.add(Literal.parseLiteral("hasPhone"));
-        predicate.add(Literal.parseLiteral("onPhone"));
-
-        beliefsToDelete.add(Literal.parseLiteral("onPhone"));
-        Boolean success = runAction(ag, action, predicate, null, beliefsToDelete);
-        if(success) {return true;} else {return false;}
-    }
-    // Action 7
-    private boolean goToGym(Agent ag, String action) {
-        predicate.add(Literal.parseLiteral("motivated"));
-        predicate.add(Literal.parseLiteral("inCar"));
-
-        beliefsToAdd.add(Literal.parseLiteral("atGym"));
-        beliefsToAdd.add(Literal.parseLiteral("hungry"));
-        beliefsToAdd.add(Literal.parseLiteral("happy"));
-
-        Boolean success = runAction(ag, action, predicate, beliefsToAdd, null);
-        if(success) {return true;} else {return false;}
-    }
-    // Action 8
-    private boolean getInCar(Agent ag, String action) {
-        predicate.add(Literal.parseLiteral("hasCar"));
-
-        beliefsToAdd.add(Literal.parseLiteral("inCar"));
-        beliefsToDelete.add(Literal.parseLiteral("atHome"));
-
-        Boolean success = runAction(ag, action, predicate, beliefsToAdd, beliefsToDelete);
-        if(success) {return true;} else {return false;}
-    }
-    // Action 9
-    private boolean goToWork(Agent ag, String action) {
-        predicate.add(Literal.parseLiteral("inCar"));
-
-        beliefsToAdd.add(Literal.parseLiteral("atWork"));
-        beliefsToAdd.add(Literal.parseLiteral("tired"));
-        beliefsToAdd.add(Literal.parseLiteral("bossHappy"));
-
-        Boolean success = runAction(ag, action, predicate, beliefsToAdd, null);
-        if(success) {return true;} else {return false;}
-    }
 }
-
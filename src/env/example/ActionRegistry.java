@@ -0,0 +1,429 @@
+package example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import jason.asSemantics.Unifier;
+import jason.asSyntax.Literal;
+import jason.asSyntax.Term;
+import jason.asSyntax.VarTerm;
+
+/**
+ * The ActionRegistry class holds the actions of domain.pddl as pre-parsed preconditions, add lists and delete lists,
+ * so the effects the agents execute and the model the planners use come from the same file. The registry is built
+ * once and only rebuilt when the modification time of the file changes.
+ * Actions with parameters are looked up by name and arity, e.g. go(home,shop), and grounded on first use.
+ * Actions the registry cannot execute, e.g. with negative preconditions, are left out of every planner's domain too,
+ * so no plan ever contains them.
+ */
+public class ActionRegistry {
+    // Predicate that PDDLGenerator always writes to :init, it is not a belief the agent has to hold
+    private static final String DUMMY_PREDICATE = "dummypredicate";
+    // Maximum number of ground actions kept, set with -Dgrounding.actions=n
+    private static final int MAX_GROUNDED = Integer.getInteger("grounding.actions", 1024);
+
+    // Currently loaded registry, replaced when domain.pddl changes
+    private static volatile ActionRegistry instance;
+
+    private Logger logger = Logger.getLogger("t1."+ActionRegistry.class.getName());
+
+    private final long lastModified;
+    private final Map<String, ActionSchema> actions = new HashMap<>();
+    // Actions with parameters by name and arity, e.g. "go/2", and the ground actions looked up, least recently used first
+    private final Map<String, ActionSchema> lifted = new HashMap<>();
+    private final Map<String, ActionSchema> grounded = new LinkedHashMap<String, ActionSchema>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ActionSchema> eldest) {
+            return size() > MAX_GROUNDED;
+        }
+    };
+    // Names of the actions that are not supported, and the text of the domain they were read from
+    private final Set<String> rejected = new HashSet<>();
+    private final String domain;
+
+    /**
+     * Returns the registry for the current domain.pddl, rebuilding it if the file has changed since it was last read.
+     *
+     * @return The action registry.
+     * @throws IOException If the domain file cannot be read.
+     */
+    public static ActionRegistry getInstance() throws IOException {
+        long modified = new File(DomainCache.DOMAIN_FILE).lastModified();
+        ActionRegistry current = instance;
+        if (current != null && current.lastModified == modified) {return current;}
+        synchronized (ActionRegistry.class) {
+            if (instance == null || instance.lastModified != modified) {
+                instance = new ActionRegistry(modified, new String(Files.readAllBytes(Paths.get(DomainCache.DOMAIN_FILE)), StandardCharsets.UTF_8));
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Builds a registry for a domain file other than domain.pddl, without caching it, e.g. for benchmarks.
+     *
+     * @param file The domain file.
+     * @return The action registry.
+     * @throws IOException If the domain file cannot be read.
+     */
+    public static ActionRegistry load(String file) throws IOException {
+        return new ActionRegistry(new File(file).lastModified(), new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Builds a registry from the text of a PDDL domain.
+     *
+     * @param lastModified The modification time of the domain file.
+     * @param domain The text of the domain.
+     */
+    ActionRegistry(long lastModified, String domain) {
+        this.lastModified = lastModified;
+        this.domain = domain;
+        Map<String, Literal> facts = new HashMap<>();
+        for (Object element : parse(domain)) {
+            if (!(element instanceof List) || !":action".equals(head(element))) {continue;}
+            List<?> definition = (List<?>) element;
+            String name = definition.get(1).toString();
+            try {
+                ActionSchema schema = schema(name, definition, facts);
+                if (schema.parameters.isEmpty()) {actions.put(name.toLowerCase(), schema);} else {lifted.put(name.toLowerCase() + "/" + schema.parameters.size(), schema);}
+            } catch (IllegalArgumentException e) {
+                rejected.add(name.toLowerCase());
+                logger.info("Action " + name + " in " + DomainCache.DOMAIN_FILE + " is not supported and is left out of planning: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Looks up an action by name, ignoring case. Actions with arguments, e.g. go(home,shop), are grounded from the
+     * action with those parameters.
+     *
+     * @param name The name of the action.
+     * @return The action, or null if the domain has no such action.
+     */
+    public ActionSchema get(String name) {
+        ActionSchema action = actions.get(name.toLowerCase());
+        if (action != null || lifted.isEmpty() || name.indexOf('(') < 0) {return action;}
+        synchronized (grounded) {action = grounded.get(name.toLowerCase());}
+        if (action != null) {return action;}
+        Literal call;
+        try {
+            call = Literal.parseLiteral(name);
+        } catch (Exception e) {
+            return null;
+        }
+        ActionSchema schema = lifted.get(call.getFunctor().toLowerCase() + "/" + call.getArity());
+        if (schema == null) {return null;}
+        action = schema.ground(call.getTerms());
+        synchronized (grounded) {grounded.put(name.toLowerCase(), action);}
+        return action;
+    }
+
+    /**
+     * Gets the number of actions in the registry.
+     *
+     * @return The number of actions.
+     */
+    public int size() {
+        return actions.size() + lifted.size();
+    }
+
+    /**
+     * Checks if an action of the domain is not supported, so the planners must not use it.
+     *
+     * @param name The name of the action schema.
+     * @return True if the action was rejected, false otherwise.
+     */
+    public boolean isRejected(String name) {
+        return rejected.contains(name.toLowerCase());
+    }
+
+    /**
+     * Checks if any action of the domain is not supported.
+     *
+     * @return True if an action was rejected, false otherwise.
+     */
+    public boolean hasRejected() {
+        return !rejected.isEmpty();
+    }
+
+    /**
+     * Gets the text of the domain without the actions that are not supported, for planners that read the domain
+     * themselves.
+     *
+     * @return The text of the domain, unchanged if every action is supported.
+     */
+    public String getSupportedDomain() {
+        if (rejected.isEmpty()) {return domain;}
+        StringBuilder supported = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < domain.length()) {
+            char c = domain.charAt(i);
+            if (c == ';') {
+                int end = domain.indexOf('\n', i);
+                end = end < 0 ? domain.length() : end;
+                supported.append(domain, i, end);
+                i = end;
+                continue;
+            }
+            // Actions are the children of (define ...), so they open at depth 1
+            if (c == '(' && depth == 1 && rejected.contains(actionName(i))) {
+                i = closing(i) + 1;
+                continue;
+            }
+            if (c == '(') {depth++;} else if (c == ')') {depth--;}
+            supported.append(c);
+            i++;
+        }
+        return supported.toString();
+    }
+
+    /**
+     * Gets the name of the action defined by the expression opening at a position of the domain.
+     *
+     * @param open The position of the opening bracket.
+     * @return The name of the action in lower case, or null if the expression is not an action.
+     */
+    private String actionName(int open) {
+        String[] symbols = domain.substring(open + 1, Math.min(domain.length(), open + 256)).trim().split("[\\s()]+", 3);
+        if (symbols.length < 2 || !symbols[0].equalsIgnoreCase(":action")) {return null;}
+        return symbols[1].toLowerCase();
+    }
+
+    /**
+     * Finds the bracket closing the expression opening at a position of the domain, skipping comments.
+     *
+     * @param open The position of the opening bracket.
+     * @return The position of the closing bracket, or the last position if it is not closed.
+     */
+    private int closing(int open) {
+        int depth = 0;
+        for (int i = open; i < domain.length(); i++) {
+            char c = domain.charAt(i);
+            if (c == ';') {
+                int end = domain.indexOf('\n', i);
+                if (end < 0) {break;}
+                i = end;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return domain.length() - 1;
+    }
+
+    /**
+     * Builds the schema of one action definition.
+     *
+     * @param name The name of the action.
+     * @param definition The parsed (:action ...) expression.
+     * @param facts The literals parsed so far, shared between actions.
+     * @return The schema.
+     */
+    private static ActionSchema schema(String name, List<?> definition, Map<String, Literal> facts) {
+        List<String> parameters = new ArrayList<>();
+        List<Literal> preconditions = new ArrayList<>();
+        List<Literal> addList = new ArrayList<>();
+        List<Literal> deleteList = new ArrayList<>();
+        for (int i = 2; i + 1 < definition.size(); i += 2) {
+            String key = definition.get(i).toString().toLowerCase();
+            Object value = definition.get(i + 1);
+            if (key.equals(":parameters")) {
+                if (!(value instanceof List)) {throw new IllegalArgumentException("parameters");}
+                // Types are left to the planners, only the names of the parameters are kept
+                for (Object parameter : (List<?>) value) {
+                    if (parameter.toString().startsWith("?")) {parameters.add(parameter.toString().toLowerCase());}
+                }
+            } else if (key.equals(":precondition")) {
+                List<Literal> negative = new ArrayList<>();
+                collect(value, preconditions, negative, facts, parameters);
+                if (!negative.isEmpty()) {throw new IllegalArgumentException("negative preconditions");}
+            } else if (key.equals(":effect")) {
+                collect(value, addList, deleteList, facts, parameters);
+            }
+        }
+        return new ActionSchema(name, parameters, preconditions, addList, deleteList);
+    }
+
+    /**
+     * Collects the literals of a conjunction of atoms and negated atoms. The parameters of an action become the
+     * variables P0, P1, ... of its literals.
+     *
+     * @param expression The parsed expression.
+     * @param positive The list receiving the atoms.
+     * @param negative The list receiving the negated atoms.
+     * @param facts The literals parsed so far, shared between actions.
+     * @param parameters The parameters of the action.
+     */
+    private static void collect(Object expression, List<Literal> positive, List<Literal> negative, Map<String, Literal> facts, List<String> parameters) {
+        if (!(expression instanceof List)) {throw new IllegalArgumentException("unexpected " + expression);}
+        List<?> list = (List<?>) expression;
+        if (list.isEmpty()) {return;}
+        String head = head(list);
+        if (head == null) {throw new IllegalArgumentException("unexpected " + list);}
+        if (head.equalsIgnoreCase("and")) {
+            for (Object child : list.subList(1, list.size())) {collect(child, positive, negative, facts, parameters);}
+        } else if (head.equalsIgnoreCase("not") && list.size() == 2) {
+            collect(list.get(1), negative, positive, facts, parameters);
+        } else if (list.size() == 1) {
+            if (head.equalsIgnoreCase(DUMMY_PREDICATE)) {return;}
+            positive.add(facts.computeIfAbsent(head, Literal::parseLiteral));
+        } else if (list.subList(1, list.size()).stream().allMatch(argument -> argument instanceof String)) {
+            StringBuilder atom = new StringBuilder(head).append('(');
+            for (int i = 1; i < list.size(); i++) {
+                String argument = list.get(i).toString().toLowerCase();
+                int parameter = parameters.indexOf(argument);
+                if (argument.startsWith("?") && parameter < 0) {throw new IllegalArgumentException("unknown parameter " + argument);}
+                atom.append(i > 1 ? "," : "").append(parameter >= 0 ? "P" + parameter : argument);
+            }
+            positive.add(facts.computeIfAbsent(atom.append(')').toString(), Literal::parseLiteral));
+        } else {
+            throw new IllegalArgumentException(head + " expressions");
+        }
+    }
+
+    /**
+     * Gets the first symbol of a parsed list.
+     *
+     * @param expression The parsed expression.
+     * @return The first symbol, or null if there is none.
+     */
+    private static String head(Object expression) {
+        if (!(expression instanceof List) || ((List<?>) expression).isEmpty()) {return null;}
+        Object first = ((List<?>) expression).get(0);
+        return first instanceof String ? (String) first : null;
+    }
+
+    /**
+     * Parses PDDL text into nested lists of symbols, keeping the case of every symbol.
+     *
+     * @param text The PDDL text.
+     * @return The elements of the outermost (define ...) expression.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Object> parse(String text) {
+        List<List<Object>> stack = new ArrayList<>();
+        List<Object> current = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == ';') {
+                while (i < text.length() && text.charAt(i) != '\n') {i++;}
+            } else if (c == '(') {
+                stack.add(current);
+                current = new ArrayList<>();
+                i++;
+            } else if (c == ')') {
+                if (stack.isEmpty()) {throw new IllegalStateException("Unbalanced ) in " + DomainCache.DOMAIN_FILE);}
+                List<Object> done = current;
+                current = stack.remove(stack.size() - 1);
+                current.add(done);
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else {
+                int start = i;
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i)) && "();".indexOf(text.charAt(i)) < 0) {i++;}
+                current.add(text.substring(start, i));
+            }
+        }
+        for (Object element : current) {
+            if ("define".equals(head(element))) {return (List<Object>) element;}
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * The preconditions and effects of one action.
+     * The literals are shared, so they are copied before they are handed to an agent, which annotates the literals it
+     * adds to its belief base.
+     */
+    public static final class ActionSchema {
+        private final String name;
+        private final List<String> parameters;
+        private final List<Literal> preconditions;
+        private final List<Literal> addList;
+        private final List<Literal> deleteList;
+
+        ActionSchema(String name, List<String> parameters, List<Literal> preconditions, List<Literal> addList, List<Literal> deleteList) {
+            this.name = name;
+            this.parameters = Collections.unmodifiableList(parameters);
+            this.preconditions = Collections.unmodifiableList(preconditions);
+            this.addList = Collections.unmodifiableList(addList);
+            this.deleteList = Collections.unmodifiableList(deleteList);
+        }
+
+        public String getName() {return name;}
+
+        /**
+         * Gets the names of the parameters of the action.
+         *
+         * @return The parameters, empty for a ground action.
+         */
+        public List<String> getParameters() {return parameters;}
+
+        /**
+         * Gets the beliefs the agent must hold to execute the action.
+         *
+         * @return The preconditions, which must not be modified.
+         */
+        public List<Literal> getPreconditions() {return preconditions;}
+
+        /**
+         * Gets fresh copies of the beliefs the action adds.
+         *
+         * @return The add list.
+         */
+        public List<Literal> getAddList() {return copy(addList);}
+
+        /**
+         * Gets fresh copies of the beliefs the action deletes.
+         *
+         * @return The delete list.
+         */
+        public List<Literal> getDeleteList() {return copy(deleteList);}
+
+        /**
+         * Binds the parameters of the action to arguments.
+         *
+         * @param arguments The arguments, one for each parameter.
+         * @return The ground action.
+         */
+        ActionSchema ground(List<Term> arguments) {
+            Unifier binding = new Unifier();
+            for (int i = 0; i < parameters.size(); i++) {binding.bind(new VarTerm("P" + i), arguments.get(i));}
+            return new ActionSchema(name + arguments.toString().replace('[', '(').replace(']', ')').replace(" ", ""), new ArrayList<>(), apply(preconditions, binding), apply(addList, binding), apply(deleteList, binding));
+        }
+
+        private static List<Literal> apply(List<Literal> literals, Unifier binding) {
+            List<Literal> ground = new ArrayList<>(literals.size());
+            for (Literal literal : literals) {ground.add((Literal) literal.capply(binding));}
+            return ground;
+        }
+
+        private static List<Literal> copy(List<Literal> literals) {
+            List<Literal> copies = new ArrayList<>(literals.size());
+            for (Literal literal : literals) {copies.add(literal.copy());}
+            return copies;
+        }
+
+        @Override
+        public String toString() {
+            return name + (parameters.isEmpty() ? "" : parameters.toString()) + " pre=" + preconditions + " add=" + addList + " del=" + deleteList;
+        }
+    }
+}
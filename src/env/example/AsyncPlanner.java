@@ -0,0 +1,234 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import jason.asSemantics.Agent;
+import jason.asSemantics.ConcurrentInternalAction;
+import jason.asSemantics.TransitionSystem;
+import jason.asSemantics.Unifier;
+import jason.asSyntax.Term;
+
+/**
+ * The AsyncPlanner class is a non-blocking variant of the Planner internal action.
+ * Only the intention that calls it is suspended. Planning runs on the planner pool and each plan is executed on
+ * threads of its own, so the agent keeps handling other events and intentions meanwhile. A step whose preconditions
+ * fail starts a recovery that waits for its plans, so plans are not executed on Jason's scheduler, which runs the
+ * reasoning cycles of every agent. The agent is only locked while an action is executed. The intention resumes when
+ * the predicates hold and fails when the planner finds no plan or the recovery budget is used up.
+ */
+public class AsyncPlanner extends ConcurrentInternalAction {
+    // Loggers for clean outputs
+    private Logger recoveryLogger = Logger.getLogger("t1."+"Recovery");
+    // Threads that execute plans, a thread is only added while every other one is busy with a step or its recovery
+    private static final AtomicInteger threads = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "async-planner-" + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Suspends the current intention and starts planning for the given predicates.
+     *
+     * @param ts The transition system.
+     * @param un The unifier.
+     * @param args The predicates to achieve.
+     * @return False if the predicates are unreachable, otherwise true and the outcome is given when the intention resumes.
+     * @throws Exception If an exception occurs during execution.
+     */
+    @Override
+    public Object execute(TransitionSystem ts, Unifier un, Term[] args) throws Exception {
+        List<String> predicates = new ArrayList<>();
+        for (Term pred : args) {predicates.add(pred.toString());}
+        Action action = new Action();
+        int typeOfPlanning = action.typeOfPlanning;
+
+        // If Type of planning selected is invalid... Default to Online
+        if (typeOfPlanning < 1 || typeOfPlanning > 6) {
+            recoveryLogger.info("Invalid Type of Planning Selected... Defaulting to Online Planning");
+            typeOfPlanning = 2;
+        }
+
+        // Goals no action can reach fail the intention at once, without suspending it
+        RecoveryBudget budget = RecoveryBudget.start();
+        PlanningConfig config = PlanningConfig.forIntention(ts.getAg(), ts.getC().getSelectedIntention());
+        BitSet facts = FactTable.snapshot(ts.getAg());
+        List<String> unreachable = RunPlanner.unreachable(FactTable.names(facts), FactTable.missing(facts, predicates));
+        if (!unreachable.isEmpty()) {
+            recoveryLogger.info(getAgName(ts)+" --> Direct Planning Call --> Unreachable "+unreachable);
+            PlanningMetrics.getInstance().recordRecovery(PlanningMetrics.PLANNER, budget, false);
+            return false;
+        }
+
+        // The intention must be pending before anything can resume it, the budget's deadline bounds how long it waits
+        String key = suspendInt(ts, "planner", 0);
+        int planning = typeOfPlanning;
+        if (planning == 4) {
+            monitor(ts, key, action, predicates, new PlanMonitor(getAgName(ts)+" --> Direct Planning Call"), budget, config);
+        } else {
+            step(ts, key, action, predicates, planning, budget, config);
+        }
+        return true;
+    }
+
+    /**
+     * Plans from the agent's current beliefs and executes the plan once it arrives, then checks the predicates again.
+     * Offline planning executes the whole plan, online planning only the first step.
+     *
+     * @param ts The transition system.
+     * @param key The key of the suspended intention.
+     * @param action The action runner used to execute each step.
+     * @param predicates The predicates to achieve.
+     * @param typeOfPlanning The type of planning.
+     * @param budget The budget of the call.
+     * @param config The search strategy, heuristic and limits to plan with.
+     */
+    private void step(TransitionSystem ts, String key, Action action, List<String> predicates, int typeOfPlanning, RecoveryBudget budget, PlanningConfig config) {
+        Agent ag = ts.getAg();
+        String agName = getAgName(ts);
+        List<String> beliefs;
+        List<String> goalStates;
+        synchronized (ag) {
+            BitSet facts = FactTable.snapshot(ag);
+            beliefs = FactTable.names(facts);
+            goalStates = FactTable.missing(facts, predicates);
+        }
+        if (goalStates.size() == 0) {
+            finish(ts, key, true, budget);
+            return;
+        }
+        if (!budget.plannerCall()) {
+            finish(ts, key, false, budget);
+            return;
+        }
+
+        RunPlanner.submit(agName, beliefs, goalStates, typeOfPlanning, budget.getDeadline(), config).whenCompleteAsync((plan, error) -> {
+            if (error != null) {
+                System.out.println("Error occured in AsyncPlanner.step");
+                error.printStackTrace();
+            }
+            if (error != null || plan.isEmpty()) {
+                if (!budget.expired()) {
+                    System.out.println("An error occured with the planner");
+                    System.out.println("To debug: Go to RunPlanner.java and print the output.");
+                }
+                finish(ts, key, false, budget);
+                return;
+            }
+            recoveryLogger.info(agName+" --> Direct Planning Call --> Running Action --> "+plan.toString());
+
+            // Environment actions change the same belief base, so one change runs at a time
+            synchronized (ag) {
+                for (String act : plan) {
+                    if (!budget.action()) {
+                        finish(ts, key, false, budget);
+                        return;
+                    }
+                    boolean success = action.startAction(ag, act.toLowerCase(), budget);
+                    if (success) {budget.executed(act.toLowerCase());} else {recoveryLogger.info("Recovery failure");}
+                }
+            }
+            step(ts, key, action, predicates, typeOfPlanning, budget, config);
+        }, executor);
+    }
+
+    /**
+     * Plans from the agent's current beliefs and follows the plan once it arrives, one action at a time, planning
+     * again when the plan runs out or the world diverges so far that the rest of it no longer reaches the predicates.
+     *
+     * @param ts The transition system.
+     * @param key The key of the suspended intention.
+     * @param action The action runner used to execute each step.
+     * @param predicates The predicates to achieve.
+     * @param monitor The monitor of the plan being followed.
+     * @param budget The budget of the call.
+     * @param config The search strategy, heuristic and limits to plan with.
+     */
+    private void monitor(TransitionSystem ts, String key, Action action, List<String> predicates, PlanMonitor monitor, RecoveryBudget budget, PlanningConfig config) {
+        Agent ag = ts.getAg();
+        String agName = getAgName(ts);
+        BitSet facts = FactTable.snapshot(ag);
+        List<String> beliefs = FactTable.names(facts);
+        List<String> goalStates = FactTable.missing(facts, predicates);
+        if (goalStates.size() == 0) {
+            finish(ts, key, true, budget);
+            return;
+        }
+        if (!budget.plannerCall()) {
+            finish(ts, key, false, budget);
+            return;
+        }
+
+        RunPlanner.submit(agName, beliefs, goalStates, 4, budget.getDeadline(), config).whenCompleteAsync((plan, error) -> {
+            if (error != null) {
+                System.out.println("Error occured in AsyncPlanner.monitor");
+                error.printStackTrace();
+            }
+            if (error != null || !monitor.follow(beliefs, plan, budget)) {
+                finish(ts, key, false, budget);
+                return;
+            }
+            while (monitor.next() != null) {
+                String act = monitor.next().toLowerCase();
+                if (!budget.action()) {
+                    finish(ts, key, false, budget);
+                    return;
+                }
+                // Environment actions change the same belief base, so one change runs at a time
+                boolean success;
+                synchronized (ag) {success = action.startAction(ag, act, budget);}
+                if (success) {budget.executed(act);} else {recoveryLogger.info("Recovery failure");}
+                BitSet after = FactTable.snapshot(ag);
+                List<String> missing = FactTable.missing(after, predicates);
+                if (missing.size() == 0) {
+                    finish(ts, key, true, budget);
+                    return;
+                }
+                monitor.executed(FactTable.names(after), missing);
+            }
+            monitor(ts, key, action, predicates, monitor, budget, config);
+        }, executor);
+    }
+
+    /**
+     * Resumes the suspended intention, or fails it if the predicates were not achieved.
+     *
+     * @param ts The transition system.
+     * @param key The key of the suspended intention.
+     * @param success True if the predicates were achieved.
+     * @param budget The budget of the call.
+     */
+    private void finish(TransitionSystem ts, String key, boolean success, RecoveryBudget budget) {
+        if (!success && budget.getReason() != null) {recoveryLogger.info(getAgName(ts)+" --> Direct Planning Call --> Recovery Stopped, "+budget.getReason());}
+        PlanningMetrics.getInstance().recordRecovery(PlanningMetrics.PLANNER, budget, success);
+        if (success) {resumeInt(ts, key);} else {failInt(ts, key);}
+    }
+
+    /**
+     * Fails the intention if it is still suspended when its timeout expires.
+     *
+     * @param ts The transition system.
+     * @param key The key of the suspended intention.
+     */
+    @Override
+    public void timeout(TransitionSystem ts, String key) {
+        recoveryLogger.info(getAgName(ts)+" --> Direct Planning Call Timed Out");
+        failInt(ts, key);
+    }
+
+    /**
+     * Gets the name of the agent.
+     *
+     * @param ts The transition system.
+     * @return The name of the agent.
+     */
+    private String getAgName(TransitionSystem ts) {
+        return ts.getAgArch().getAgName();
+    }
+}
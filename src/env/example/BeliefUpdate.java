@@ -0,0 +1,106 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jason.asSemantics.Agent;
+import jason.asSemantics.Intention;
+import jason.asSyntax.Literal;
+import jason.bb.BeliefBase;
+
+/**
+ * The BeliefUpdate class applies the effects of an action to an agent's belief base as one batch. The deletes and
+ * adds are made while holding the lock of the belief base, so a snapshot sees all of them or none. If any of them
+ * fails, the ones already made are undone. The events of the whole batch are raised once it is committed, with one
+ * call to the transition system instead of one per belief.
+ */
+public class BeliefUpdate {
+    private final Agent ag;
+    // Beliefs the batch has added and removed so far, as the belief base holds them
+    private final List<Literal> added = new ArrayList<>();
+    private final List<Literal> removed = new ArrayList<>();
+
+    private BeliefUpdate(Agent ag) {
+        this.ag = ag;
+    }
+
+    /**
+     * Applies the effects of an action. Deletes are made before adds, as the planners assume, so a belief the action
+     * both deletes and adds is kept, and it is left untouched instead of being removed and added again.
+     *
+     * @param ag The agent.
+     * @param beliefsToAdd The beliefs to add, or null.
+     * @param beliefsToDelete The beliefs to delete, or null.
+     * @return True if every effect was applied, false if the belief base was left as it was.
+     */
+    public static boolean apply(Agent ag, List<Literal> beliefsToAdd, List<Literal> beliefsToDelete) {
+        List<Literal> adds = beliefsToAdd == null ? new ArrayList<>() : beliefsToAdd;
+        List<Literal> deletes = new ArrayList<>();
+        if (beliefsToDelete != null) {
+            Set<Literal> kept = new HashSet<>(adds);
+            for (Literal belief : beliefsToDelete) {
+                if (!kept.contains(belief)) {deletes.add(belief);}
+            }
+        }
+        BeliefUpdate update = new BeliefUpdate(ag);
+        synchronized (ag.getBB().getLock()) {
+            try {
+                for (Literal belief : deletes) {update.revise(null, belief);}
+                for (Literal belief : adds) {update.revise(belief, null);}
+            } catch (Exception e) {
+                System.out.println("Error occured applying the effects of an action, undoing them");
+                e.printStackTrace();
+                update.rollback();
+                return false;
+            }
+        }
+        update.commit();
+        return true;
+    }
+
+    /**
+     * Adds or deletes one belief through the agent's belief revision, keeping what it changed.
+     *
+     * @param add The belief to add, or null.
+     * @param delete The belief to delete, or null.
+     * @throws Exception If the belief revision fails, or the belief base did not change as asked.
+     */
+    private void revise(Literal add, Literal delete) throws Exception {
+        Literal belief = add != null ? add : delete;
+        // Beliefs without a source are the agent's own, as in Agent.addBel and Agent.delBel
+        if (!belief.hasSource()) {belief.addAnnot(BeliefBase.TSelf);}
+        List<Literal>[] result = ag.brf(add, delete, Intention.EmptyInt);
+        if (result == null) {
+            // Agent.brf logs and swallows its own errors, so a change that did not happen is found in the belief base
+            Literal held = ag.getBB().contains(belief);
+            if (add != null ? held == null : held != null && held.hasAnnot(BeliefBase.TSelf)) {
+                throw new IllegalStateException("Could not " + (add != null ? "add " : "delete ") + belief);
+            }
+            return;
+        }
+        added.addAll(result[0]);
+        removed.addAll(result[1]);
+    }
+
+    /**
+     * Undoes the changes of the batch in reverse order, without raising any event.
+     */
+    private void rollback() {
+        BeliefBase bb = ag.getBB();
+        for (int i = added.size() - 1; i >= 0; i--) {bb.remove(added.get(i));}
+        for (int i = removed.size() - 1; i >= 0; i--) {bb.add(removed.get(i));}
+    }
+
+    /**
+     * Raises the events of every change in the batch.
+     */
+    private void commit() {
+        if (ag.getTS() == null || (added.isEmpty() && removed.isEmpty())) {return;}
+        // Arrays of a generic type cannot be created, the cast is safe as both lists hold literals
+        @SuppressWarnings("unchecked")
+        List<Literal>[] changes = (List<Literal>[]) new List<?>[]{added, removed};
+        ag.getTS().updateEvents(changes, Intention.EmptyInt);
+    }
+}
@@ -0,0 +1,61 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Cancellation class tells a running planner that its answer is no longer needed, e.g. because another planner of
+ * a portfolio has already answered. Planners check it while they search, and external processes register a hook to be
+ * killed.
+ */
+public class Cancellation {
+    private final List<Runnable> hooks = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    /**
+     * Cancels the request and runs every registered hook.
+     */
+    public void cancel() {
+        List<Runnable> run;
+        synchronized (this) {
+            if (cancelled) {return;}
+            cancelled = true;
+            run = new ArrayList<>(hooks);
+            hooks.clear();
+        }
+        for (Runnable hook : run) {hook.run();}
+    }
+
+    /**
+     * Checks if the request was cancelled.
+     *
+     * @return True if the request was cancelled, otherwise false.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Registers a hook to run on cancellation, or runs it at once if the request is already cancelled.
+     *
+     * @param hook The hook, e.g. killing a process.
+     */
+    public void onCancel(Runnable hook) {
+        synchronized (this) {
+            if (!cancelled) {
+                hooks.add(hook);
+                return;
+            }
+        }
+        hook.run();
+    }
+
+    /**
+     * Removes a hook that is no longer needed, e.g. once its process has finished.
+     *
+     * @param hook The hook.
+     */
+    public synchronized void remove(Runnable hook) {
+        hooks.remove(hook);
+    }
+}
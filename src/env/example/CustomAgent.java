@@ -1,11 +1,13 @@
 package example;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.logging.Logger;
 
 import jason.asSemantics.Agent;
 import jason.asSemantics.GoalListener;
+import jason.asSemantics.Unifier;
 import jason.asSyntax.Plan;
 import jason.asSyntax.Term;
 import jason.asSyntax.Trigger;
@@ -17,20 +19,35 @@ public class CustomAgent extends Agent {
     private Logger recoveryLogger = Logger.getLogger("t1."+"Recovery");
 
     /**
-     * Adds a goal listener to the agents. If a goal fails, it tries to recover by executing the recovery operation.
+     * Registers the agent with the environment and adds a goal listener to the agents. If a goal fails, it tries to
+     * recover by executing the recovery operation.
      */
     @Override
     public void initAg() {
         super.initAg();
+        // Let the environment act on this agent rather than on a copy
+        Env.registerAgent(getTS().getAgArch().getAgName(), this);
         getTS().addGoalListener((GoalListener) new GoalListener() {
             @Override
             public void goalFailed(Trigger goal, Term result) {
-                boolean success = recoveryOperation(goal);
+                boolean success;
+                synchronized (CustomAgent.this) {success = recoveryOperation(goal);}
                 if(!success) {System.out.println("Recovery Failed in CustomAgent.java");}
             }
         });
     }
 
+    /**
+     * Removes the agent from the environment's registry when it stops.
+     */
+    @Override
+    public void stopAg() {
+        Env.unregisterAgent(getTS().getAgArch().getAgName(), this);
+        // Drop what the incremental planner learned for this agent
+        try {DomainCache.getInstance().forget(getTS().getAgArch().getAgName());} catch (Exception e) {e.printStackTrace();}
+        super.stopAg();
+    }
+
     /**
      * Recovers from a failed goal by executing the appropriate recovery operation.
      * @param goal The failed goal.
@@ -43,108 +60,185 @@ public class CustomAgent extends Agent {
         Action action = new Action();
         int typeOfPlanning = action.typeOfPlanning;
 
-        // Construct goal string for extraction of relevant plans
-        String goalString = "+!" + removeSource(goal.getLiteral().toString());
-        
-        // Extract all plans and filter to relevant failed goal
-        List<Plan> plans = extractPlans(ag);
-        List<Plan> filteredPlans = new ArrayList<>();
-        for (Plan p : plans) {if (p.getTrigger().toString().startsWith(goalString)) {filteredPlans.add(p);}}
+        // Find the plans for the failed goal through the plan library's trigger index
+        List<Plan> candidates = candidatePlans(ag, goal);
+        if (candidates.isEmpty()) {System.out.println("* No plan for " + goal + "... Cannot recover context");return false;}
 
-        // Choose the first plan to fix the context <-- Could be adapted
-        Plan planToFix = filteredPlans.get(0);
+        // Choose the plan whose context is the cheapest to repair
+        BitSet facts = FactTable.snapshot(ag);
+        RecoveryBudget budget = RecoveryBudget.start();
+        Plan planToFix = cheapestRepair(ag, agName, candidates, facts, budget);
 
         // If plan null... tell developer an error occured
         if (planToFix.getContext() == null) {System.out.println("* Plan Context was null... Cannot recover context");return false;}
 
-        // If multiple predicates...
-        List<String> contextString = new ArrayList<>();
-        contextString.add(planToFix.getContext().toString()); // This is the predicate
-        List<String> context = preprocessPredicates(contextString);
-
         // Extract agent's beliefs and prepare a list for the planner
-        List<String> beliefs = action.extractBeliefs(ag);
-        List<String> goalStates = findPredicates(beliefs, context);
+        List<String> context = contextOf(planToFix);
+        List<String> beliefs = FactTable.names(facts);
+        List<String> goalStates = FactTable.missing(facts, context);
+        // The plan whose context is recovered can ask for its own search in its label
+        PlanningConfig config = PlanningConfig.forAgent(ag).forPlan(planToFix);
+
+        // Goals no action can reach fail at once, without running a search
+        List<String> unreachable = RunPlanner.unreachable(beliefs, goalStates);
+        if (!unreachable.isEmpty()) {
+            recoveryLogger.info(agName+" --> Context Not Fulfilled --> Unreachable "+unreachable);
+            return recorded(false, budget);
+        }
 
         // If Type of planning selected is invalid... Default to Online
-        if (typeOfPlanning != 1 && typeOfPlanning != 2) {
+        if (typeOfPlanning < 1 || typeOfPlanning > 6) {
             recoveryLogger.info("Invalid Type of Planning Selected... Defaulting to Online Planning");
             typeOfPlanning = 2;
         }
 
-        // Offline Planning
-        if (typeOfPlanning == 1) {
-            List<String> plan = RunPlanner.run(agName, beliefs, goalStates, 1); 
-            if(plan.isEmpty()){
-                System.out.println("An error occured with the planner");
-                System.out.println("To debug: Go to RunPlanner.java and print the output.");
-                return false;
-            }
-            recoveryLogger.info(agName+" --> Context Not Fulfilled, Running Action --> "+plan);
-            for (String act : plan) {
-                boolean success = action.startAction(ag, act.toLowerCase()); 
-                if (!success) {recoveryLogger.info("Recovery failure");}
+        // Offline Planning (FF, built-in STRIPS planner or portfolio), planning again if the plan falls short
+        if (typeOfPlanning == 1 || typeOfPlanning == 3 || typeOfPlanning == 5) {
+            while (goalStates.size() != 0) {
+                if (!budget.plannerCall()) {return stopped(agName, budget);}
+                List<String> plan = RunPlanner.run(agName, beliefs, goalStates, typeOfPlanning, budget.getDeadline(), config); 
+                if(plan.isEmpty()){
+                    if (budget.expired()) {return stopped(agName, budget);}
+                    System.out.println("An error occured with the planner");
+                    System.out.println("To debug: Go to RunPlanner.java and print the output.");
+                    return recorded(false, budget);
+                }
+                recoveryLogger.info(agName+" --> Context Not Fulfilled, Running Action --> "+plan);
+                for (String act : plan) {
+                    if (!budget.action()) {return stopped(agName, budget);}
+                    boolean success = action.startAction(ag, act.toLowerCase(), budget); 
+                    if (success) {budget.executed(act.toLowerCase());} else {recoveryLogger.info("Recovery failure");}
+                }
+                facts = FactTable.snapshot(ag);
+                beliefs = FactTable.names(facts);
+                goalStates = FactTable.missing(facts, context);
             }
         }
 
-        // Online
-        if (typeOfPlanning==2) {
+        // Online, with PDDL4J (2) or the incremental built-in STRIPS planner (6)
+        if (typeOfPlanning == 2 || typeOfPlanning == 6) {
             // While all goalStates have not been achieved... Continue Recovery
             while (goalStates.size() != 0) {
                 // Run the planner to find actions to fulfill the context
-                List<String> plan = RunPlanner.run(agName, beliefs, goalStates, 2);
+                if (!budget.plannerCall()) {return stopped(agName, budget);}
+                List<String> plan = RunPlanner.run(agName, beliefs, goalStates, typeOfPlanning, budget.getDeadline(), config);
                 // Debugging information if plan produced by planner is empty...
                 if(plan.isEmpty()){
+                    if (budget.expired()) {return stopped(agName, budget);}
                     System.out.println("An error occured with the planner");
                     System.out.println("To debug: Go to RunPlanner.java and print the output.");
-                    return false;
+                    return recorded(false, budget);
                 }
 
                 // If plan is not empty... Execute the action returned by the planner
                 if(!plan.isEmpty()) {
                     recoveryLogger.info(agName+" --> Context Not Fulfilled, Running Action --> "+plan.get(0).toString());
-                    boolean success = action.startAction(ag, plan.get(0).toLowerCase()); // check output of bool
-                    if (!success) {recoveryLogger.info("Recovery failure");}
+                    if (!budget.action()) {return stopped(agName, budget);}
+                    boolean success = action.startAction(ag, plan.get(0).toLowerCase(), budget); // check output of bool
+                    if (success) {budget.executed(plan.get(0).toLowerCase());} else {recoveryLogger.info("Recovery failure");}
                 }
 
                 // Recheck Beliefs 
-                beliefs = action.extractBeliefs(ag);
-                goalStates = findPredicates(beliefs, context); //goalstates just fancy word for relevant predicates
+                facts = FactTable.snapshot(ag);
+                beliefs = FactTable.names(facts);
+                goalStates = FactTable.missing(facts, context); //goalstates just fancy word for relevant predicates
             }
         }
+        // Online with execution monitoring
+        if (typeOfPlanning == 4) {
+            boolean success = new PlanMonitor(agName+" --> Context Not Fulfilled").achieve(ag, action, context, budget, config);
+            if (!success) {return budget.getReason() != null ? stopped(agName, budget) : recorded(false, budget);}
+        }
         recoveryLogger.info(agName +" --> Context Recovered, Readding Event...(ignore next msg)");
 
         // Re-add the failed goal as an external event
         ag.getTS().getC().addExternalEv(goal);
-        return true;
+        return recorded(true, budget);
+    }
+
+    /**
+     * Reports a recovery that ran out of budget.
+     * @param agName The name of the agent.
+     * @param budget The budget of the recovery.
+     * @return False, the recovery failed.
+     */
+    private boolean stopped(String agName, RecoveryBudget budget) {
+        recoveryLogger.info(agName+" --> Context Not Fulfilled --> Recovery Stopped, "+budget.getReason());
+        return recorded(false, budget);
+    }
+
+    /**
+     * Reports a finished recovery to the planning metrics, and the actions of a successful one to the macro library.
+     * @param success True if the context was recovered.
+     * @param budget The budget of the recovery.
+     * @return The success of the recovery.
+     */
+    private boolean recorded(boolean success, RecoveryBudget budget) {
+        PlanningMetrics.getInstance().recordRecovery(PlanningMetrics.CONTEXT, budget, success);
+        if (success) {MacroLibrary.getInstance().record(budget.getSteps());}
+        return success;
     }
     /**
-     * Extracts plans which do not contain kqml.
+     * Finds the plans for a goal, leaving out kqml plans. The plan library indexes its plans by the functor and arity
+     * of their trigger and keeps the index up to date as plans are added and removed, so only plans that can handle
+     * the goal are looked at.
      * @param ag The agent.
-     * @return A list of plans.
+     * @param goal The failed goal.
+     * @return The plans whose trigger unifies with the goal, in the order of the plan library.
      */
-    private List<Plan> extractPlans(Agent ag) {
-        List<Plan> filteredPlans = new ArrayList<>();
-        for (Plan p : ag.getPL().getPlans()) {
-            if (!p.toString().startsWith("@kqml")) {
-                filteredPlans.add(p);
-            }
+    private List<Plan> candidatePlans(Agent ag, Trigger goal) {
+        List<Plan> candidates = new ArrayList<>();
+        List<Plan> indexed = ag.getPL().getCandidatePlans(goal);
+        if (indexed == null) {return candidates;}
+        for (Plan p : indexed) {
+            if (p.getLabel() != null && p.getLabel().getFunctor().startsWith("kqml")) {continue;}
+            if (p.isRelevant(goal, new Unifier()) != null) {candidates.add(p);}
         }
-        return filteredPlans;
+        return candidates;
     }
 
     /**
-     * Checks what predicates have been achieved/are missing.
-     * @param beliefs The beliefs of the agent.
-     * @param predicates The predicates to check.
-     * @return The missing predicates.
+     * Chooses the plan whose context needs the shortest repair plan. Contexts that already hold cost nothing, and
+     * plans whose context cannot be reached are only chosen if every plan's context is unreachable.
+     * @param ag The agent.
+     * @param agName The name of the agent.
+     * @param candidates The plans for the failed goal.
+     * @param facts The agent's beliefs as fact ids.
+     * @param budget The budget of the recovery, whose deadline bounds the estimates.
+     * @return The plan to fix, the first candidate if no context can be repaired.
      */
-    private static List<String> findPredicates(List<String> beliefs, List<String> predicates) {
-        List<String> missingPredicates = new ArrayList<>();
-        for (String pred : predicates) {
-            if (!beliefs.contains(pred)) {missingPredicates.add(pred);}
+    private Plan cheapestRepair(Agent ag, String agName, List<Plan> candidates, BitSet facts, RecoveryBudget budget) {
+        if (candidates.size() == 1) {return candidates.get(0);}
+        List<String> beliefs = FactTable.names(facts);
+        PlanningConfig config = PlanningConfig.forAgent(ag);
+        Plan best = null;
+        int bestCost = -1;
+        for (Plan p : candidates) {
+            if (p.getContext() == null) {continue;}
+            List<String> missing = FactTable.missing(facts, contextOf(p));
+            int cost = missing.isEmpty() ? 0 : RunPlanner.estimate(beliefs, missing, budget.getDeadline(), config.forPlan(p));
+            if (cost < 0) {continue;}
+            if (best == null || cost < bestCost) {
+                best = p;
+                bestCost = cost;
+            }
         }
-        return missingPredicates;
+        if (best == null) {return candidates.get(0);}
+        recoveryLogger.fine(agName+" --> Context Not Fulfilled --> Repairing "+best.getTrigger()+" : "+best.getContext()+" of "+candidates.size()+" plans, estimated "+bestCost+" steps");
+        return best;
+    }
+
+    /**
+     * Gets the predicates of a plan's context.
+     * @param plan The plan.
+     * @return The predicates, empty if the plan has no context.
+     */
+    private static List<String> contextOf(Plan plan) {
+        List<String> contextString = new ArrayList<>();
+        if (plan.getContext() == null) {return contextString;}
+        contextString.add(plan.getContext().toString()); // This is the predicate
+        // If multiple predicates...
+        return preprocessPredicates(contextString);
     }
 
     /**
@@ -157,7 +251,8 @@ public class CustomAgent extends Agent {
     }
 
     /**
-     * If there are multiple predicates, removes the & between them and the () that get added.
+     * If there are multiple predicates, removes the & between them and the () that get added. The brackets of
+     * predicates with arguments, e.g. at(home), are kept, and annotations are dropped.
      * @param predicates The predicates to preprocess.
      * @return The preprocessed predicates.
      */
@@ -165,19 +260,49 @@ public class CustomAgent extends Agent {
         List<String> formattedPredicates = new ArrayList<>();
     
         for (String predicate : predicates) {
-            // Remove all brackets from the predicate
-            String withoutBrackets = predicate.replaceAll("[\\[\\]()]", "").trim();
+            // Remove annotations, e.g. [source(self)], from the predicate
+            String withoutAnnotations = predicate.replaceAll("\\[[^\\]]*\\]", "").trim();
     
-            // Split the predicate if it contains "&" and trim each part
-            if (withoutBrackets.contains("&")) {
-                String[] parts = withoutBrackets.split("&");
-                for (String part : parts) {formattedPredicates.add(part.trim());}
-            } else {
-                // If there is no "&", add the predicate directly
-                formattedPredicates.add(withoutBrackets);
-            }
+            // Split the predicate on "&" and remove the brackets the conjunction added around each part
+            for (String part : withoutAnnotations.split("&")) {formattedPredicates.add(unbracket(part.trim()));}
         }
         return formattedPredicates;
     }
-}
 
+    /**
+     * Removes the opening brackets before a predicate and the closing brackets after it that have no partner in it.
+     * @param part A part of a conjunction, e.g. "(hasPhone" or "at(home))".
+     * @return The predicate, e.g. "hasPhone" or "at(home)".
+     */
+    private static String unbracket(String part) {
+        int depth = 0;
+        for (char c : part.toCharArray()) {
+            if (c == '(') {depth++;} else if (c == ')') {depth--;}
+        }
+        while (depth > 0 && part.startsWith("(")) {
+            part = part.substring(1).trim();
+            depth--;
+        }
+        while (depth < 0 && part.endsWith(")")) {
+            part = part.substring(0, part.length() - 1).trim();
+            depth++;
+        }
+        // A predicate wrapped in brackets of its own, e.g. "(hasPhone)"
+        while (part.startsWith("(") && part.endsWith(")") && unbracketed(part)) {part = part.substring(1, part.length() - 1).trim();}
+        return part;
+    }
+
+    /**
+     * Checks if the first bracket of a string only closes at its end.
+     * @param part The string, starting with "(".
+     * @return True if the brackets around the string belong together.
+     */
+    private static boolean unbracketed(String part) {
+        int depth = 0;
+        for (int i = 0; i < part.length(); i++) {
+            if (part.charAt(i) == '(') {depth++;} else if (part.charAt(i) == ')') {depth--;}
+            if (depth == 0) {return i == part.length() - 1;}
+        }
+        return false;
+    }
+}
@@ -0,0 +1,554 @@
+package example;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import main.java.fr.uga.pddl4j.encoding.CodedProblem;
+import main.java.fr.uga.pddl4j.encoding.Encoder;
+import main.java.fr.uga.pddl4j.parser.Connective;
+import main.java.fr.uga.pddl4j.parser.Domain;
+import main.java.fr.uga.pddl4j.parser.Exp;
+import main.java.fr.uga.pddl4j.parser.NamedTypedList;
+import main.java.fr.uga.pddl4j.parser.Op;
+import main.java.fr.uga.pddl4j.parser.Parser;
+import main.java.fr.uga.pddl4j.parser.Problem;
+import main.java.fr.uga.pddl4j.parser.RequireKey;
+import main.java.fr.uga.pddl4j.parser.Symbol;
+import main.java.fr.uga.pddl4j.planners.hsp.AStarPlanner;
+import main.java.fr.uga.pddl4j.util.BitExp;
+import main.java.fr.uga.pddl4j.util.BitOp;
+import main.java.fr.uga.pddl4j.util.IntExp;
+
+/**
+ * The DomainCache class parses, grounds and encodes domain.pddl once and reuses the encoding for every planning call.
+ * The domain is only re-encoded when the modification time of the file changes. Lifted domains are grounded by the
+ * Grounder over the objects of the agents' beliefs, and each grounding is encoded once and kept for later calls.
+ * The macros of the MacroLibrary are added to the encoding as actions. A macro only uses facts the encoding already
+ * has, so learning one adds its action without encoding the domain again, and keeps the plans and memories of the
+ * planners, which stay valid when actions are only added.
+ */
+public class DomainCache {
+    /**
+     * The domain file shared by every planner.
+     */
+    public static final String DOMAIN_FILE = "domain.pddl";
+
+    // Guard fact which is never true, used to keep every domain predicate a fluent (see encodeTemplate)
+    private static final String GUARD = "__guard";
+
+    // Most groundings of a lifted domain kept at once, set with -Dgrounding.cache=n
+    private static final int MAX_GROUNDINGS = Integer.getInteger("grounding.cache", 16);
+
+    // Currently cached domain, replaced when domain.pddl changes
+    private static volatile DomainCache instance;
+
+    private final long lastModified;
+    // Version of the macro library the encoding includes
+    private final int macroVersion;
+    private final String name;
+    private final CodedProblem template;
+    private final Map<String, Integer> factIndex;
+    private final Properties arguments;
+    private final StripsPlanner stripsPlanner;
+    private final RelaxedPlanningGraph relaxedPlanningGraph;
+    private final RelevanceAnalysis relevanceAnalysis;
+    private final RecoveryPolicies recoveryPolicies;
+    private final IncrementalPlanner incrementalPlanner;
+    // Grounds lifted domains over each agent's objects, null if the domain is propositional
+    private final Grounder grounder;
+    // Grounding of this domain, null for the domain grounded over its constants only
+    private final Grounder.Grounding grounding;
+    private final Grounder.World world;
+    // Groundings for the worlds agents have planned in, least recently used first
+    private final Map<String, DomainCache> groundings = new LinkedHashMap<String, DomainCache>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DomainCache> eldest) {
+            return size() > MAX_GROUNDINGS;
+        }
+    };
+
+    /**
+     * Returns the cached encoding of domain.pddl, re-encoding it if the file has changed since it was last read, and
+     * adding the macros learned since it was encoded. The cached domain is immutable, so it is shared between threads
+     * without locking. Only re-encoding is synchronized, as the PDDL4J encoder keeps its tables in static fields.
+     *
+     * @return The cached domain.
+     * @throws Exception If the domain cannot be parsed or encoded.
+     */
+    public static DomainCache getInstance() throws Exception {
+        long modified = new File(DOMAIN_FILE).lastModified();
+        DomainCache current = instance;
+        int macros = MacroLibrary.getInstance().getVersion();
+        if (current != null && current.lastModified == modified && current.macroVersion == macros) {return current;}
+        synchronized (DomainCache.class) {
+            if (instance == null || instance.lastModified != modified) {
+                instance = new DomainCache(DOMAIN_FILE, modified);
+            } else if (instance.macroVersion != macros) {
+                instance = new DomainCache(instance, macros);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Parses and encodes a domain file other than domain.pddl, without caching it, e.g. for benchmarks.
+     *
+     * @param file The domain file.
+     * @return The encoded domain.
+     * @throws Exception If the domain cannot be parsed or encoded.
+     */
+    public static DomainCache load(String file) throws Exception {
+        synchronized (DomainCache.class) {
+            return new DomainCache(file, new File(file).lastModified());
+        }
+    }
+
+    /**
+     * Parses and encodes the domain file. A lifted domain is grounded over its constants here, and over the objects of
+     * each agent's beliefs when it plans.
+     *
+     * @param file The domain file.
+     * @param lastModified The modification time of the domain file being encoded.
+     * @throws Exception If the domain cannot be parsed or encoded.
+     */
+    private DomainCache(String file, long lastModified) throws Exception {
+        this.lastModified = lastModified;
+        this.macroVersion = MacroLibrary.getInstance().getVersion();
+        // Both files only need to exist here, the problem itself is never read from disk
+        this.arguments = AStarPlanner.parseArguments(new String[]{"-o", file, "-f", file, "-u", "7"});
+        Domain domain = parse(file);
+        this.name = domain.getName().getImage();
+        Grounder lifted = new Grounder(domain);
+        this.grounder = lifted.isLifted() ? lifted : null;
+        this.world = grounder == null ? null : grounder.world(new ArrayList<>());
+        this.grounding = null;
+        this.template = encodeTemplate(grounder == null ? domain : grounder.ground(world, null).getDomain());
+        this.factIndex = index(template);
+        addMacros(template, factIndex);
+        this.stripsPlanner = new StripsPlanner(template, factIndex);
+        this.relaxedPlanningGraph = new RelaxedPlanningGraph(template, factIndex);
+        this.relevanceAnalysis = new RelevanceAnalysis(template, factIndex);
+        this.incrementalPlanner = new IncrementalPlanner(stripsPlanner);
+        this.recoveryPolicies = RecoveryPolicies.create(this, file);
+    }
+
+    /**
+     * Encodes the grounding of a lifted domain for one world. Recovery policies are only compiled for the domain
+     * grounded over its constants.
+     *
+     * @param base The domain grounded over its constants.
+     * @param world The objects and static facts of the grounding.
+     * @param grounding The ground domain.
+     * @throws Exception If the domain cannot be encoded.
+     */
+    private DomainCache(DomainCache base, Grounder.World world, Grounder.Grounding grounding) throws Exception {
+        this.lastModified = base.lastModified;
+        this.macroVersion = base.macroVersion;
+        this.name = base.name;
+        this.arguments = base.arguments;
+        this.grounder = base.grounder;
+        this.world = world;
+        this.grounding = grounding;
+        this.template = encodeTemplate(grounding.getDomain());
+        this.factIndex = index(template);
+        addMacros(template, factIndex);
+        this.stripsPlanner = new StripsPlanner(template, factIndex);
+        this.relaxedPlanningGraph = new RelaxedPlanningGraph(template, factIndex);
+        this.relevanceAnalysis = new RelevanceAnalysis(template, factIndex);
+        this.incrementalPlanner = new IncrementalPlanner(stripsPlanner);
+        this.recoveryPolicies = RecoveryPolicies.compile(this, "");
+    }
+
+    /**
+     * Adds the macros learned since a domain was encoded, without encoding it again. The new planners keep what the
+     * searches in the domain learned, the recovery policies are shared, and each grounding is extended the same way.
+     *
+     * @param previous The domain encoded with fewer macros.
+     * @param macroVersion The version of the macro library to add the macros of.
+     */
+    private DomainCache(DomainCache previous, int macroVersion) {
+        this.lastModified = previous.lastModified;
+        this.macroVersion = macroVersion;
+        this.name = previous.name;
+        this.arguments = previous.arguments;
+        this.grounder = previous.grounder;
+        this.world = previous.world;
+        this.grounding = previous.grounding;
+        this.template = new CodedProblem(previous.template);
+        this.factIndex = previous.factIndex;
+        addMacros(template, factIndex);
+        this.stripsPlanner = new StripsPlanner(template, factIndex);
+        this.relaxedPlanningGraph = new RelaxedPlanningGraph(template, factIndex);
+        this.relevanceAnalysis = new RelevanceAnalysis(template, factIndex);
+        this.incrementalPlanner = new IncrementalPlanner(stripsPlanner, previous.incrementalPlanner);
+        this.recoveryPolicies = previous.recoveryPolicies;
+        synchronized (previous.groundings) {
+            for (Map.Entry<String, DomainCache> entry : previous.groundings.entrySet()) {
+                groundings.put(entry.getKey(), new DomainCache(entry.getValue(), macroVersion));
+            }
+        }
+    }
+
+    /**
+     * Returns the cached encoding of domain.pddl for an agent's beliefs. A propositional domain is the same for every
+     * agent. A lifted domain is grounded over the objects and static facts of the beliefs, and the grounding is kept
+     * for as long as later beliefs stay within the facts it can reach.
+     *
+     * @param beliefs The agent's beliefs.
+     * @return The cached domain for these beliefs.
+     * @throws Exception If the domain cannot be parsed, grounded or encoded.
+     */
+    public static DomainCache getInstance(List<String> beliefs) throws Exception {
+        return getInstance().ground(beliefs);
+    }
+
+    /**
+     * Gets the grounding of this domain for an agent's beliefs, grounding it again when the beliefs hold a fact the
+     * cached grounding cannot reach.
+     *
+     * @param beliefs The agent's beliefs.
+     * @return The grounded domain, this domain if it is propositional.
+     * @throws Exception If the domain cannot be grounded or encoded.
+     */
+    public DomainCache ground(List<String> beliefs) throws Exception {
+        if (grounder == null) {return this;}
+        Grounder.World current = grounder.world(beliefs);
+        DomainCache cached;
+        synchronized (groundings) {cached = groundings.get(current.getKey());}
+        if (cached != null && cached.grounding.covers(current)) {return cached;}
+        synchronized (DomainCache.class) {
+            synchronized (groundings) {cached = groundings.get(current.getKey());}
+            if (cached != null && cached.grounding.covers(current)) {return cached;}
+            // Facts reached before stay reachable, so the grounding only grows for worlds with the same key
+            Set<String> seed = new HashSet<>(current.getFluents());
+            if (cached != null) {seed.addAll(cached.grounding.getSeed());}
+            long start = System.nanoTime();
+            Grounder.Grounding grounded = grounder.ground(current, seed);
+            DomainCache domain = new DomainCache(this, current, grounded);
+            PlanningMetrics.getInstance().recordGrounding(System.nanoTime() - start, grounded.getActions());
+            synchronized (groundings) {groundings.put(current.getKey(), domain);}
+            return domain;
+        }
+    }
+
+    /**
+     * Drops what an agent's searches learned in this domain and in each of its groundings.
+     *
+     * @param agName The name of the agent.
+     */
+    public void forget(String agName) {
+        incrementalPlanner.forget(agName);
+        List<DomainCache> grounded;
+        synchronized (groundings) {grounded = new ArrayList<>(groundings.values());}
+        for (DomainCache domain : grounded) {domain.incrementalPlanner.forget(agName);}
+    }
+
+    /**
+     * Gets the modification time of the domain file this domain was encoded from.
+     *
+     * @return The modification time.
+     */
+    public long getLastModified() {return lastModified;}
+
+    /**
+     * Gets the name of the domain, which every problem for it must refer to.
+     *
+     * @return The name of the domain.
+     */
+    public String getName() {return name;}
+
+    /**
+     * Gets the objects of this domain's world that are not constants, which a problem for this domain must declare.
+     *
+     * @return The type of each object, empty if the domain is propositional.
+     */
+    public Map<String, String> getObjects() {
+        return grounder == null ? new HashMap<>() : grounder.objects(world);
+    }
+
+    /**
+     * Maps each fact of an encoding to its bit, e.g. "hasmoney" or "at(home)".
+     *
+     * @param template The encoded domain.
+     * @return The number of each fact.
+     */
+    private static Map<String, Integer> index(CodedProblem template) {
+        Map<String, Integer> factIndex = new HashMap<>();
+        List<IntExp> facts = template.getRelevantFacts();
+        for (int i = 0; i < facts.size(); i++) {
+            // Ground facts keep the brackets of their arguments, only the brackets around the fact are dropped
+            String fact = template.toString(facts.get(i)).trim();
+            factIndex.put(fact.substring(1, fact.length() - 1).trim(), i);
+        }
+        return factIndex;
+    }
+
+    /**
+     * Encodes a planning problem from the cached domain with the given initial state and goal.
+     * Beliefs the domain does not know about are ignored.
+     *
+     * @param beliefs The beliefs making up the initial state.
+     * @param goals The predicates to achieve.
+     * @return The encoded problem, or null if a goal is not a fact of the domain.
+     */
+    public CodedProblem encode(List<String> beliefs, List<String> goals) {
+        CodedProblem problem = new CodedProblem(template);
+
+        BitExp init = problem.getInit();
+        init.getPositive().clear();
+        init.getNegative().clear();
+        for (String belief : beliefs) {
+            Integer index = factIndex.get(belief.toLowerCase());
+            if (index != null) {init.getPositive().set(index);}
+        }
+        // Mirrors the dummyPredicate that PDDLGenerator always writes to :init
+        Integer dummy = factIndex.get("dummypredicate");
+        if (dummy != null) {init.getPositive().set(dummy);}
+
+        BitExp goal = problem.getGoal();
+        goal.getPositive().clear();
+        goal.getNegative().clear();
+        for (String predicate : goals) {
+            Integer index = factIndex.get(predicate.toLowerCase());
+            if (index == null) {return null;}
+            goal.getPositive().set(index);
+        }
+        return problem;
+    }
+
+    /**
+     * Encodes a planning problem with only the beliefs and actions relevant to its goal.
+     *
+     * @param beliefs The beliefs making up the initial state.
+     * @param goals The predicates to achieve.
+     * @param relevance The relevant part of the domain, from the analysis of these goals.
+     * @return The encoded problem, or null if a goal is not a fact of the domain.
+     */
+    public CodedProblem encode(List<String> beliefs, List<String> goals, Relevance relevance) {
+        CodedProblem problem = encode(relevance.prune(beliefs), goals);
+        if (problem == null) {return null;}
+        // The copied operators are numbered as in the template, which is how the analysis numbers them
+        List<BitOp> operators = problem.getOperators();
+        List<BitOp> relevant = new ArrayList<>();
+        for (int i = 0; i < operators.size(); i++) {
+            if (relevance.isRelevant(i)) {relevant.add(operators.get(i));}
+        }
+        operators.clear();
+        operators.addAll(relevant);
+        return problem;
+    }
+
+    /**
+     * Gets the planner arguments shared by every call.
+     *
+     * @return The parsed planner arguments.
+     */
+    public Properties getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Gets the planner arguments for a planning configuration: its heuristic, the weight of its search strategy and a
+     * time limit for the search. The shared arguments are returned when nothing differs from them.
+     *
+     * @param config The planning configuration.
+     * @param timeoutMillis The time limit in milliseconds, or 0 to keep the default.
+     * @return The planner arguments.
+     */
+    public Properties getArguments(PlanningConfig config, long timeoutMillis) {
+        if (config.equals(PlanningConfig.DEFAULT) && timeoutMillis == 0) {return arguments;}
+        Properties limited = (Properties) arguments.clone();
+        // The argument keys are a private enum of the planner, so they are found by name
+        for (Object key : arguments.keySet()) {
+            String name = key.toString();
+            if (name.equals("CPU_TIME") && timeoutMillis > 0) {limited.put(key, (int) Math.min(Integer.MAX_VALUE, timeoutMillis));}
+            if (name.equals("HEURISTIC_TYPE") && config.getHeuristic() != null) {limited.put(key, config.getHeuristic().getType());}
+            if (name.equals("WEIGHT")) {limited.put(key, config.getWeight());}
+        }
+        return limited;
+    }
+
+    /**
+     * Gets the built-in STRIPS planner compiled from this domain.
+     *
+     * @return The compiled planner.
+     */
+    public StripsPlanner getStripsPlanner() {
+        return stripsPlanner;
+    }
+
+    /**
+     * Gets the relaxed planning graph compiled from this domain, used to reject unreachable goals before planning.
+     *
+     * @return The relaxed planning graph.
+     */
+    public RelaxedPlanningGraph getRelaxedPlanningGraph() {
+        return relaxedPlanningGraph;
+    }
+
+    /**
+     * Gets the relevance analysis compiled from this domain, used to prune each problem to its goal.
+     *
+     * @return The relevance analysis.
+     */
+    public RelevanceAnalysis getRelevanceAnalysis() {
+        return relevanceAnalysis;
+    }
+
+    /**
+     * Gets the incremental planner of this domain, which keeps what each agent's searches learned.
+     *
+     * @return The incremental planner.
+     */
+    public IncrementalPlanner getIncrementalPlanner() {
+        return incrementalPlanner;
+    }
+
+    /**
+     * Gets the recovery policies of this domain, answering the most common goals without a search.
+     *
+     * @return The recovery policies.
+     */
+    public RecoveryPolicies getRecoveryPolicies() {
+        return recoveryPolicies;
+    }
+
+    /**
+     * Checks if an action was added by the cache to keep the encoding valid for any initial state.
+     *
+     * @param name The name of the action.
+     * @return True if the action is a guarded action, false otherwise.
+     */
+    public static boolean isGuardAction(String name) {
+        return name.startsWith(GUARD);
+    }
+
+    /**
+     * Parses a domain file, leaving out the actions the action registry cannot execute.
+     *
+     * @param file The domain file.
+     * @return The parsed domain.
+     * @throws Exception If the domain cannot be parsed.
+     */
+    private static Domain parse(String file) throws Exception {
+        Parser parser = new Parser();
+        parser.parseDomain(file);
+        if (!parser.getErrorManager().isEmpty()) {
+            parser.getErrorManager().printAll();
+            throw new IllegalStateException("Error occured parsing " + file);
+        }
+        Domain domain = parser.getDomain();
+        ActionRegistry registry = DOMAIN_FILE.equals(file) ? ActionRegistry.getInstance() : ActionRegistry.load(file);
+        // A plan with an action the agent cannot execute would fail on every recovery
+        domain.getOperators().removeIf(op -> registry.isRejected(op.getName().getImage()));
+        return domain;
+    }
+
+    /**
+     * Adds the learned macros to an encoded domain as actions without parameters, skipping the macros it already has.
+     * Macros on facts the encoding does not have, such as facts of objects outside this grounding, are left out.
+     *
+     * @param template The encoded domain, which is extended with the macros.
+     * @param factIndex The number of each fact of the encoding.
+     */
+    private static void addMacros(CodedProblem template, Map<String, Integer> factIndex) {
+        Set<String> names = new HashSet<>();
+        for (BitOp op : template.getOperators()) {names.add(op.getName());}
+        for (MacroLibrary.Macro macro : MacroLibrary.getInstance().getMacros()) {
+            if (names.contains(macro.getName())) {continue;}
+            BitExp preconditions = new BitExp();
+            BitExp effects = new BitExp();
+            if (!set(preconditions.getPositive(), macro.getPreconditions(), factIndex)
+                    || !set(effects.getPositive(), macro.getAddList(), factIndex)
+                    || !set(effects.getNegative(), macro.getDeleteList(), factIndex)) {continue;}
+            template.getOperators().add(new BitOp(macro.getName(), 0, preconditions, effects));
+        }
+    }
+
+    /**
+     * Sets the bits of some facts.
+     *
+     * @param bits The bits to set.
+     * @param facts The facts.
+     * @param factIndex The number of each fact of the encoding.
+     * @return True if every fact is in the encoding, false otherwise.
+     */
+    private static boolean set(BitSet bits, List<String> facts, Map<String, Integer> factIndex) {
+        for (String fact : facts) {
+            Integer index = factIndex.get(fact);
+            if (index == null) {return false;}
+            bits.set(index);
+        }
+        return true;
+    }
+
+    /**
+     * Encodes a propositional domain against an empty problem.
+     * PDDL4J simplifies away facts that no action changes using the initial state, so the domain is extended with
+     * guarded actions that add and delete every predicate. The guard can never become true, so these actions never
+     * appear in a plan, but every predicate stays a fluent and the encoding holds for any initial state.
+     *
+     * @param domain The parsed or ground domain, which is extended with the guarded actions.
+     * @return The encoded template problem.
+     * @throws Exception If the domain cannot be encoded.
+     */
+    private static CodedProblem encodeTemplate(Domain domain) throws Exception {
+        Exp addAll = new Exp(Connective.AND);
+        Exp deleteAll = new Exp(Connective.AND);
+        Exp goal = new Exp(Connective.AND);
+        for (NamedTypedList predicate : domain.getPredicates()) {
+            String name = predicate.getName().getImage();
+            Exp negated = new Exp(Connective.NOT);
+            negated.addChild(atom(name));
+            addAll.addChild(atom(name));
+            deleteAll.addChild(negated);
+            goal.addChild(atom(name));
+        }
+        domain.addPredicate(new NamedTypedList(new Symbol(Symbol.Kind.PREDICATE, GUARD)));
+        domain.addOperator(guardedAction(GUARD + "add", addAll));
+        domain.addOperator(guardedAction(GUARD + "delete", deleteAll));
+        domain.addOperator(guardedAction(GUARD + "set", atom(GUARD)));
+
+        Problem problem = new Problem(new Symbol(Symbol.Kind.PROBLEM, "template"));
+        problem.setDomain(domain.getName());
+        for (RequireKey requirement : domain.getRequirements()) {problem.addRequirement(requirement);}
+        problem.setGoal(goal);
+
+        domain.standardize();
+        problem.standardize();
+        return Encoder.encode(domain, problem);
+    }
+
+    /**
+     * Creates an action without parameters that requires the guard fact.
+     *
+     * @param name The name of the action.
+     * @param effects The effects of the action.
+     * @return The guarded action.
+     */
+    private static Op guardedAction(String name, Exp effects) {
+        return new Op(new Symbol(Symbol.Kind.ACTION, name), new ArrayList<>(), atom(GUARD), effects);
+    }
+
+    /**
+     * Creates an atomic expression for a predicate without arguments.
+     *
+     * @param name The name of the predicate.
+     * @return The atomic expression.
+     */
+    private static Exp atom(String name) {
+        Exp exp = new Exp(Connective.ATOM);
+        List<Symbol> atom = new ArrayList<>();
+        atom.add(new Symbol(Symbol.Kind.PREDICATE, name));
+        exp.setAtom(atom);
+        return exp;
+    }
+}
@@ -4,11 +4,23 @@ import jason.asSemantics.*;
 import jason.asSyntax.*;
 import jason.environment.*;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
 /**
  * The Env class represents the environment in which the agents of the system operate.
  * It extends the jason.environment.Environment class.
  */
 public class Env extends Environment {
+    private Logger logger = Logger.getLogger("t1."+Env.class.getName());
+    // Live agents by name, registered by CustomAgent so actions change the real belief base
+    private static final Map<String, Agent> agents = new ConcurrentHashMap<>();
+
+    // Actions are read from domain.pddl, and the runner's type of planning is final, so one runner serves every agent.
+    // It plans with the type set by -Dplanning.type, or by the second argument of the environment in the .mas2j file.
+    private Action act = new Action();
+
     /**
      * Executes the specified action in the environment for the given agent.
      * 
@@ -19,9 +31,12 @@ public class Env extends Environment {
     @Override
     public boolean executeAction(String agName, Structure action) { 
         Agent ag = acquireAgent(agName);     
-        Action act = new Action();
+        if (ag == null) {return false;}
 
-        boolean success = act.startAction(ag, action.toString());
+        // The agent's monitor keeps each action whole against the agent's other actions and recoveries, which lock it
+        // too. The belief base itself is only changed under its own lock, by BeliefUpdate, which snapshots also take.
+        boolean success;
+        synchronized (ag) {success = act.startAction(ag, action.toString());}
 
         if (true) { informAgsEnvironmentChanged();}
 
@@ -30,27 +45,70 @@ public class Env extends Environment {
 
     /**
      * Acquires the Agent object corresponding to the given agent name.
+     * Agents registered with registerAgent are returned directly. For any other agent a snapshot is taken, and
+     * changes made by the action do not reach the running agent.
      * 
      * @param agName The name of the agent to acquire.
      * @return The Agent object corresponding to the specified agent name.
      */
     private Agent acquireAgent(String agName) {
-        Agent agent = null;
+        Agent agent = agents.get(agName);
+        if (agent != null) {return agent;}
+        logger.warning(agName+" is not registered, acting on a snapshot of the agent");
         try {agent = getEnvironmentInfraTier().getRuntimeServices().getAgentSnapshot(agName);} catch (Exception e) {e.printStackTrace();} 
         return agent;
     }
 
+    /**
+     * Registers a running agent so that its actions change its own belief base.
+     * 
+     * @param agName The name of the agent.
+     * @param ag The agent.
+     */
+    public static void registerAgent(String agName, Agent ag) {
+        agents.put(agName, ag);
+    }
+
+    /**
+     * Removes an agent that has stopped.
+     * 
+     * @param agName The name of the agent.
+     * @param ag The agent, it is only removed if it is still the registered one.
+     */
+    public static void unregisterAgent(String agName, Agent ag) {
+        agents.remove(agName, ag);
+    }
+
     /**
      * Called before the MAS execution with the arguments informed in .mas2j.
      * 
      * @param args The arguments passed to the MAS execution.
      */
     @Override
-    public void init(String[] args) {super.init(args);}
+    public void init(String[] args) {
+        super.init(args);
+        // The type of planning can be given after the environment's first argument, e.g. example.Env(10, 3)
+        if (args.length > 1) {
+            try {act = new Action(Integer.parseInt(args[1].trim()));} catch (NumberFormatException e) {logger.warning("Invalid Type of Planning "+args[1]+"... Using "+act.typeOfPlanning);}
+        }
+        // Parse and encode domain.pddl once before any agent plans or acts
+        try {DomainCache.getInstance();} catch (Exception e) {e.printStackTrace();}
+        try {ActionRegistry.getInstance();} catch (Exception e) {e.printStackTrace();}
+        // Start the planner threads that every agent's planning requests share
+        PlanningService.getInstance();
+        // Start FF processes ahead of the first request when FF is available
+        FFExecutor.getInstance().prewarm();
+        // Log planning and recovery metrics periodically, they are also available over JMX
+        PlanningMetrics.getInstance().start();
+    }
 
     /**
      * Called before the end of MAS execution.
      */
     @Override
-    public void stop() {super.stop();}
+    public void stop() {
+        PlanningMetrics.getInstance().stop();
+        FFExecutor.getInstance().shutdown();
+        super.stop();
+    }
 }
@@ -0,0 +1,438 @@
+package example;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The FFExecutor class runs the external FF planner.
+ * FF plans one problem per process, so processes cannot be reused. Instead a few FF processes are started ahead of
+ * time, each reading its problem from a named pipe: by the time a request arrives the process has started and parsed
+ * the domain, and only has to read the problem. Every request has a deadline after which FF is killed, its output is
+ * read only until the plan is complete, and the outcome is returned as a PlanResult.
+ */
+public class FFExecutor {
+    // Location of the FF binary, can be set with -Dff.path=...
+    private static final String FF_COMMAND = System.getProperty("ff.path", "./ff");
+
+    // Shared executor, the number of warm processes and the deadline can be set with -Dff.workers=n and -Dff.timeout=ms
+    private static final FFExecutor instance = new FFExecutor(Integer.getInteger("ff.workers", 2), Long.getLong("ff.timeout", 10000));
+
+    // Matches plan steps such as "step    0: USEPHONE" or "        1: GO HOME SHOP"
+    private static final Pattern STEP = Pattern.compile("\\d+:\\s+([A-Z][A-Z0-9_-]*(?: [A-Z0-9_-]+)*)");
+
+    private final int workers;
+    private final long timeoutMillis;
+    private final BlockingQueue<Worker> warm = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger counter = new AtomicInteger();
+    private final AtomicLong coldStarts = new AtomicLong();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private volatile Path directory;
+    private volatile boolean fifoSupported = true;
+    private volatile boolean shutdown;
+
+    /**
+     * Gets the executor shared by all agents.
+     *
+     * @return The shared executor.
+     */
+    public static FFExecutor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates an executor.
+     *
+     * @param workers The number of FF processes to keep started ahead of time.
+     * @param timeoutMillis The deadline of each request in milliseconds.
+     */
+    public FFExecutor(int workers, long timeoutMillis) {
+        this.workers = workers;
+        this.timeoutMillis = timeoutMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ff-executor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+    }
+
+    /**
+     * Checks if the FF binary is present and executable.
+     *
+     * @return True if FF can be run, otherwise false.
+     */
+    public boolean isAvailable() {
+        return new File(FF_COMMAND).canExecute();
+    }
+
+    /**
+     * Starts the warm FF processes in the background, if FF is available.
+     */
+    public void prewarm() {
+        if (isAvailable()) {scheduler.execute(this::refill);}
+    }
+
+    /**
+     * Runs FF on the problem built from the given beliefs and predicates.
+     *
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @return The outcome of the request.
+     */
+    public PlanResult plan(String agName, List<String> beliefs, List<String> predicates) {
+        return plan(agName, beliefs, predicates, 0);
+    }
+
+    /**
+     * Runs FF on the problem built from the given beliefs and predicates, killing it at the deadline if that comes
+     * before the configured timeout.
+     *
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @return The outcome of the request.
+     */
+    public PlanResult plan(String agName, List<String> beliefs, List<String> predicates, long deadline) {
+        return plan(agName, beliefs, predicates, deadline, null);
+    }
+
+    /**
+     * Runs FF on the problem built from the given beliefs and predicates, killing it at the deadline or as soon as
+     * the request is cancelled.
+     *
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param cancellation The cancellation of the request, or null if it cannot be cancelled.
+     * @return The outcome of the request.
+     */
+    public PlanResult plan(String agName, List<String> beliefs, List<String> predicates, long deadline, Cancellation cancellation) {
+        return plan(agName, beliefs, predicates, new HashMap<>(), deadline, cancellation);
+    }
+
+    /**
+     * Runs FF on a problem of a lifted domain, declaring the objects of the beliefs that are not constants of the
+     * domain. FF grounds the domain itself.
+     *
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @param objects The type of each object to declare.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param cancellation The cancellation of the request, or null if it cannot be cancelled.
+     * @return The outcome of the request.
+     */
+    public PlanResult plan(String agName, List<String> beliefs, List<String> predicates, Map<String, String> objects, long deadline, Cancellation cancellation) {
+        if (cancellation != null && cancellation.isCancelled()) {return PlanResult.error("FF was cancelled");}
+        long timeoutMillis = RecoveryBudget.remainingMillis(deadline, this.timeoutMillis);
+        String problem = PDDLGenerator.build(beliefs, predicates, objects);
+        Worker worker = takeWarmWorker();
+        scheduler.execute(this::refill);
+
+        try {
+            if (worker == null) {
+                coldStarts.incrementAndGet();
+                worker = startWorker(problem);
+            }
+        } catch (IOException e) {
+            return PlanResult.error("Could not start " + FF_COMMAND + ": " + e.getMessage());
+        }
+
+        // Kill FF if it has not answered by the deadline, which also ends the read below
+        Worker running = worker;
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> watchdog = scheduler.schedule(() -> {
+            timedOut.set(true);
+            running.kill();
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        Runnable kill = running::kill;
+        if (cancellation != null) {cancellation.onCancel(kill);}
+
+        try {
+            worker.send(problem);
+            return readResult(worker.process.getInputStream(), agName);
+        } catch (IOException e) {
+            if (timedOut.get()) {return PlanResult.timeout("FF did not answer within " + timeoutMillis + "ms");}
+            if (cancellation != null && cancellation.isCancelled()) {return PlanResult.error("FF was cancelled");}
+            return PlanResult.error("Error running FF: " + e.getMessage());
+        } finally {
+            if (cancellation != null) {cancellation.remove(kill);}
+            watchdog.cancel(false);
+            worker.destroy();
+            if (timedOut.get()) {System.out.println("FF timed out for " + agName + " and was killed");}
+        }
+    }
+
+    /**
+     * Reads FF's output until the plan, or the reason there is none, is complete.
+     *
+     * @param output The output of the process.
+     * @param agName The name of the agent.
+     * @return The outcome of the request.
+     * @throws IOException If the output cannot be read.
+     */
+    private PlanResult readResult(InputStream output, String agName) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(output, StandardCharsets.UTF_8));
+        StringBuilder transcript = new StringBuilder();
+        List<String> steps = new ArrayList<>();
+        boolean inPlan = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            transcript.append(line).append('\n');
+            if (line.contains("found legal plan")) {
+                inPlan = true;
+            } else if (inPlan) {
+                Matcher matcher = STEP.matcher(line);
+                if (matcher.find()) {
+                    steps.add(step(matcher.group(1)));
+                } else if (!steps.isEmpty()) {
+                    // The plan ends at the first line that is not a step, the statistics after it are not needed
+                    return PlanResult.solved(steps);
+                }
+            } else if (line.contains("simplified to TRUE")) {
+                return PlanResult.solved(steps);
+            } else if (line.contains("simplified to FALSE") || line.contains("proven unsolvable")) {
+                return PlanResult.unsolvable(line.trim());
+            }
+        }
+        if (inPlan) {return PlanResult.solved(steps);}
+        throw new IOException("FF ended without a plan for " + agName + ":\n" + transcript);
+    }
+
+    /**
+     * Writes a step of FF's plan the way agents write actions, e.g. "GO HOME SHOP" as "GO(HOME,SHOP)".
+     *
+     * @param step The step as FF prints it.
+     * @return The action.
+     */
+    private static String step(String step) {
+        String[] parts = step.trim().split(" ");
+        if (parts.length == 1) {return parts[0];}
+        return parts[0] + "(" + String.join(",", Arrays.asList(parts).subList(1, parts.length)) + ")";
+    }
+
+    /**
+     * Takes a warm process that is still alive and was started with the current domain.
+     *
+     * @return The warm process, or null if there is none.
+     */
+    private Worker takeWarmWorker() {
+        long domainModified = new File(DomainCache.DOMAIN_FILE).lastModified();
+        Worker worker;
+        while ((worker = warm.poll()) != null) {
+            if (worker.process.isAlive() && worker.domainModified == domainModified) {return worker;}
+            worker.destroy();
+        }
+        return null;
+    }
+
+    /**
+     * Starts warm processes until there are enough of them.
+     */
+    private void refill() {
+        if (!fifoSupported || !refilling.compareAndSet(false, true)) {return;}
+        try {
+            while (!shutdown && warm.size() < workers) {warm.add(startWorker(null));}
+        } catch (IOException e) {
+            // FF is missing or cannot be started, requests will report the error themselves
+        } finally {
+            refilling.set(false);
+        }
+        if (shutdown) {drain();}
+    }
+
+    /**
+     * Starts an FF process. It reads its problem from a named pipe where available, otherwise from a temporary file
+     * which must then be written before FF starts.
+     *
+     * @param problem The problem, or null to start a warm process reading from a named pipe.
+     * @return The started process.
+     * @throws IOException If the process cannot be started.
+     */
+    private Worker startWorker(String problem) throws IOException {
+        Path file = null;
+        boolean fifo = false;
+        if (fifoSupported) {
+            file = directory().resolve("problem" + counter.incrementAndGet() + ".pddl");
+            fifo = createFifo(file);
+        }
+        if (!fifo) {
+            if (problem == null) {throw new IOException("Named pipes are not supported");}
+            file = Files.createTempFile("ffproblem", ".pddl");
+            Files.write(file, problem.getBytes(StandardCharsets.UTF_8));
+        }
+        long domainModified = new File(DomainCache.DOMAIN_FILE).lastModified();
+        ProcessBuilder processBuilder = new ProcessBuilder(FF_COMMAND, "-o", domainFile(domainModified), "-f", file.toString());
+        processBuilder.redirectErrorStream(true);
+        try {
+            return new Worker(processBuilder.start(), file, fifo, domainModified);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the domain file for FF, a copy without the actions the action registry cannot execute if it has any, so FF
+     * plans with the same actions as the other planners.
+     *
+     * @param domainModified The modification time of the domain file.
+     * @return The path of the domain file.
+     * @throws IOException If the domain cannot be read or the copy cannot be written.
+     */
+    private String domainFile(long domainModified) throws IOException {
+        ActionRegistry registry = ActionRegistry.getInstance();
+        if (!registry.hasRejected()) {return DomainCache.DOMAIN_FILE;}
+        Path file = directory().resolve("domain" + domainModified + ".pddl");
+        synchronized (this) {
+            if (!Files.exists(file)) {Files.write(file, registry.getSupportedDomain().getBytes(StandardCharsets.UTF_8));}
+        }
+        return file.toString();
+    }
+
+    /**
+     * Creates a named pipe with mkfifo, remembering if named pipes are not supported.
+     *
+     * @param file The path of the pipe.
+     * @return True if the pipe was created, false otherwise.
+     */
+    private boolean createFifo(Path file) {
+        try {
+            Process mkfifo = new ProcessBuilder("mkfifo", file.toString()).redirectErrorStream(true).start();
+            if (mkfifo.waitFor() == 0) {return true;}
+        } catch (IOException e) {
+            // No mkfifo on this platform
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        fifoSupported = false;
+        return false;
+    }
+
+    /**
+     * Gets the directory holding the named pipes, creating it on first use.
+     *
+     * @return The directory.
+     * @throws IOException If the directory cannot be created.
+     */
+    private synchronized Path directory() throws IOException {
+        if (directory == null) {directory = Files.createTempDirectory("ff");}
+        return directory;
+    }
+
+    /**
+     * Gets the number of processes waiting for a problem.
+     *
+     * @return The number of warm processes.
+     */
+    public int getWarmWorkers() {
+        return warm.size();
+    }
+
+    /**
+     * Gets the number of requests that had to start FF because no warm process was ready.
+     *
+     * @return The number of cold starts.
+     */
+    public long getColdStarts() {
+        return coldStarts.get();
+    }
+
+    /**
+     * Kills the warm processes and removes their files.
+     */
+    public void shutdown() {
+        shutdown = true;
+        drain();
+        Path dir = directory;
+        if (dir != null) {dir.toFile().delete();}
+    }
+
+    private void drain() {
+        Worker worker;
+        while ((worker = warm.poll()) != null) {worker.destroy();}
+    }
+
+    /**
+     * A started FF process and the file it reads its problem from.
+     */
+    private static final class Worker {
+        private final Process process;
+        private final Path file;
+        private final boolean fifo;
+        private final long domainModified;
+        private volatile boolean sending;
+
+        Worker(Process process, Path file, boolean fifo, long domainModified) {
+            this.process = process;
+            this.file = file;
+            this.fifo = fifo;
+            this.domainModified = domainModified;
+        }
+
+        /**
+         * Hands the problem to the process. Opening the pipe waits until FF opens it for reading.
+         */
+        void send(String problem) throws IOException {
+            if (!fifo) {return;}
+            sending = true;
+            try (OutputStream out = Files.newOutputStream(file)) {
+                out.write(problem.getBytes(StandardCharsets.UTF_8));
+            } finally {
+                sending = false;
+            }
+        }
+
+        /**
+         * Kills the process. If a problem is still being handed over, the pipe is opened for reading so the writer
+         * is released instead of waiting for a reader that will never come.
+         */
+        void kill() {
+            process.destroyForcibly();
+            if (sending) {
+                Thread release = new Thread(() -> {
+                    try (InputStream in = Files.newInputStream(file)) {
+                        in.readAllBytes();
+                    } catch (IOException e) {
+                        // Nothing left to release
+                    }
+                });
+                release.setDaemon(true);
+                release.start();
+            }
+        }
+
+        void destroy() {
+            process.destroyForcibly();
+            try {Files.deleteIfExists(file);} catch (IOException e) {e.printStackTrace();}
+        }
+    }
+}
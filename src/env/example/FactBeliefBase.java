@@ -0,0 +1,85 @@
+package example;
+
+import java.util.BitSet;
+
+import jason.asSyntax.Atom;
+import jason.asSyntax.Literal;
+import jason.asSyntax.PredicateIndicator;
+import jason.bb.BeliefBase;
+import jason.bb.DefaultBeliefBase;
+
+/**
+ * The FactBeliefBase class is a belief base that also keeps the facts it holds as a bitset of FactTable ids.
+ * The bitset is updated on every add and remove, so taking a snapshot never has to scan or print the beliefs.
+ * Snapshots are taken under the lock of the belief base, so they never see part of a BeliefUpdate.
+ * Select it in the .mas2j file with beliefBaseClass example.FactBeliefBase.
+ */
+public class FactBeliefBase extends DefaultBeliefBase {
+    private static final long serialVersionUID = 1L;
+
+    private final BitSet facts = new BitSet();
+
+    @Override
+    protected boolean add(Literal l, boolean addInEnd) {
+        boolean added = super.add(l, addInEnd);
+        if (added && FactTable.isFact(l)) {
+            synchronized (facts) {facts.set(FactTable.intern(l));}
+        }
+        return added;
+    }
+
+    @Override
+    public boolean remove(Literal l) {
+        boolean removed = super.remove(l);
+        // Removing one source of a belief held from several sources keeps the belief
+        if (removed && FactTable.isFact(l) && contains(l) == null) {
+            synchronized (facts) {facts.clear(FactTable.intern(l));}
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean abolish(Atom namespace, PredicateIndicator pi) {
+        boolean abolished = super.abolish(namespace, pi);
+        if (abolished) {rebuild();}
+        return abolished;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        synchronized (facts) {facts.clear();}
+    }
+
+    @Override
+    public BeliefBase clone() {
+        FactBeliefBase copy = new FactBeliefBase();
+        for (Literal belief : this) {copy.add(1, belief.copy());}
+        return copy;
+    }
+
+    /**
+     * Gets a copy of the facts currently held.
+     *
+     * @return A bitset of fact ids owned by the caller.
+     */
+    public BitSet snapshot() {
+        synchronized (getLock()) {
+            synchronized (facts) {return (BitSet) facts.clone();}
+        }
+    }
+
+    /**
+     * Recomputes the bitset from the beliefs.
+     */
+    private void rebuild() {
+        BitSet current = new BitSet();
+        for (Literal belief : this) {
+            if (FactTable.isFact(belief)) {current.set(FactTable.intern(belief));}
+        }
+        synchronized (facts) {
+            facts.clear();
+            facts.or(current);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jason.asSemantics.Agent;
+import jason.asSyntax.Literal;
+
+/**
+ * The FactTable class interns ground beliefs as dense integer ids shared by all agents, ignoring annotations such as
+ * [source(self)]. A set of beliefs is then a bitset over these ids, which FactBeliefBase keeps up to date as beliefs
+ * are added and removed. Missing goals and the beliefs handed to the planners are both read from this bitset.
+ */
+public class FactTable {
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static int size;
+
+    /**
+     * Gets the id of a fact, assigning a new id the first time the fact is seen.
+     *
+     * @param fact The fact, e.g. "hasMoney".
+     * @return The id of the fact.
+     */
+    public static int intern(String fact) {
+        Integer id = ids.get(fact);
+        if (id != null) {return id;}
+        synchronized (FactTable.class) {
+            id = ids.get(fact);
+            if (id != null) {return id;}
+            if (size == names.length) {names = Arrays.copyOf(names, size * 2);}
+            names[size] = fact;
+            ids.put(fact, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Gets the id of a belief, ignoring its annotations.
+     *
+     * @param belief The belief.
+     * @return The id of the belief.
+     */
+    public static int intern(Literal belief) {
+        return intern(key(belief));
+    }
+
+    /**
+     * Gets the id of a fact without assigning one.
+     *
+     * @param fact The fact.
+     * @return The id of the fact, or -1 if no agent has held it.
+     */
+    public static int lookup(String fact) {
+        Integer id = ids.get(fact);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the fact with the given id.
+     *
+     * @param id The id of the fact.
+     * @return The fact.
+     */
+    public static String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * Gets the facts of a bitset, in id order.
+     *
+     * @param facts The bitset of fact ids.
+     * @return The facts.
+     */
+    public static List<String> names(BitSet facts) {
+        String[] table = names;
+        List<String> result = new ArrayList<>(facts.cardinality());
+        for (int id = facts.nextSetBit(0); id >= 0; id = facts.nextSetBit(id + 1)) {result.add(table[id]);}
+        return result;
+    }
+
+    /**
+     * Gets a snapshot of the facts an agent believes.
+     *
+     * @param ag The agent.
+     * @return A bitset of fact ids owned by the caller.
+     */
+    public static BitSet snapshot(Agent ag) {
+        if (ag.getBB() instanceof FactBeliefBase) {return ((FactBeliefBase) ag.getBB()).snapshot();}
+        // Belief bases of other classes are scanned each time
+        BitSet facts = new BitSet();
+        for (Literal belief : ag.getBB()) {
+            if (isFact(belief)) {facts.set(intern(belief));}
+        }
+        return facts;
+    }
+
+    /**
+     * Gets the facts an agent believes, as the strings the planners expect.
+     *
+     * @param ag The agent.
+     * @return The agent's beliefs.
+     */
+    public static List<String> beliefs(Agent ag) {
+        return names(snapshot(ag));
+    }
+
+    /**
+     * Finds the predicates an agent does not believe.
+     *
+     * @param ag The agent.
+     * @param predicates The predicates to check.
+     * @return The missing predicates.
+     */
+    public static List<String> missing(Agent ag, List<String> predicates) {
+        return missing(snapshot(ag), predicates);
+    }
+
+    /**
+     * Finds the predicates that are not in a set of facts.
+     *
+     * @param facts The bitset of fact ids.
+     * @param predicates The predicates to check.
+     * @return The missing predicates.
+     */
+    public static List<String> missing(BitSet facts, List<String> predicates) {
+        List<String> missingPredicates = new ArrayList<>();
+        for (String pred : predicates) {
+            int id = lookup(pred);
+            if (id < 0 || !facts.get(id)) {missingPredicates.add(pred);}
+        }
+        return missingPredicates;
+    }
+
+    /**
+     * Checks if a belief is a fact the planners can use, rather than a rule or a KQML belief.
+     *
+     * @param belief The belief.
+     * @return True if the belief is a fact, false otherwise.
+     */
+    static boolean isFact(Literal belief) {
+        return !belief.isRule() && belief.getNS() == Literal.DefaultNS && !belief.getFunctor().startsWith("kqml");
+    }
+
+    /**
+     * Gets the text of a belief without its annotations.
+     *
+     * @param belief The belief.
+     * @return The text of the belief.
+     */
+    private static String key(Literal belief) {
+        if (belief.getArity() == 0 && !belief.negated()) {return belief.getFunctor();}
+        return belief.copy().clearAnnots().toString();
+    }
+}
@@ -0,0 +1,600 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import main.java.fr.uga.pddl4j.parser.Connective;
+import main.java.fr.uga.pddl4j.parser.Domain;
+import main.java.fr.uga.pddl4j.parser.Exp;
+import main.java.fr.uga.pddl4j.parser.NamedTypedList;
+import main.java.fr.uga.pddl4j.parser.Op;
+import main.java.fr.uga.pddl4j.parser.RequireKey;
+import main.java.fr.uga.pddl4j.parser.Symbol;
+import main.java.fr.uga.pddl4j.parser.TypedSymbol;
+
+/**
+ * The Grounder class grounds a lifted domain, whose predicates and actions have typed parameters, over the objects of
+ * an agent's beliefs. The objects are the constants of the domain, the arguments of beliefs about domain predicates,
+ * typed by the parameters of the predicate, and the argument of a belief named after a type, e.g. shop(tesco).
+ * Actions are only instantiated where their preconditions can be reached from the beliefs: each action is joined with
+ * the facts reached so far, its add effects are reached in turn, and delete effects are ignored until nothing new is
+ * reached. Ground facts and actions are named the way agents write them, e.g. at(home) and go(home,shop), and make up
+ * a propositional domain every planner can use.
+ */
+public class Grounder {
+    private static final String OBJECT = "object";
+    // Predicate that PDDLGenerator always writes to :init
+    private static final String DUMMY_PREDICATE = "dummypredicate";
+
+    private static Logger logger = Logger.getLogger("t1."+"Grounder");
+
+    private final Symbol name;
+    private final Set<RequireKey> requirements;
+    private final boolean lifted;
+    // Parent types of each declared type
+    private final Map<String, List<String>> parents = new HashMap<>();
+    // Constants of the domain with every type they belong to
+    private final Map<String, Set<String>> constants = new LinkedHashMap<>();
+    // Types each argument of each predicate may have
+    private final Map<String, List<List<String>>> predicates = new HashMap<>();
+    // Predicates some action changes, the others only ever hold what the beliefs say
+    private final Set<String> fluents = new HashSet<>();
+    private final List<Schema> schemas = new ArrayList<>();
+
+    /**
+     * Compiles the types, predicates and actions of a parsed domain. Actions with other expressions than conjunctions
+     * of atoms and negated atoms are left out, and a message is logged.
+     *
+     * @param domain The parsed domain.
+     */
+    public Grounder(Domain domain) {
+        this.name = domain.getName();
+        this.requirements = new HashSet<>(domain.getRequirements());
+        for (TypedSymbol type : domain.getTypes()) {
+            List<String> supertypes = new ArrayList<>();
+            for (Symbol parent : type.getTypes()) {supertypes.add(parent.getImage());}
+            parents.put(type.getImage(), supertypes);
+        }
+        boolean parameters = false;
+        for (NamedTypedList predicate : domain.getPredicates()) {
+            List<List<String>> arguments = new ArrayList<>();
+            for (TypedSymbol argument : predicate.getArguments()) {arguments.add(types(argument));}
+            predicates.put(predicate.getName().getImage(), arguments);
+            parameters |= !arguments.isEmpty();
+        }
+        for (TypedSymbol constant : domain.getConstants()) {
+            Set<String> types = new HashSet<>();
+            for (String type : types(constant)) {types.addAll(closure(type));}
+            constants.put(constant.getImage(), types);
+        }
+        for (Op op : domain.getOperators()) {
+            parameters |= !op.getParameters().isEmpty();
+            try {
+                Schema schema = new Schema(op);
+                schemas.add(schema);
+                for (Atom atom : schema.add) {fluents.add(atom.predicate);}
+                for (Atom atom : schema.del) {fluents.add(atom.predicate);}
+            } catch (IllegalArgumentException e) {
+                logger.info("Action " + op.getName().getImage() + " cannot be grounded: " + e.getMessage());
+            }
+        }
+        this.lifted = parameters;
+    }
+
+    /**
+     * Checks if the domain has predicates or actions with parameters, which must be grounded before planning.
+     *
+     * @return True if the domain is lifted, false if it is already propositional.
+     */
+    public boolean isLifted() {return lifted;}
+
+    /**
+     * Reads the objects, static facts and fluent facts of an agent's beliefs.
+     *
+     * @param beliefs The agent's beliefs, e.g. at(home) or shop(tesco).
+     * @return The world of the beliefs.
+     */
+    public World world(List<String> beliefs) {
+        Map<String, Set<String>> objects = new TreeMap<>();
+        for (Map.Entry<String, Set<String>> constant : constants.entrySet()) {objects.put(constant.getKey(), new TreeSet<>(constant.getValue()));}
+        TreeSet<String> statics = new TreeSet<>();
+        Set<String> facts = new HashSet<>();
+        for (String belief : beliefs) {
+            String[] atom = parse(belief);
+            if (atom == null) {continue;}
+            List<List<String>> arguments = predicates.get(atom[0]);
+            if (arguments != null && arguments.size() == atom.length - 1) {
+                for (int i = 1; i < atom.length; i++) {
+                    Set<String> types = objects.computeIfAbsent(atom[i], object -> new TreeSet<>());
+                    for (String type : arguments.get(i - 1)) {types.addAll(closure(type));}
+                }
+                (fluents.contains(atom[0]) ? facts : statics).add(name(atom));
+            } else if (atom.length == 2 && isType(atom[0])) {
+                objects.computeIfAbsent(atom[1], object -> new TreeSet<>()).addAll(closure(atom[0]));
+            }
+        }
+        return new World(objects, statics, facts);
+    }
+
+    /**
+     * Grounds the domain over the objects of a world.
+     *
+     * @param world The world, from {@link #world(List)}.
+     * @param seed The fluent facts to reach from, or null to instantiate every action over objects of the right types
+     * so the domain holds for any state.
+     * @return The ground domain.
+     */
+    public Grounding ground(World world, Set<String> seed) {
+        Map<String, List<String>> byType = new HashMap<>();
+        for (Map.Entry<String, Set<String>> object : world.objects.entrySet()) {
+            for (String type : object.getValue()) {byType.computeIfAbsent(type, t -> new ArrayList<>()).add(object.getKey());}
+        }
+        Reached reached = new Reached();
+        Map<String, GroundAction> actions = new LinkedHashMap<>();
+        if (seed == null) {
+            for (Schema schema : schemas) {schema.instantiate(new String[schema.params.length], 0, world, byType, actions, null);}
+            for (GroundAction action : actions.values()) {
+                for (String fact : action.pre) {reached.add(fact);}
+                for (String fact : action.add) {reached.add(fact);}
+                for (String fact : action.preNegative) {reached.add(fact);}
+                for (String fact : action.del) {reached.add(fact);}
+            }
+        } else {
+            Set<String> delta = new LinkedHashSet<>(seed);
+            delta.addAll(world.statics);
+            if (predicates.containsKey(DUMMY_PREDICATE)) {delta.add(DUMMY_PREDICATE);}
+            boolean first = true;
+            while (!delta.isEmpty()) {
+                reached.mark();
+                for (String fact : delta) {reached.add(fact);}
+                Set<String> added = new LinkedHashSet<>();
+                for (Schema schema : schemas) {
+                    List<GroundAction> found = new ArrayList<>();
+                    if (schema.pre.isEmpty()) {
+                        // Actions without preconditions are only reached once
+                        if (first) {schema.instantiate(new String[schema.params.length], 0, world, byType, actions, found);}
+                    } else {
+                        for (int i = 0; i < schema.pre.size(); i++) {
+                            if (reached.hasDelta(schema.pre.get(i).predicate)) {schema.join(i, 0, new String[schema.params.length], reached, world, byType, actions, found);}
+                        }
+                    }
+                    for (GroundAction action : found) {
+                        for (String fact : action.add) {
+                            if (!reached.contains(fact)) {added.add(fact);}
+                        }
+                    }
+                }
+                delta = added;
+                first = false;
+            }
+        }
+        return new Grounding(domain(actions.values(), reached.names), seed == null ? null : reached.names, seed, actions.size());
+    }
+
+    /**
+     * Builds the propositional domain of the ground actions. Negative preconditions and delete effects on facts that
+     * can never hold are left out.
+     *
+     * @param actions The ground actions.
+     * @param facts The facts that can hold.
+     * @return The propositional domain.
+     */
+    private Domain domain(Iterable<GroundAction> actions, Set<String> facts) {
+        Domain domain = new Domain(new Symbol(Symbol.Kind.DOMAIN, name.getImage()));
+        for (RequireKey requirement : requirements) {
+            if (requirement != RequireKey.TYPING) {domain.addRequirement(requirement);}
+        }
+        for (String fact : facts) {domain.addPredicate(new NamedTypedList(new Symbol(Symbol.Kind.PREDICATE, fact)));}
+        if (predicates.containsKey(DUMMY_PREDICATE) && !facts.contains(DUMMY_PREDICATE)) {domain.addPredicate(new NamedTypedList(new Symbol(Symbol.Kind.PREDICATE, DUMMY_PREDICATE)));}
+        for (GroundAction action : actions) {
+            Exp pre = new Exp(Connective.AND);
+            for (String fact : action.pre) {pre.addChild(atom(fact));}
+            for (String fact : action.preNegative) {
+                if (facts.contains(fact)) {pre.addChild(not(atom(fact)));}
+            }
+            Exp effects = new Exp(Connective.AND);
+            for (String fact : action.add) {effects.addChild(atom(fact));}
+            for (String fact : action.del) {
+                if (facts.contains(fact)) {effects.addChild(not(atom(fact)));}
+            }
+            domain.addOperator(new Op(new Symbol(Symbol.Kind.ACTION, action.name), new ArrayList<>(), pre, effects));
+        }
+        return domain;
+    }
+
+    /**
+     * Gets the objects of a world that are not constants of the domain, e.g. for the :objects of a problem.
+     *
+     * @param world The world.
+     * @return The most specific type of each object, in name order.
+     */
+    public Map<String, String> objects(World world) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> object : world.objects.entrySet()) {
+            if (constants.containsKey(object.getKey())) {continue;}
+            String specific = OBJECT;
+            for (String type : object.getValue()) {
+                if (closure(type).containsAll(closure(specific))) {specific = type;}
+            }
+            result.put(object.getKey(), specific);
+        }
+        return result;
+    }
+
+    /**
+     * Gets a type and every type above it.
+     *
+     * @param type The type.
+     * @return The type, its ancestors and the root type.
+     */
+    private Set<String> closure(String type) {
+        Set<String> types = new HashSet<>();
+        List<String> open = new ArrayList<>();
+        open.add(type);
+        while (!open.isEmpty()) {
+            String next = open.remove(open.size() - 1);
+            if (types.add(next)) {open.addAll(parents.getOrDefault(next, Collections.emptyList()));}
+        }
+        types.add(OBJECT);
+        return types;
+    }
+
+    private boolean isType(String type) {
+        if (parents.containsKey(type)) {return true;}
+        for (List<String> supertypes : parents.values()) {
+            if (supertypes.contains(type)) {return true;}
+        }
+        return false;
+    }
+
+    /**
+     * Gets the types of a parameter, several for (either ...) types and the root type if it has none.
+     */
+    private static List<String> types(TypedSymbol symbol) {
+        List<String> types = new ArrayList<>();
+        for (Symbol type : symbol.getTypes()) {types.add(type.getImage());}
+        if (types.isEmpty()) {types.add(OBJECT);}
+        return types;
+    }
+
+    /**
+     * Splits a ground atom into its name and arguments.
+     *
+     * @param belief The atom, e.g. sells(tesco,phone).
+     * @return The name followed by the arguments, lower case, or null if an argument is not an object.
+     */
+    static String[] parse(String belief) {
+        String atom = belief.trim().toLowerCase();
+        int open = atom.indexOf('(');
+        if (open < 0) {return new String[]{atom};}
+        if (!atom.endsWith(")")) {return null;}
+        String[] arguments = atom.substring(open + 1, atom.length() - 1).split(",");
+        String[] result = new String[arguments.length + 1];
+        result[0] = atom.substring(0, open);
+        for (int i = 0; i < arguments.length; i++) {
+            result[i + 1] = arguments[i].trim();
+            if (!result[i + 1].matches("[a-z][a-z0-9_-]*")) {return null;}
+        }
+        return result;
+    }
+
+    /**
+     * Names a ground atom the way agents write it.
+     *
+     * @param atom The name followed by the arguments.
+     * @return The name, with the arguments in brackets if there are any.
+     */
+    static String name(String[] atom) {
+        if (atom.length == 1) {return atom[0];}
+        StringBuilder name = new StringBuilder(atom[0]).append('(');
+        for (int i = 1; i < atom.length; i++) {
+            if (i > 1) {name.append(',');}
+            name.append(atom[i]);
+        }
+        return name.append(')').toString();
+    }
+
+    private static Exp atom(String fact) {
+        Exp exp = new Exp(Connective.ATOM);
+        List<Symbol> atom = new ArrayList<>();
+        atom.add(new Symbol(Symbol.Kind.PREDICATE, fact));
+        exp.setAtom(atom);
+        return exp;
+    }
+
+    private static Exp not(Exp atom) {
+        Exp exp = new Exp(Connective.NOT);
+        exp.addChild(atom);
+        return exp;
+    }
+
+    /**
+     * The objects, static facts and fluent facts of an agent's beliefs. Beliefs with the same objects and static facts
+     * share a grounding.
+     */
+    public static final class World {
+        private final Map<String, Set<String>> objects;
+        private final Set<String> statics;
+        private final Set<String> fluents;
+        private final String key;
+
+        private World(Map<String, Set<String>> objects, Set<String> statics, Set<String> fluents) {
+            this.objects = objects;
+            this.statics = statics;
+            this.fluents = fluents;
+            this.key = objects + "|" + statics;
+        }
+
+        /**
+         * Gets the key of the groundings this world can use.
+         *
+         * @return The objects with their types and the static facts.
+         */
+        public String getKey() {return key;}
+
+        /**
+         * Gets the facts of the beliefs that actions can change.
+         *
+         * @return The fluent facts.
+         */
+        public Set<String> getFluents() {return fluents;}
+    }
+
+    /**
+     * A ground domain with the facts that can hold in it.
+     */
+    public static final class Grounding {
+        private final Domain domain;
+        private final Set<String> facts;
+        private final Set<String> seed;
+        private final int actions;
+
+        private Grounding(Domain domain, Set<String> facts, Set<String> seed, int actions) {
+            this.domain = domain;
+            this.facts = facts;
+            this.seed = seed;
+            this.actions = actions;
+        }
+
+        public Domain getDomain() {return domain;}
+
+        /**
+         * Checks if the grounding holds for a world: every fluent fact of the world must be reachable in it. Then
+         * everything reachable from the world is reachable in the grounding too.
+         *
+         * @param world A world with the same key as the one grounded.
+         * @return True if the grounding can be used for the world.
+         */
+        public boolean covers(World world) {
+            return facts == null || facts.containsAll(world.fluents);
+        }
+
+        /**
+         * Gets the fluent facts the grounding was reached from.
+         *
+         * @return The facts, or null if every action was instantiated.
+         */
+        public Set<String> getSeed() {return seed;}
+
+        public int getActions() {return actions;}
+
+        public int getFacts() {return facts == null ? -1 : facts.size();}
+    }
+
+    /**
+     * The facts reached so far, with the facts of the current round marked as new. Facts are indexed by predicate and
+     * by each argument, so joins only look at the facts that match what is already bound.
+     */
+    private static final class Reached {
+        private final Set<String> names = new HashSet<>();
+        private final Map<String, List<String[]>> tuples = new HashMap<>();
+        private final Map<String, List<Integer>> index = new HashMap<>();
+        // Number of facts of each predicate before the current round
+        private final Map<String, Integer> old = new HashMap<>();
+
+        void mark() {
+            old.clear();
+            for (Map.Entry<String, List<String[]>> entry : tuples.entrySet()) {old.put(entry.getKey(), entry.getValue().size());}
+        }
+
+        void add(String fact) {
+            if (!names.add(fact)) {return;}
+            String[] atom = parse(fact);
+            if (atom == null) {return;}
+            List<String[]> list = tuples.computeIfAbsent(atom[0], p -> new ArrayList<>());
+            for (int i = 1; i < atom.length; i++) {index.computeIfAbsent(atom[0] + '/' + i + '/' + atom[i], k -> new ArrayList<>()).add(list.size());}
+            list.add(atom);
+        }
+
+        boolean contains(String fact) {return names.contains(fact);}
+
+        boolean hasDelta(String predicate) {
+            List<String[]> list = tuples.get(predicate);
+            return list != null && list.size() > old.getOrDefault(predicate, 0);
+        }
+    }
+
+    /**
+     * An atom of an action, each argument a parameter or a constant.
+     */
+    private static final class Atom {
+        private final String predicate;
+        private final int[] params;
+        private final String[] constants;
+
+        Atom(List<Symbol> atom, List<String> parameters) {
+            this.predicate = atom.get(0).getImage();
+            this.params = new int[atom.size() - 1];
+            this.constants = new String[atom.size() - 1];
+            for (int i = 1; i < atom.size(); i++) {
+                String argument = atom.get(i).getImage();
+                params[i - 1] = parameters.indexOf(argument);
+                if (params[i - 1] < 0) {constants[i - 1] = argument;}
+            }
+        }
+
+        String ground(String[] binding) {
+            if (params.length == 0) {return predicate;}
+            String[] atom = new String[params.length + 1];
+            atom[0] = predicate;
+            for (int i = 0; i < params.length; i++) {atom[i + 1] = params[i] >= 0 ? binding[params[i]] : constants[i];}
+            return name(atom);
+        }
+    }
+
+    /**
+     * A ground action, with the facts of its preconditions and effects.
+     */
+    private static final class GroundAction {
+        private final String name;
+        private final List<String> pre = new ArrayList<>();
+        private final List<String> preNegative = new ArrayList<>();
+        private final List<String> add = new ArrayList<>();
+        private final List<String> del = new ArrayList<>();
+
+        GroundAction(String name) {this.name = name;}
+    }
+
+    /**
+     * A lifted action: its typed parameters and the atoms of its preconditions and effects.
+     */
+    private final class Schema {
+        private final String name;
+        private final String[] params;
+        private final List<List<String>> paramTypes = new ArrayList<>();
+        private final List<Atom> pre = new ArrayList<>();
+        private final List<Atom> preNegative = new ArrayList<>();
+        private final List<Atom> add = new ArrayList<>();
+        private final List<Atom> del = new ArrayList<>();
+
+        Schema(Op op) {
+            this.name = op.getName().getImage();
+            List<String> parameters = new ArrayList<>();
+            for (TypedSymbol parameter : op.getParameters()) {
+                parameters.add(parameter.getImage());
+                paramTypes.add(types(parameter));
+            }
+            this.params = parameters.toArray(new String[0]);
+            collect(op.getPreconditions(), pre, preNegative, parameters);
+            collect(op.getEffects(), add, del, parameters);
+        }
+
+        private void collect(Exp exp, List<Atom> positive, List<Atom> negative, List<String> parameters) {
+            if (exp == null) {return;}
+            if (exp.getConnective() == Connective.AND) {
+                for (Exp child : exp.getChildren()) {collect(child, positive, negative, parameters);}
+            } else if (exp.getConnective() == Connective.ATOM) {
+                positive.add(new Atom(exp.getAtom(), parameters));
+            } else if (exp.getConnective() == Connective.NOT && exp.getChildren().size() == 1 && exp.getChildren().get(0).getConnective() == Connective.ATOM) {
+                negative.add(new Atom(exp.getChildren().get(0).getAtom(), parameters));
+            } else {
+                throw new IllegalArgumentException(exp.getConnective() + " expressions");
+            }
+        }
+
+        /**
+         * Binds the parameters of the preconditions from the facts reached, the i-th precondition from the facts of
+         * the current round, earlier ones from the facts of earlier rounds and later ones from any, so each match is
+         * found in one round only.
+         */
+        void join(int delta, int k, String[] binding, Reached reached, World world, Map<String, List<String>> byType, Map<String, GroundAction> actions, List<GroundAction> found) {
+            if (k == pre.size()) {
+                instantiate(binding, 0, world, byType, actions, found);
+                return;
+            }
+            // The new facts are joined first, they are the fewest
+            int position = k == 0 ? delta : (k <= delta ? k - 1 : k);
+            Atom atom = pre.get(position);
+            List<String[]> tuples = reached.tuples.get(atom.predicate);
+            if (tuples == null) {return;}
+            int from = position == delta ? reached.old.getOrDefault(atom.predicate, 0) : 0;
+            int to = position < delta ? reached.old.getOrDefault(atom.predicate, 0) : tuples.size();
+
+            // Only look at facts that match the smallest index of an argument that is already known
+            List<Integer> candidates = null;
+            for (int i = 0; i < atom.params.length; i++) {
+                String known = atom.params[i] >= 0 ? binding[atom.params[i]] : atom.constants[i];
+                if (known == null) {continue;}
+                List<Integer> indexed = reached.index.get(atom.predicate + '/' + (i + 1) + '/' + known);
+                if (indexed == null) {return;}
+                if (candidates == null || indexed.size() < candidates.size()) {candidates = indexed;}
+            }
+            int count = candidates == null ? to - from : candidates.size();
+            for (int c = 0; c < count; c++) {
+                int t = candidates == null ? from + c : candidates.get(c);
+                if (t < from || t >= to) {continue;}
+                String[] tuple = tuples.get(t);
+                if (tuple.length != atom.params.length + 1) {continue;}
+                String[] next = binding.clone();
+                if (bind(atom, tuple, next, world)) {join(delta, k + 1, next, reached, world, byType, actions, found);}
+            }
+        }
+
+        private boolean bind(Atom atom, String[] tuple, String[] binding, World world) {
+            for (int i = 0; i < atom.params.length; i++) {
+                String value = tuple[i + 1];
+                int p = atom.params[i];
+                if (p < 0) {
+                    if (!atom.constants[i].equals(value)) {return false;}
+                } else if (binding[p] == null) {
+                    if (!hasType(value, paramTypes.get(p), world)) {return false;}
+                    binding[p] = value;
+                } else if (!binding[p].equals(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Binds the parameters left over objects of their types and adds each new ground action.
+         */
+        void instantiate(String[] binding, int p, World world, Map<String, List<String>> byType, Map<String, GroundAction> actions, List<GroundAction> found) {
+            if (p == params.length) {
+                String[] atom = new String[params.length + 1];
+                atom[0] = name;
+                System.arraycopy(binding, 0, atom, 1, params.length);
+                String ground = name(atom);
+                if (actions.containsKey(ground)) {return;}
+                GroundAction action = new GroundAction(ground);
+                for (Atom a : pre) {action.pre.add(a.ground(binding));}
+                for (Atom a : preNegative) {action.preNegative.add(a.ground(binding));}
+                for (Atom a : add) {action.add.add(a.ground(binding));}
+                for (Atom a : del) {action.del.add(a.ground(binding));}
+                actions.put(ground, action);
+                if (found != null) {found.add(action);}
+                return;
+            }
+            if (binding[p] != null) {
+                instantiate(binding, p + 1, world, byType, actions, found);
+                return;
+            }
+            Set<String> objects = new TreeSet<>();
+            for (String type : paramTypes.get(p)) {objects.addAll(byType.getOrDefault(type, Collections.emptyList()));}
+            for (String object : objects) {
+                binding[p] = object;
+                instantiate(binding, p + 1, world, byType, actions, found);
+            }
+            binding[p] = null;
+        }
+
+        private boolean hasType(String object, List<String> types, World world) {
+            Set<String> has = world.objects.get(object);
+            if (has == null) {return false;}
+            for (String type : types) {
+                if (has.contains(type)) {return true;}
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package example;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Histogram class records non-negative values, such as planning latencies or plan lengths, in buckets that
+ * double in width. Recording never locks, so every planner thread can report into the same histogram. Percentiles are
+ * the upper bound of the bucket they fall in, so they are accurate to within a factor of two.
+ */
+public class Histogram implements HistogramMBean {
+    // Bucket 0 holds 0, bucket i holds values from 2^(i-1) to 2^i - 1
+    private static final int BUCKETS = 64;
+
+    private final String unit;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param unit The unit of the recorded values, e.g. "us" or "steps".
+     */
+    public Histogram(String unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value The value to record.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+        count.increment();
+        total.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Gets the value below which the given fraction of the recorded values fall.
+     *
+     * @param fraction The fraction, between 0 and 1.
+     * @return The upper bound of the bucket holding the percentile, or 0 if nothing was recorded.
+     */
+    public long percentile(double fraction) {
+        long recorded = 0;
+        for (int i = 0; i < BUCKETS; i++) {recorded += buckets.get(i);}
+        long rank = (long) Math.ceil(fraction * recorded);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {return Math.min(i == 0 ? 0 : (1L << i) - 1, getMax());}
+        }
+        return 0;
+    }
+
+    @Override
+    public String getUnit() {return unit;}
+
+    @Override
+    public long getCount() {return count.sum();}
+
+    @Override
+    public long getTotal() {return total.sum();}
+
+    @Override
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getTotal() / n;
+    }
+
+    @Override
+    public long getMax() {return max.get();}
+
+    @Override
+    public long getP50() {return percentile(0.5);}
+
+    @Override
+    public long getP90() {return percentile(0.9);}
+
+    @Override
+    public long getP99() {return percentile(0.99);}
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, total=%d%s, mean=%.1f, p50=%d, p90=%d, p99=%d, max=%d", getCount(), getTotal(), unit, getMean(), getP50(), getP90(), getP99(), getMax());
+    }
+}
@@ -0,0 +1,22 @@
+package example;
+
+/**
+ * The management interface of a Histogram, as seen from JMX clients such as jconsole.
+ */
+public interface HistogramMBean {
+    String getUnit();
+
+    long getCount();
+
+    long getTotal();
+
+    double getMean();
+
+    long getMax();
+
+    long getP50();
+
+    long getP90();
+
+    long getP99();
+}
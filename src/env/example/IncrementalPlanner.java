@@ -0,0 +1,154 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The IncrementalPlanner class keeps what the built-in STRIPS planner learned for each agent between the calls of an
+ * online recovery. Online planning executes one step and plans again from the state it led to. When that state lies
+ * on the last plan, the rest of the plan is returned without a search. Otherwise the search starts from the heuristic
+ * values the earlier searches met and learned, in the manner of Adaptive A*.
+ * What an agent learned is dropped when it plans for another goal or with another configuration, and when the memory
+ * grows past -Dincremental.maxStates=n states, 100000 by default. Only its plans are kept when the goal shrinks to
+ * predicates it already planned for, as recoveries do once some of their predicates hold.
+ */
+public class IncrementalPlanner {
+    private static final int MAX_STATES = Integer.getInteger("incremental.maxStates", 100000);
+
+    private final StripsPlanner planner;
+    private final Map<String, Memory> memories = new ConcurrentHashMap<>();
+
+    /**
+     * What the searches of one agent towards one goal have learned.
+     */
+    public static class Memory {
+        private final Set<String> goals;
+        private final PlanningConfig config;
+        // States are remembered over the facts relevant to the goal the memory was made for
+        private final Relevance relevance;
+        private final Map<BitSet, Integer> heuristics = new ConcurrentHashMap<>();
+        private final Map<BitSet, List<String>> plans = new ConcurrentHashMap<>();
+
+        private Memory(Set<String> goals, PlanningConfig config, Relevance relevance) {
+            this.goals = goals;
+            this.config = config;
+            this.relevance = relevance;
+        }
+
+        /**
+         * Gets the heuristic value of a state.
+         *
+         * @param state The state.
+         * @return The value met or learned by an earlier search, or null if there is none.
+         */
+        public Integer heuristic(BitSet state) {
+            return heuristics.get(state);
+        }
+
+        /**
+         * Remembers the heuristic value of a state, keeping the larger if it already has one.
+         *
+         * @param state The state.
+         * @param heuristic The heuristic value.
+         */
+        public void learnHeuristic(BitSet state, int heuristic) {
+            if (heuristics.size() >= MAX_STATES) {forget();}
+            heuristics.merge(state, heuristic, Math::max);
+        }
+
+        /**
+         * Gets the rest of a plan from a state.
+         *
+         * @param state The state.
+         * @return The actions of a plan found from or through the state, or null if there is none.
+         */
+        public List<String> plan(BitSet state) {
+            return plans.get(state);
+        }
+
+        /**
+         * Remembers the rest of a plan from a state.
+         *
+         * @param state The state.
+         * @param plan The actions from the state to the goal.
+         */
+        public void learnPlan(BitSet state, List<String> plan) {
+            if (plans.size() >= MAX_STATES) {forget();}
+            plans.put(state, new ArrayList<>(plan));
+        }
+
+        private void forget() {
+            heuristics.clear();
+            plans.clear();
+        }
+    }
+
+    /**
+     * Creates an incremental planner over the built-in STRIPS planner of a domain.
+     *
+     * @param planner The built-in STRIPS planner.
+     */
+    public IncrementalPlanner(StripsPlanner planner) {
+        this.planner = planner;
+    }
+
+    /**
+     * Creates an incremental planner over the built-in STRIPS planner of a domain with more actions, keeping what the
+     * searches of the planner it replaces learned. Its plans stay valid. Its heuristic values may overestimate where a new
+     * action shortens the way to the goal, which can only make a search return a longer plan.
+     *
+     * @param planner The built-in STRIPS planner.
+     * @param previous The incremental planner of the domain with fewer actions.
+     */
+    public IncrementalPlanner(StripsPlanner planner, IncrementalPlanner previous) {
+        this(planner);
+        memories.putAll(previous.memories);
+    }
+
+    /**
+     * Finds a plan for an agent, reusing what its earlier searches for the same goal learned.
+     *
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param relevance The relevant part of the domain, from the analysis of these predicates, or null to use it all.
+     * @param config The planning configuration.
+     * @param cancellation The cancellation of the request, or null if it cannot be cancelled.
+     * @return The names of the actions in the plan, empty if there is no plan or the request was cancelled.
+     */
+    public List<String> plan(String agName, List<String> beliefs, List<String> predicates, long deadline, Relevance relevance, PlanningConfig config, Cancellation cancellation) {
+        Set<String> goals = new HashSet<>();
+        for (String predicate : predicates) {goals.add(predicate.toLowerCase());}
+        Memory memory = memories.get(agName);
+        // Recoveries drop predicates from the goal as they are achieved, a plan for all of them still reaches the rest
+        if (memory != null && memory.config.equals(config) && memory.goals.containsAll(goals)) {
+            List<String> rest = memory.plan(planner.state(beliefs, memory.relevance));
+            if (rest != null) {
+                PlanningMetrics.getInstance().recordIncremental(true);
+                return new ArrayList<>(rest);
+            }
+        }
+        PlanningMetrics.getInstance().recordIncremental(false);
+        // Heuristic values only hold for the goal they were learned for
+        if (memory == null || !memory.config.equals(config) || !memory.goals.equals(goals)) {
+            memory = new Memory(goals, config, relevance);
+            memories.put(agName, memory);
+        }
+        return planner.plan(beliefs, predicates, deadline, relevance, config, cancellation, memory);
+    }
+
+    /**
+     * Drops what an agent's searches learned, e.g. when it stops.
+     *
+     * @param agName The name of the agent.
+     */
+    public void forget(String agName) {
+        memories.remove(agName);
+    }
+}
@@ -0,0 +1,334 @@
+package example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import jason.asSyntax.Literal;
+
+import example.ActionRegistry.ActionSchema;
+
+/**
+ * The MacroLibrary class learns macro actions from the actions executed by successful recoveries. Every run of 2 to
+ * 4 actions (-Dmacro.maxLength=n) is counted, and a run seen in 3 recoveries (-Dmacro.minCount=n) becomes a macro,
+ * up to 8 macros (-Dmacro.max=n). Runs within a macro are not learned on their own. A macro has the merged
+ * preconditions and effects of its actions, so a planner reaches the end of a repair it has made before in one step.
+ * Plans are expanded back into the actions before they are executed. Learning is turned off with
+ * -Dmacro.learn=false. With -Dmacro.file=macros.txt the macros are read when the library is created and written
+ * whenever one is learned, so they are kept between runs.
+ */
+public class MacroLibrary {
+    // Prefix of the names of macro actions, which no action of the domain may start with
+    private static final String PREFIX = "__macro";
+    // Most runs counted at once, runs seen after that are only counted if they were seen before
+    private static final int MAX_COUNTED = 10000;
+
+    private static final boolean LEARN = !"false".equalsIgnoreCase(System.getProperty("macro.learn"));
+    private static final int MIN_COUNT = Integer.getInteger("macro.minCount", 3);
+    private static final int MAX_LENGTH = Integer.getInteger("macro.maxLength", 4);
+    private static final int MAX_MACROS = Integer.getInteger("macro.max", 8);
+    private static final String FILE = System.getProperty("macro.file");
+
+    private static MacroLibrary instance;
+
+    private Logger logger = Logger.getLogger("t1."+"Macro");
+
+    // Steps of each macro by name, in the order they were learned
+    private final Map<String, List<String>> macros = new HashMap<>();
+    private final List<List<String>> learned = new ArrayList<>();
+    // Recoveries each run of actions was seen in, and the runs that cannot be merged into one action
+    private final Map<List<String>, Integer> counts = new HashMap<>();
+    private final Set<List<String>> rejected = new HashSet<>();
+    private volatile int version;
+
+    /**
+     * Gets the macros shared by all agents, reading the macro file the first time if one is set.
+     *
+     * @return The macro library.
+     */
+    public static synchronized MacroLibrary getInstance() {
+        if (instance == null) {
+            instance = new MacroLibrary();
+            if (FILE != null && new File(FILE).isFile()) {instance.read(FILE);}
+        }
+        return instance;
+    }
+
+    /**
+     * Checks if an action is a macro.
+     *
+     * @param name The name of the action.
+     * @return True if the action is a macro, false otherwise.
+     */
+    public static boolean isMacro(String name) {
+        return name.toLowerCase(Locale.ROOT).startsWith(PREFIX);
+    }
+
+    /**
+     * Records the actions a successful recovery executed, learning the runs of them that recoveries keep repeating.
+     *
+     * @param steps The executed actions, in order.
+     */
+    public synchronized void record(List<String> steps) {
+        if (!LEARN || steps.size() < 2 || learned.size() >= MAX_MACROS) {return;}
+        // A run repeated within one recovery is only counted once
+        Set<List<String>> runs = new LinkedHashSet<>();
+        for (int length = Math.min(MAX_LENGTH, steps.size()); length >= 2; length--) {
+            for (int i = 0; i + length <= steps.size(); i++) {runs.add(normalise(steps.subList(i, i + length)));}
+        }
+        // Longer runs are learned first, they save the most depth, and the runs within a macro add nothing to it
+        for (List<String> run : runs) {
+            if (rejected.contains(run) || contained(run)) {continue;}
+            if (!counts.containsKey(run) && counts.size() >= MAX_COUNTED) {continue;}
+            int count = counts.merge(run, 1, Integer::sum);
+            if (count >= MIN_COUNT && learned.size() < MAX_MACROS) {learn(run);}
+        }
+    }
+
+    /**
+     * Checks if a run of actions is a macro or part of one.
+     *
+     * @param run The actions.
+     * @return True if a macro holds the run, false otherwise.
+     */
+    private boolean contained(List<String> run) {
+        for (List<String> macro : learned) {
+            if (Collections.indexOfSubList(macro, run) >= 0) {return true;}
+        }
+        return false;
+    }
+
+    /**
+     * Adds a run of actions as a macro if it can be merged into one action.
+     *
+     * @param run The actions of the macro.
+     */
+    private void learn(List<String> run) {
+        counts.remove(run);
+        if (compile(run) == null) {
+            rejected.add(run);
+            return;
+        }
+        add(run);
+        logger.info("Learned " + name(run) + " = " + run);
+        PlanningMetrics.getInstance().recordMacro();
+        if (FILE != null) {
+            try {write(FILE);} catch (IOException e) {
+                System.out.println("Error occured writing the macros to " + FILE);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Adds a macro, changing the version so the domain adds its action.
+     *
+     * @param run The actions of the macro.
+     */
+    private void add(List<String> run) {
+        macros.put(name(run), run);
+        learned.add(run);
+        version++;
+    }
+
+    /**
+     * Gets the version of the library, which changes whenever a macro is learned.
+     *
+     * @return The version.
+     */
+    public int getVersion() {return version;}
+
+    /**
+     * Gets the macros that can be merged into one action with the actions of the current domain.
+     *
+     * @return The macros, in the order they were learned.
+     */
+    public synchronized List<Macro> getMacros() {
+        List<Macro> result = new ArrayList<>();
+        for (List<String> run : learned) {
+            Macro macro = compile(run);
+            if (macro != null) {result.add(macro);}
+        }
+        return result;
+    }
+
+    /**
+     * Replaces every macro in a plan by its actions.
+     *
+     * @param plan The plan, which may contain macros.
+     * @return The plan of domain actions only, the same list if it has no macros.
+     */
+    public List<String> expand(List<String> plan) {
+        if (version == 0) {return plan;}
+        boolean found = false;
+        for (String step : plan) {found |= isMacro(step);}
+        if (!found) {return plan;}
+        List<String> expanded = new ArrayList<>();
+        synchronized (this) {
+            for (String step : plan) {
+                List<String> steps = macros.get(step.toLowerCase(Locale.ROOT));
+                if (steps == null) {expanded.add(step);} else {expanded.addAll(steps);}
+            }
+        }
+        return expanded;
+    }
+
+    /**
+     * Gets the number of macros learned or read.
+     *
+     * @return The number of macros.
+     */
+    public synchronized int size() {return learned.size();}
+
+    /**
+     * Merges a run of actions into one action. Each action's preconditions that no earlier action added become
+     * preconditions of the macro, and its effects replace the effects of the earlier actions on the same facts.
+     *
+     * @param run The actions of the macro.
+     * @return The macro, or null if an action is unknown or needs a fact an earlier action deleted.
+     */
+    private Macro compile(List<String> run) {
+        ActionRegistry registry;
+        try {
+            registry = ActionRegistry.getInstance();
+        } catch (IOException e) {
+            System.out.println("Error occured compiling " + run);
+            e.printStackTrace();
+            return null;
+        }
+        Set<String> preconditions = new LinkedHashSet<>();
+        Set<String> addList = new LinkedHashSet<>();
+        Set<String> deleteList = new LinkedHashSet<>();
+        for (String step : run) {
+            ActionSchema action = registry.get(step);
+            if (action == null || !action.getParameters().isEmpty()) {return null;}
+            for (Literal literal : action.getPreconditions()) {
+                String fact = fact(literal);
+                if (deleteList.contains(fact)) {return null;}
+                if (!addList.contains(fact)) {preconditions.add(fact);}
+            }
+            // The planners delete before they add, so an action that does both keeps the fact
+            for (Literal literal : action.getDeleteList()) {
+                addList.remove(fact(literal));
+                deleteList.add(fact(literal));
+            }
+            for (Literal literal : action.getAddList()) {
+                deleteList.remove(fact(literal));
+                addList.add(fact(literal));
+            }
+        }
+        return new Macro(name(run), run, new ArrayList<>(preconditions), new ArrayList<>(addList), new ArrayList<>(deleteList));
+    }
+
+    /**
+     * Gets the name of a fact as the planners know it, e.g. "hasmoney" or "at(home)".
+     *
+     * @param literal The fact.
+     * @return The name of the fact.
+     */
+    private static String fact(Literal literal) {
+        return literal.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gets the name of the macro for a run of actions, the same for the same actions in any case.
+     *
+     * @param run The actions.
+     * @return The name of the macro.
+     */
+    private static String name(List<String> run) {
+        // Ground actions such as go(home,shop) keep their brackets, which the planners accept in action names
+        return PREFIX + "-" + String.join("-", run);
+    }
+
+    /**
+     * Copies a run of actions in lower case.
+     *
+     * @param steps The actions.
+     * @return The copy.
+     */
+    private static List<String> normalise(List<String> steps) {
+        List<String> run = new ArrayList<>(steps.size());
+        for (String step : steps) {run.add(step.toLowerCase(Locale.ROOT));}
+        return Collections.unmodifiableList(run);
+    }
+
+    /**
+     * Writes the macros to a file, one macro per line with its actions separated by spaces.
+     *
+     * @param file The file.
+     * @throws IOException If the file cannot be written.
+     */
+    private void write(String file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (List<String> run : learned) {lines.add(String.join(" ", run));}
+        Files.write(Paths.get(file), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the macros of an earlier run. Macros the current domain cannot merge are kept, in case the domain changes
+     * back, but never reach a planner.
+     *
+     * @param file The file.
+     */
+    private void read(String file) {
+        try {
+            for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+                if (line.trim().isEmpty() || learned.size() >= MAX_MACROS) {continue;}
+                List<String> run = normalise(Arrays.asList(line.trim().split("\\s+")));
+                if (run.size() >= 2 && !macros.containsKey(name(run))) {add(run);}
+            }
+            logger.info("Macros: " + learned.size() + " read from " + file);
+        } catch (IOException e) {
+            System.out.println("Error occured reading the macros from " + file);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The merged preconditions and effects of a run of actions.
+     */
+    public static final class Macro {
+        private final String name;
+        private final List<String> steps;
+        private final List<String> preconditions;
+        private final List<String> addList;
+        private final List<String> deleteList;
+
+        Macro(String name, List<String> steps, List<String> preconditions, List<String> addList, List<String> deleteList) {
+            this.name = name;
+            this.steps = steps;
+            this.preconditions = Collections.unmodifiableList(preconditions);
+            this.addList = Collections.unmodifiableList(addList);
+            this.deleteList = Collections.unmodifiableList(deleteList);
+        }
+
+        public String getName() {return name;}
+
+        public List<String> getSteps() {return steps;}
+
+        public List<String> getPreconditions() {return preconditions;}
+
+        public List<String> getAddList() {return addList;}
+
+        public List<String> getDeleteList() {return deleteList;}
+
+        @Override
+        public String toString() {
+            return name + " pre=" + preconditions + " add=" + addList + " del=" + deleteList;
+        }
+    }
+}
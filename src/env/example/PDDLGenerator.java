@@ -1,17 +1,65 @@
 package example;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
- * The PDDLGenerator class is responsible for generating PDDL problem files based on given beliefs and predicates.
+ * The PDDLGenerator class is responsible for generating PDDL problems based on given beliefs and predicates.
+ * Problems are built in memory, files are only written for the external planner or for debugging.
  */
 public class PDDLGenerator {
 
+    /**
+     * Write each agent's problem to agNameproblem.pddl in the working directory (debugging only)
+     */
+    public static boolean debugDump = false;
+
+    /**
+     * Builds a PDDL problem based on the specified beliefs and predicates.
+     *
+     * @param beliefs The list of beliefs to be included in the PDDL problem.
+     * @param predicates The list of predicates representing the goal state of the PDDL problem.
+     * @return The PDDL problem.
+     */
+    public static String build(List<String> beliefs, List<String> predicates) {
+        return build(beliefs, predicates, new HashMap<>());
+    }
+
+    /**
+     * Builds a PDDL problem for a lifted domain, declaring the objects the beliefs and predicates refer to.
+     * Beliefs and predicates with arguments, e.g. at(home), are written as PDDL atoms, (at home).
+     *
+     * @param beliefs The list of beliefs to be included in the PDDL problem.
+     * @param predicates The list of predicates representing the goal state of the PDDL problem.
+     * @param objects The type of each object that is not a constant of the domain.
+     * @return The PDDL problem.
+     */
+    public static String build(List<String> beliefs, List<String> predicates, Map<String, String> objects) {
+        StringBuilder problem = new StringBuilder(256);
+
+        // Define your custom data for each section, FF only accepts a problem for the domain it has read
+        String domainName = domainName();
+        List<String> goalState = preprocessPredicates(predicates);
+
+        // Write PDDL content to the buffer using custom data
+        writePDDLHeader(problem, "textingproblem", domainName);
+        writePDDLObjects(problem, objects);
+        writePDDLInitialState(problem, beliefs, goalState);
+        writePDDLGoalState(problem, goalState);
+        writePDDLFooter(problem);
+        return problem.toString();
+    }
+
     /**
      * Generates a PDDL problem file based on the specified agent name, beliefs, and predicates.
-     * 
+     *
      * @param agName The name of the agent.
      * @param beliefs The list of beliefs to be included in the PDDL problem.
      * @param predicates The list of predicates representing the goal state of the PDDL problem.
@@ -19,26 +67,8 @@ public class PDDLGenerator {
     public static void generate(String agName, List<String> beliefs, List<String> predicates) {
         try {
             // Specify the file path for the PDDL file
-            String filePath = agName+"problem.pddl";
-            //System.out.println(filePath);
-
-            // Create a FileWriter
-            FileWriter writer = new FileWriter(filePath);
-
-            // Define your custom data for each section
-            String domainName = "shoppingdomain"; // Can be anything really
-            String[] initialState = beliefs.toArray(new String[0]);
-
-            // Write PDDL content to the file using custom data
-            writePDDLHeader(writer, "textingproblem", domainName);
-            //writePDDLObjects(writer, objectDeclarations);
-            writePDDLInitialState(writer, initialState, preprocessPredicates(predicates));
-            writePDDLGoalState(writer, preprocessPredicates(predicates));
-            writePDDLFooter(writer);
-
-            // Close the FileWriter
-            writer.close();
-
+            Path filePath = Paths.get(agName+"problem.pddl");
+            Files.write(filePath, build(beliefs, predicates).getBytes(StandardCharsets.UTF_8));
         } catch (IOException e) {
             System.out.println("Error occured generating problem.pddl");
             e.printStackTrace();
@@ -46,104 +76,120 @@ public class PDDLGenerator {
     }
 
     /**
-     * Writes the PDDL header to the file.
-     * 
-     * @param writer The FileWriter object.
+     * Gets the name of the domain in domain.pddl.
+     *
+     * @return The name of the domain, or shoppingdomain if the domain cannot be read.
+     */
+    private static String domainName() {
+        try {return DomainCache.getInstance().getName();} catch (Exception e) {return "shoppingdomain";}
+    }
+
+    /**
+     * Writes the PDDL header to the buffer.
+     *
+     * @param problem The buffer holding the problem.
      * @param problemName The name of the PDDL problem.
      * @param domainName The name of the PDDL domain.
-     * @throws IOException If an I/O error occurs.
      */
-    private static void writePDDLHeader(FileWriter writer, String problemName, String domainName) throws IOException {
-        try {
-            writer.write("(define (problem " + problemName + ")\n");
-            writer.write("  (:domain " + domainName + ")\n");
-        } catch (IOException e) {
-            System.out.println("Error in writePDDLHeader");
-            e.printStackTrace();
+    private static void writePDDLHeader(StringBuilder problem, String problemName, String domainName) {
+        problem.append("(define (problem ").append(problemName).append(")\n");
+        problem.append("  (:domain ").append(domainName).append(")\n");
+    }
+
+
+    /**
+     * Writes the PDDL objects to the buffer, grouped by type. Nothing is written if there are no objects.
+     *
+     * @param problem The buffer holding the problem.
+     * @param objects The type of each object.
+     */
+    private static void writePDDLObjects(StringBuilder problem, Map<String, String> objects) {
+        if (objects.isEmpty()) {return;}
+        Map<String, List<String>> byType = new TreeMap<>();
+        for (Map.Entry<String, String> object : objects.entrySet()) {byType.computeIfAbsent(object.getValue(), type -> new ArrayList<>()).add(object.getKey());}
+        problem.append("  (:objects\n");
+        for (Map.Entry<String, List<String>> type : byType.entrySet()) {
+            problem.append("    ").append(String.join(" ", type.getValue())).append(" - ").append(type.getKey()).append("\n");
         }
+        problem.append("  )\n");
     }
 
+    /**
+     * Writes a fact as the inside of a PDDL atom, e.g. at(home) as "at home".
+     *
+     * @param fact The fact as the agents write it.
+     * @return The name of the fact followed by its arguments.
+     */
+    private static String atom(String fact) {
+        int open = fact.indexOf('(');
+        if (open < 0 || !fact.endsWith(")")) {return fact;}
+        StringBuilder atom = new StringBuilder(fact.substring(0, open).trim());
+        for (String argument : fact.substring(open + 1, fact.length() - 1).split(",")) {atom.append(' ').append(argument.trim());}
+        return atom.toString();
+    }
 
     /**
-     * Writes the PDDL initial state to the file.
-     * 
-     * @param writer The FileWriter object.
-     * @param initialState The array of initial state predicates.
+     * Writes the PDDL initial state to the buffer.
+     *
+     * @param problem The buffer holding the problem.
+     * @param initialState The list of initial state predicates.
      * @param goalState The list of goal state predicates.
-     * @throws IOException If an I/O error occurs.
      */
-    private static void writePDDLInitialState(FileWriter writer, String[] initialState, List<String> goalState) throws IOException {
-        try {
-            writer.write("  (:init\n");
-            if(initialState.length >= 1) {
-                for (String initialStateFact : initialState) {
-                    writer.write("    (" + initialStateFact + ")\n");
-                }
-            } else {
-                for (String goalStateFact :goalState) {
-                    writer.write("    (not (" + goalStateFact + "))\n");
-                }       
+    private static void writePDDLInitialState(StringBuilder problem, List<String> initialState, List<String> goalState) {
+        problem.append("  (:init\n");
+        if(initialState.size() >= 1) {
+            for (String initialStateFact : initialState) {
+                problem.append("    (").append(atom(initialStateFact)).append(")\n");
+            }
+        } else {
+            for (String goalStateFact :goalState) {
+                problem.append("    (not (").append(atom(goalStateFact)).append("))\n");
             }
-            writer.write("    (" + "dummyPredicate" + ")\n");   
-            writer.write("  )\n");
-        } catch (IOException e) {
-            System.out.println("Error in writePDDLInitialState");
-            e.printStackTrace();
         }
+        problem.append("    (" + "dummyPredicate" + ")\n");
+        problem.append("  )\n");
     }
 
     /**
-     * Writes the PDDL goal state to the file.
-     * 
-     * @param writer The FileWriter object.
+     * Writes the PDDL goal state to the buffer.
+     *
+     * @param problem The buffer holding the problem.
      * @param predicates The list of goal state predicates.
-     * @throws IOException If an I/O error occurs.
      */
-    private static void writePDDLGoalState(FileWriter writer, List<String> predicates) throws IOException {
-        try {
-            writer.write("  (:goal\n");
-            writer.write("    (and\n");
-    
-            for (String predicate : predicates) {
-                writer.write("      (" + predicate + ")\n");
-            }
-    
-            writer.write("    )\n");
-            writer.write("  )\n");
-        } catch (IOException e) {
-            System.out.println("Error in writePDDLGoalState");
-            e.printStackTrace();
+    private static void writePDDLGoalState(StringBuilder problem, List<String> predicates) {
+        problem.append("  (:goal\n");
+        problem.append("    (and\n");
+
+        for (String predicate : predicates) {
+            problem.append("      (").append(atom(predicate)).append(")\n");
         }
+
+        problem.append("    )\n");
+        problem.append("  )\n");
     }
 
     /**
-     * Writes the PDDL footer to the file.
-     * 
-     * @param writer The FileWriter object.
-     * @throws IOException If an I/O error occurs.
+     * Writes the PDDL footer to the buffer.
+     *
+     * @param problem The buffer holding the problem.
      */
-    private static void writePDDLFooter(FileWriter writer) throws IOException {
-        try {
-            writer.write(")\n");
-        } catch (IOException e) {
-            System.out.println("Error in writePDDLFooter");
-            e.printStackTrace();
-        }
+    private static void writePDDLFooter(StringBuilder problem) {
+        problem.append(")\n");
     }
 
     /**
      * Preprocesses the list of predicates, removing parentheses and splitting on '&'.
-     * 
+     *
      * @param predicates The list of predicates to preprocess.
      * @return The preprocessed list of predicates.
      */
-    private static List<String> preprocessPredicates(List<String> predicates) {
+    public static List<String> preprocessPredicates(List<String> predicates) {
         List<String> formattedPredicates = new ArrayList<>();
-    
+
         for (String predicate : predicates) {
             // Remove parentheses only if they are around the entire predicate
             String withoutParentheses = predicate.replaceAll("^\\((.*)\\)$", "$1").trim();
-    
+
             // Split the predicate if it contains "&" and trim each part
             if (withoutParentheses.contains("&")) {
                 String[] parts = withoutParentheses.split("&");
@@ -158,4 +204,3 @@ public class PDDLGenerator {
         return formattedPredicates;
     }
 }
-
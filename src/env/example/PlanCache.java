@@ -0,0 +1,178 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The PlanCache class is a bounded least recently used cache of plans, keyed by the agent's beliefs, the goal
+ * predicates, the choice of planner and the planning configuration. It is cleared whenever domain.pddl changes.
+ */
+public class PlanCache {
+    // Shared cache, its size can be set with -DplanCache.size=n
+    private static final PlanCache instance = new PlanCache(Integer.getInteger("planCache.size", 256));
+
+    private final LinkedHashMap<Key, List<String>> plans;
+    private int capacity;
+    private DomainCache domain;
+    private long hits;
+    private long misses;
+
+    /**
+     * Gets the plan cache shared by all agents.
+     *
+     * @return The shared plan cache.
+     */
+    public static PlanCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates an empty plan cache.
+     *
+     * @param capacity The maximum number of plans to keep.
+     */
+    public PlanCache(int capacity) {
+        this.capacity = capacity;
+        this.plans = new LinkedHashMap<Key, List<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<String>> eldest) {
+                return size() > PlanCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Looks up a plan for the given beliefs and goals.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @param choiceOfPlanner The choice of planner.
+     * @param config The planning configuration.
+     * @return A copy of the cached plan, or null if there is none.
+     */
+    public List<String> get(List<String> beliefs, List<String> predicates, int choiceOfPlanner, PlanningConfig config) {
+        Key key = new Key(beliefs, predicates, choiceOfPlanner, config);
+        DomainCache current = currentDomain();
+        synchronized (this) {
+            checkDomain(current);
+            List<String> plan = plans.get(key);
+            if (plan == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return new ArrayList<>(plan);
+        }
+    }
+
+    /**
+     * Stores a plan for the given beliefs and goals.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @param choiceOfPlanner The choice of planner.
+     * @param config The planning configuration.
+     * @param plan The plan to store.
+     */
+    public void put(List<String> beliefs, List<String> predicates, int choiceOfPlanner, PlanningConfig config, List<String> plan) {
+        Key key = new Key(beliefs, predicates, choiceOfPlanner, config);
+        DomainCache current = currentDomain();
+        synchronized (this) {
+            if (capacity <= 0) {return;}
+            checkDomain(current);
+            plans.put(key, new ArrayList<>(plan));
+        }
+    }
+
+    /**
+     * Sets the maximum number of plans to keep, evicting the least recently used plans if needed.
+     *
+     * @param capacity The maximum number of plans, 0 disables the cache.
+     */
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        while (plans.size() > capacity) {plans.remove(plans.keySet().iterator().next());}
+    }
+
+    /**
+     * Removes every plan from the cache.
+     */
+    public synchronized void clear() {
+        plans.clear();
+    }
+
+    public synchronized int size() {return plans.size();}
+
+    public synchronized long getHits() {return hits;}
+
+    public synchronized long getMisses() {return misses;}
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        double hitRate = lookups == 0 ? 0 : 100.0 * hits / lookups;
+        return String.format("PlanCache[size=%d/%d, hits=%d, misses=%d, hit rate=%.1f%%]", plans.size(), capacity, hits, misses, hitRate);
+    }
+
+    /**
+     * Gets the current domain encoding, without holding the cache's lock.
+     *
+     * @return The current domain, or null if it cannot be encoded.
+     */
+    private static DomainCache currentDomain() {
+        try {return DomainCache.getInstance();} catch (Exception e) {return null;}
+    }
+
+    /**
+     * Clears the cache if domain.pddl has changed since the plans were stored. Plans stay valid when learned macros are
+     * added to the domain, as its actions are unchanged and plans are cached without macros.
+     *
+     * @param current The current domain.
+     */
+    private void checkDomain(DomainCache current) {
+        if (current == null || domain == null || current.getLastModified() != domain.getLastModified()) {
+            plans.clear();
+            domain = current;
+        }
+    }
+
+    /**
+     * Canonical key of a planning request: the beliefs and goals are compared as sorted sets, ignoring case.
+     */
+    private static final class Key {
+        private final List<String> beliefs;
+        private final List<String> goals;
+        private final int choiceOfPlanner;
+        private final PlanningConfig config;
+        private final int hash;
+
+        Key(List<String> beliefs, List<String> predicates, int choiceOfPlanner, PlanningConfig config) {
+            this.beliefs = canonical(beliefs);
+            this.goals = canonical(PDDLGenerator.preprocessPredicates(predicates));
+            this.choiceOfPlanner = choiceOfPlanner;
+            this.config = config;
+            this.hash = 31 * (31 * (31 * this.beliefs.hashCode() + goals.hashCode()) + choiceOfPlanner) + config.hashCode();
+        }
+
+        private static List<String> canonical(List<String> facts) {
+            TreeSet<String> sorted = new TreeSet<>();
+            for (String fact : facts) {sorted.add(fact.trim().toLowerCase());}
+            return new ArrayList<>(sorted);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {return false;}
+            Key key = (Key) other;
+            return hash == key.hash && choiceOfPlanner == key.choiceOfPlanner && config.equals(key.config) && beliefs.equals(key.beliefs) && goals.equals(key.goals);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
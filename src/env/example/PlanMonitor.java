@@ -0,0 +1,140 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.logging.Logger;
+
+import jason.asSemantics.Agent;
+
+/**
+ * The PlanMonitor class executes a full plan one step at a time. After each step the agent's beliefs are compared
+ * with the state the plan expects, and the planner is only called again when the world has diverged so far that the
+ * rest of the plan no longer reaches the goal. A monitor follows the plans of one recovery, either driven by
+ * achieve, which waits for each plan, or one step at a time by a caller that does not block.
+ */
+public class PlanMonitor {
+    // Logger for recovery logging
+    private Logger recoveryLogger = Logger.getLogger("t1."+"Recovery");
+
+    private final String description;
+    // Plan being followed, the states it expects after each action, and the next action to execute
+    private List<String> plan = new ArrayList<>();
+    private List<BitSet> expected = new ArrayList<>();
+    private int step;
+    private StripsPlanner model;
+
+    /**
+     * Creates a monitor for one recovery.
+     *
+     * @param description The description of the recovery used in the log.
+     */
+    public PlanMonitor(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Plans for the missing predicates and executes the plan, replanning only when it no longer holds.
+     *
+     * @param ag The agent performing the actions.
+     * @param action The action runner used to execute each step.
+     * @param predicates The predicates to achieve.
+     * @param budget The budget of the recovery, every plan and executed step is taken from it.
+     * @param config The search strategy, heuristic and limits to plan with.
+     * @return True if every predicate holds afterwards, false if there is no plan or the budget is used up.
+     */
+    public boolean achieve(Agent ag, Action action, List<String> predicates, RecoveryBudget budget, PlanningConfig config) {
+        String agName = ag.getTS().getAgArch().getAgName();
+        BitSet facts = FactTable.snapshot(ag);
+        List<String> beliefs = FactTable.names(facts);
+        List<String> goalStates = FactTable.missing(facts, predicates);
+
+        while (goalStates.size() != 0) {
+            // Plan when there is no plan left to follow
+            if (next() == null) {
+                if (!budget.plannerCall()) {return false;}
+                if (!follow(beliefs, RunPlanner.run(agName, beliefs, goalStates, 4, budget.getDeadline(), config), budget)) {return false;}
+            }
+
+            String act = next().toLowerCase();
+            if (!budget.action()) {return false;}
+            boolean success = action.startAction(ag, act, budget);
+            if (success) {budget.executed(act);} else {recoveryLogger.info("Recovery failure");}
+
+            facts = FactTable.snapshot(ag);
+            beliefs = FactTable.names(facts);
+            goalStates = FactTable.missing(facts, predicates);
+            executed(beliefs, goalStates);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the next action of the plan being followed.
+     *
+     * @return The action, or null if there is no plan left to follow and the planner must be called.
+     */
+    public String next() {
+        return step < plan.size() ? plan.get(step) : null;
+    }
+
+    /**
+     * Starts following a new plan.
+     *
+     * @param beliefs The beliefs the plan was made from.
+     * @param found The plan.
+     * @param budget The budget of the recovery.
+     * @return True if the plan can be followed, false if it is empty or the domain cannot be read.
+     */
+    public boolean follow(List<String> beliefs, List<String> found, RecoveryBudget budget) {
+        if (found.isEmpty()) {
+            if (!budget.expired()) {
+                System.out.println("An error occured with the planner");
+                System.out.println("To debug: Go to RunPlanner.java and print the output.");
+            }
+            return false;
+        }
+        recoveryLogger.info(description+" --> Running Plan --> "+found);
+        // Lifted domains are grounded over the beliefs the plan was made from
+        model = model(beliefs);
+        if (model == null) {return false;}
+        plan = found;
+        expected = model.predict(beliefs, plan);
+        step = 0;
+        return true;
+    }
+
+    /**
+     * Moves past the action just executed and compares the world with what the plan expected. The rest of the plan is
+     * dropped when the world has diverged so far that it no longer reaches the goal.
+     *
+     * @param beliefs The agent's beliefs after the action.
+     * @param goalStates The predicates still missing after the action.
+     */
+    public void executed(List<String> beliefs, List<String> goalStates) {
+        step++;
+        if (goalStates.size() == 0 || step == plan.size()) {return;}
+        boolean asExpected = step <= expected.size() && expected.get(step - 1).equals(model.observe(beliefs));
+        if (!asExpected && !model.reaches(beliefs, plan.subList(step, plan.size()), goalStates)) {
+            recoveryLogger.info(description+" --> World Diverged After "+plan.get(step - 1)+", Replanning");
+            plan = new ArrayList<>();
+            step = 0;
+        }
+    }
+
+    /**
+     * Gets the model of the actions for the given beliefs.
+     *
+     * @param beliefs The agent's beliefs.
+     * @return The built-in STRIPS planner of the domain, or null if the domain cannot be read.
+     */
+    private static StripsPlanner model(List<String> beliefs) {
+        try {
+            return DomainCache.getInstance(beliefs).getStripsPlanner();
+        } catch (Exception e) {
+            System.out.println("Error occured in PlanMonitor.achieve");
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,65 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The PlanResult class is the outcome of a planning request: a plan, or the reason there is none.
+ */
+public class PlanResult {
+    /**
+     * How a planning request ended.
+     */
+    public enum Status {
+        /** A plan was found, it may be empty if the goal already holds. */
+        SOLVED,
+        /** The planner proved that no plan exists. */
+        UNSOLVABLE,
+        /** The planner did not answer before its deadline. */
+        TIMEOUT,
+        /** The planner could not be run or its output was not understood. */
+        ERROR
+    }
+
+    private final Status status;
+    private final List<String> plan;
+    private final String message;
+
+    private PlanResult(Status status, List<String> plan, String message) {
+        this.status = status;
+        this.plan = Collections.unmodifiableList(new ArrayList<>(plan));
+        this.message = message;
+    }
+
+    public static PlanResult solved(List<String> plan) {return new PlanResult(Status.SOLVED, plan, "");}
+
+    public static PlanResult unsolvable(String message) {return new PlanResult(Status.UNSOLVABLE, new ArrayList<>(), message);}
+
+    public static PlanResult timeout(String message) {return new PlanResult(Status.TIMEOUT, new ArrayList<>(), message);}
+
+    public static PlanResult error(String message) {return new PlanResult(Status.ERROR, new ArrayList<>(), message);}
+
+    public Status getStatus() {return status;}
+
+    public boolean isSolved() {return status == Status.SOLVED;}
+
+    /**
+     * Gets the plan.
+     *
+     * @return The steps of the plan, empty unless the request was solved.
+     */
+    public List<String> getPlan() {return plan;}
+
+    /**
+     * Gets a description of why no plan was found.
+     *
+     * @return The message, empty if the request was solved.
+     */
+    public String getMessage() {return message;}
+
+    @Override
+    public String toString() {
+        return isSolved() ? status + " " + plan : status + " " + message;
+    }
+}
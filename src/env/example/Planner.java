@@ -1,6 +1,7 @@
 package example;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -8,7 +9,6 @@ import jason.asSemantics.Agent;
 import jason.asSemantics.DefaultInternalAction;
 import jason.asSemantics.TransitionSystem;
 import jason.asSemantics.Unifier;
-import jason.asSyntax.Literal;
 import jason.asSyntax.Term;
 
 /**
@@ -29,6 +29,18 @@ public class Planner extends DefaultInternalAction {
      * @throws Exception If an exception occurs during execution.
      */
     public Object execute(TransitionSystem ts,Unifier un,Term[] args)throws Exception {
+        // Environment actions change the same belief base, so one change runs at a time
+        synchronized (ts.getAg()) {return plan(ts, args);}
+    }
+
+    /**
+     * Plans for the given predicates and executes the plan on the agent.
+     * 
+     * @param ts The transition system.
+     * @param args The predicates to achieve.
+     * @return True if the planning is successful, false otherwise.
+     */
+    private Object plan(TransitionSystem ts, Term[] args) {
         // Obtain Key Information
         Agent ag = ts.getAg();
         String agName =ts.getAgArch().getAgName();
@@ -41,90 +53,86 @@ public class Planner extends DefaultInternalAction {
         boolean success = false;
 
         // Extract Beliefs, See which predicates are missing from bb..
-        List<String> beliefs = extractBeliefs(ag);
         for (Term pred : args) {predicates.add(pred.toString());}
-        List<String> goalStates = findPredicates(beliefs, predicates);
+        BitSet facts = FactTable.snapshot(ag);
+        List<String> beliefs = FactTable.names(facts);
+        List<String> goalStates = FactTable.missing(facts, predicates);
+        RecoveryBudget budget = RecoveryBudget.start();
+        PlanningConfig config = PlanningConfig.forIntention(ag, ts.getC().getSelectedIntention());
+
+        // Goals no action can reach fail at once, without running a search
+        List<String> unreachable = RunPlanner.unreachable(beliefs, goalStates);
+        if (!unreachable.isEmpty()) {
+            recoveryLogger.info(agName+" --> Direct Planning Call --> Unreachable "+unreachable);
+            return recorded(false, budget);
+        }
 
         // If Type of planning selected is invalid... Default to Online
-        if (typeOfPlanning != 1 && typeOfPlanning != 2) {
+        if (typeOfPlanning < 1 || typeOfPlanning > 6) {
             recoveryLogger.info("Invalid Type of Planning Selected... Defaulting to Online Planning");
             typeOfPlanning = 2;
         }
-        if (typeOfPlanning==1) {
-            List<String> plan = RunPlanner.run(agName, beliefs, goalStates, 1);
-
-            if(plan.isEmpty()){
-                System.out.println("An error occured with the planner");
-                System.out.println("To debug: Go to RunPlanner.java and print the output.");
-                return false;
-            }
-
-            // Log recovery and planner information
-            recoveryLogger.info(agName+" --> Direct Planning Call --> Running Action --> "+plan.toString());
-
-            for (String act : plan) {
-                success = action.startAction(ag, act.toLowerCase()); 
-                if (success) {return true;} else {return false;}
-            }
-        }
-        if (typeOfPlanning ==2) {
+        // Offline planning executes the whole plan and plans again if it falls short, online executes the first step
+        if (typeOfPlanning != 4) {
             // While goalStates are not fulfilled...
             while (goalStates.size() != 0) {
                 // Prepare a list for the planner with the provided argument
-                List<String> plan = RunPlanner.run(agName, beliefs, goalStates, 2);
+                if (!budget.plannerCall()) {return stopped(agName, budget);}
+                List<String> plan = RunPlanner.run(agName, beliefs, goalStates, typeOfPlanning, budget.getDeadline(), config);
                 
                 // Debugging information if plan produced by planner is empty...
                 if(plan.isEmpty()){
+                    if (budget.expired()) {return stopped(agName, budget);}
                     System.out.println("An error occured with the planner");
                     System.out.println("To debug: Go to RunPlanner.java and print the output.");
-                    return false;
+                    return recorded(false, budget);
                 }   
-                recoveryLogger.info(agName+" --> Direct Planning Call --> Running Action --> "+plan.get(0).toString());
+                recoveryLogger.info(agName+" --> Direct Planning Call --> Running Action --> "+(typeOfPlanning == 2 || typeOfPlanning == 6 ? plan.get(0).toString() : plan.toString()));
 
                 // Execute the actions returned by the planner
-                success = action.startAction(ag, plan.get(0).toLowerCase());
-                if (!success) {recoveryLogger.info("Recovery failure");} 
-
-                beliefs = extractBeliefs(ag);
-                goalStates = findPredicates(beliefs, predicates); 
+                for (String act : plan) {
+                    if (!budget.action()) {return stopped(agName, budget);}
+                    success = action.startAction(ag, act.toLowerCase(), budget);
+                    if (success) {budget.executed(act.toLowerCase());} else {recoveryLogger.info("Recovery failure");}
+                }
+
+                facts = FactTable.snapshot(ag);
+                beliefs = FactTable.names(facts);
+                goalStates = FactTable.missing(facts, predicates); 
             }
+            success = true;
+        }
+
+        // Online with execution monitoring, replanning only when the world diverges
+        if (typeOfPlanning == 4) {
+            success = new PlanMonitor(agName+" --> Direct Planning Call").achieve(ag, action, predicates, budget, config);
+            if (!success && budget.getReason() != null) {return stopped(agName, budget);}
         }
 
-        if (success) {return true;} else {return false;}
+        return recorded(success, budget);
     }
 
     /**
-     * Finds the predicates that are missing in the agent's beliefs.
+     * Reports a planning call that ran out of budget.
      * 
-     * @param beliefs The agent's beliefs.
-     * @param predicates The list of predicates to check.
-     * @return The list of missing predicates.
+     * @param agName The name of the agent.
+     * @param budget The budget of the call.
+     * @return False, the call failed.
      */
-    private static List<String> findPredicates(List<String> beliefs, List<String> predicates) {
-        List<String> missingPredicates = new ArrayList<>();
-        for (String pred : predicates) {
-            if (!beliefs.contains(pred)) {
-                missingPredicates.add(pred);
-            }
-        }
-        return missingPredicates;
+    private boolean stopped(String agName, RecoveryBudget budget) {
+        recoveryLogger.info(agName+" --> Direct Planning Call --> Recovery Stopped, "+budget.getReason());
+        return recorded(false, budget);
     }
 
     /**
-     * Extracts beliefs from the agent's belief base, filtering out source annotations.
+     * Reports a finished planning call to the planning metrics.
      * 
-     * @param ag The agent.
-     * @return The list of extracted beliefs.
+     * @param success True if the predicates were achieved.
+     * @param budget The budget of the call.
+     * @return The success of the call.
      */
-    public List<String> extractBeliefs(Agent ag) {
-        List<String> filteredBeliefs = new ArrayList<>();
-        for (Literal b : ag.getBB()) {
-            String beliefString = b.toString();
-            if (!beliefString.startsWith("kqml")) {
-                beliefString = beliefString.replace("[source(self)]", "").replace("[source(percepts)]", "");
-                filteredBeliefs.add(beliefString.trim());
-            }
-        }
-        return filteredBeliefs;
+    private boolean recorded(boolean success, RecoveryBudget budget) {
+        PlanningMetrics.getInstance().recordRecovery(PlanningMetrics.PLANNER, budget, success);
+        return success;
     }
 }
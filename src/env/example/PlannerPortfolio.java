@@ -0,0 +1,115 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The PlannerPortfolio class lists the planners that race on a portfolio request (choice of planner 5). Each member is
+ * a planner, optionally followed by settings that change the request's configuration, e.g. {@code pddl4j:greedy} or
+ * {@code strips:max}. The members are set with -Dportfolio=strips,pddl4j,pddl4j:greedy,ff, and by default are the
+ * built-in STRIPS planner, PDDL4J, greedy PDDL4J and FF if it is available.
+ */
+public class PlannerPortfolio {
+    // The members shared by all agents, set with -Dportfolio=...
+    private static final PlannerPortfolio instance = new PlannerPortfolio(System.getProperty("portfolio", "strips,pddl4j,pddl4j:greedy" + (FFExecutor.getInstance().isAvailable() ? ",ff" : "")));
+
+    private final List<Member> members = new ArrayList<>();
+
+    /**
+     * A planner of the portfolio with its own settings.
+     */
+    public static class Member {
+        private final String name;
+        private final int choiceOfPlanner;
+        private final List<String> settings;
+
+        private Member(String name, int choiceOfPlanner, List<String> settings) {
+            this.name = name;
+            this.choiceOfPlanner = choiceOfPlanner;
+            this.settings = settings;
+        }
+
+        public String getName() {return name;}
+
+        /**
+         * Gets the planner of this member, as a choice of planner: 1 for FF, 3 for the built-in STRIPS planner and 4
+         * for the full PDDL4J plan.
+         *
+         * @return The choice of planner.
+         */
+        public int getChoiceOfPlanner() {return choiceOfPlanner;}
+
+        /**
+         * Applies this member's settings on top of the configuration of the request.
+         *
+         * @param config The configuration of the request.
+         * @return The configuration this member plans with.
+         */
+        public PlanningConfig configure(PlanningConfig config) {
+            for (String setting : settings) {
+                String value = setting.toUpperCase(Locale.ROOT);
+                try {
+                    config = config.withSearch(PlanningConfig.Search.valueOf(value));
+                } catch (IllegalArgumentException notSearch) {
+                    config = config.withHeuristic(PlanningConfig.Heuristic.valueOf(value));
+                }
+            }
+            return config;
+        }
+
+        @Override
+        public String toString() {return name;}
+    }
+
+    /**
+     * Gets the portfolio shared by all agents.
+     *
+     * @return The shared portfolio.
+     */
+    public static PlannerPortfolio getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a portfolio, ignoring members that are not understood.
+     *
+     * @param spec The members separated by commas, each a planner (ff, strips or pddl4j) and settings after colons.
+     */
+    public PlannerPortfolio(String spec) {
+        for (String entry : spec.split(",")) {
+            String name = entry.trim().toLowerCase(Locale.ROOT);
+            if (name.isEmpty()) {continue;}
+            String[] parts = name.split(":");
+            int choice = parts[0].equals("ff") ? 1 : parts[0].equals("strips") ? 3 : parts[0].equals("pddl4j") ? 4 : 0;
+            List<String> settings = new ArrayList<>();
+            for (int i = 1; i < parts.length; i++) {settings.add(parts[i].trim());}
+            Member member = new Member(name, choice, settings);
+            try {
+                member.configure(PlanningConfig.DEFAULT);
+            } catch (IllegalArgumentException e) {
+                choice = 0;
+            }
+            if (choice == 0) {
+                System.out.println("Error occured reading the portfolio member " + name);
+                continue;
+            }
+            members.add(member);
+        }
+    }
+
+    /**
+     * Gets the members of the portfolio.
+     *
+     * @return The members, in the order they are started.
+     */
+    public List<Member> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
+
+    @Override
+    public String toString() {
+        return "PlannerPortfolio" + members;
+    }
+}
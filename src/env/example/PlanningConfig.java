@@ -0,0 +1,242 @@
+package example;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import jason.asSemantics.Agent;
+import jason.asSemantics.IntendedMeans;
+import jason.asSemantics.Intention;
+import jason.asSyntax.Literal;
+import jason.asSyntax.NumberTerm;
+import jason.asSyntax.Plan;
+import jason.asSyntax.Structure;
+import jason.asSyntax.Term;
+
+/**
+ * The PlanningConfig class says how a planning request is searched: the search strategy, the heuristic and its weight,
+ * and limits on the nodes expanded and the time taken. Configurations are immutable, each with method returns a
+ * changed copy.
+ * An agent sets its own in main.mas2j, e.g. {@code alice [planning_search=greedy, planning_timeout=200]}, and a plan
+ * overrides it with a label annotation, e.g. {@code @fast[planning(search(greedy), timeout(200))] +!start <- ...}.
+ */
+public class PlanningConfig {
+    /**
+     * How the search orders the states it expands.
+     */
+    public enum Search {
+        /** A*, by path cost plus heuristic, gives optimal plans with an admissible heuristic such as MAX. */
+        ASTAR,
+        /** A* with the heuristic multiplied by the weight, trading plan length for speed. */
+        WEIGHTED_ASTAR,
+        /** Greedy best-first, by heuristic alone, the fastest and the least optimal. */
+        GREEDY
+    }
+
+    /**
+     * How the distance to the goal is estimated. The built-in STRIPS planner computes MAX, and SUM for every other.
+     */
+    public enum Heuristic {
+        FAST_FORWARD(main.java.fr.uga.pddl4j.heuristics.relaxation.Heuristic.Type.FAST_FORWARD),
+        SUM(main.java.fr.uga.pddl4j.heuristics.relaxation.Heuristic.Type.SUM),
+        SUM_MUTEX(main.java.fr.uga.pddl4j.heuristics.relaxation.Heuristic.Type.SUM_MUTEX),
+        ADJUSTED_SUM(main.java.fr.uga.pddl4j.heuristics.relaxation.Heuristic.Type.AJUSTED_SUM),
+        ADJUSTED_SUM2(main.java.fr.uga.pddl4j.heuristics.relaxation.Heuristic.Type.AJUSTED_SUM2),
+        ADJUSTED_SUM2M(main.java.fr.uga.pddl4j.heuristics.relaxation.Heuristic.Type.AJUSTED_SUM2M),
+        COMBO(main.java.fr.uga.pddl4j.heuristics.relaxation.Heuristic.Type.COMBO),
+        MAX(main.java.fr.uga.pddl4j.heuristics.relaxation.Heuristic.Type.MAX),
+        SET_LEVEL(main.java.fr.uga.pddl4j.heuristics.relaxation.Heuristic.Type.SET_LEVEL);
+
+        private final main.java.fr.uga.pddl4j.heuristics.relaxation.Heuristic.Type type;
+
+        Heuristic(main.java.fr.uga.pddl4j.heuristics.relaxation.Heuristic.Type type) {this.type = type;}
+
+        public main.java.fr.uga.pddl4j.heuristics.relaxation.Heuristic.Type getType() {return type;}
+    }
+
+    /**
+     * The configuration used when nothing is set: A* with each planner's own heuristic and no limits.
+     */
+    public static final PlanningConfig DEFAULT = new PlanningConfig(Search.ASTAR, null, 1, 0, 0);
+
+    // Prefix of the agent options in main.mas2j, and the functor of the plan annotation
+    private static final String OPTION = "planning_";
+    private static final String ANNOTATION = "planning";
+
+    private final Search search;
+    private final Heuristic heuristic;
+    private final double weight;
+    private final int maxNodes;
+    private final long timeoutMillis;
+
+    private PlanningConfig(Search search, Heuristic heuristic, double weight, int maxNodes, long timeoutMillis) {
+        this.search = search;
+        this.heuristic = heuristic;
+        this.weight = weight;
+        this.maxNodes = maxNodes;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public PlanningConfig withSearch(Search search) {return new PlanningConfig(search, heuristic, weight, maxNodes, timeoutMillis);}
+
+    public PlanningConfig withHeuristic(Heuristic heuristic) {return new PlanningConfig(search, heuristic, weight, maxNodes, timeoutMillis);}
+
+    /**
+     * Sets the weight of the heuristic, used by WEIGHTED_ASTAR.
+     *
+     * @param weight The weight, at least 1.
+     * @return The changed configuration.
+     */
+    public PlanningConfig withWeight(double weight) {return new PlanningConfig(search, heuristic, Math.max(1, weight), maxNodes, timeoutMillis);}
+
+    /**
+     * Limits the nodes the built-in STRIPS planner expands. Once reached, it returns its best partial plan as it does
+     * at a deadline. FF and PDDL4J have no such limit.
+     *
+     * @param maxNodes The limit, or 0 for none.
+     * @return The changed configuration.
+     */
+    public PlanningConfig withMaxNodes(int maxNodes) {return new PlanningConfig(search, heuristic, weight, Math.max(0, maxNodes), timeoutMillis);}
+
+    /**
+     * Limits the time a single planner call may take, on top of the deadline of the recovery.
+     *
+     * @param timeoutMillis The limit in milliseconds, or 0 for none.
+     * @return The changed configuration.
+     */
+    public PlanningConfig withTimeout(long timeoutMillis) {return new PlanningConfig(search, heuristic, weight, maxNodes, Math.max(0, timeoutMillis));}
+
+    public Search getSearch() {return search;}
+
+    /**
+     * Gets the heuristic.
+     *
+     * @return The heuristic, or null for each planner's own: MAX for PDDL4J and SUM for the built-in STRIPS planner.
+     */
+    public Heuristic getHeuristic() {return heuristic;}
+
+    /**
+     * Gets the weight of the heuristic for the search strategy: 1 for A*, the weight for weighted A*, and a weight so
+     * large that path costs only break ties for greedy search.
+     *
+     * @return The effective weight.
+     */
+    public double getWeight() {
+        if (search == Search.GREEDY) {return 1000;}
+        return search == Search.WEIGHTED_ASTAR ? weight : 1;
+    }
+
+    public int getMaxNodes() {return maxNodes;}
+
+    public long getTimeout() {return timeoutMillis;}
+
+    /**
+     * Gets the deadline of a planner call, the earlier of the recovery's deadline and this configuration's timeout.
+     *
+     * @param deadline The deadline of the recovery in System.nanoTime() terms, or 0 for none.
+     * @return The deadline of the call, or 0 for none.
+     */
+    public long deadline(long deadline) {
+        if (timeoutMillis == 0) {return deadline;}
+        long own = System.nanoTime() + timeoutMillis * 1000000L;
+        return deadline == 0 || own - deadline < 0 ? own : deadline;
+    }
+
+    /**
+     * Gets the configuration of an agent from its options in main.mas2j: planning_search, planning_heuristic,
+     * planning_weight, planning_nodes and planning_timeout.
+     *
+     * @param ag The agent.
+     * @return The agent's configuration, the default for options it does not set.
+     */
+    public static PlanningConfig forAgent(Agent ag) {
+        PlanningConfig config = DEFAULT;
+        if (ag.getTS() == null || ag.getTS().getSettings() == null) {return config;}
+        for (String key : new String[]{"search", "heuristic", "weight", "nodes", "timeout"}) {
+            String value = ag.getTS().getSettings().getUserParameter(OPTION + key);
+            if (value != null) {config = config.with(key, value.replace("\"", "").trim());}
+        }
+        return config;
+    }
+
+    /**
+     * Gets the configuration of an agent, overridden by the planning annotation of the plan its intention is running.
+     *
+     * @param ag The agent.
+     * @param intention The intention, or null.
+     * @return The configuration.
+     */
+    public static PlanningConfig forIntention(Agent ag, Intention intention) {
+        IntendedMeans im = intention == null ? null : intention.peek();
+        return forAgent(ag).forPlan(im == null ? null : im.getPlan());
+    }
+
+    /**
+     * Overrides this configuration with the planning annotation of a plan's label, if it has one.
+     *
+     * @param plan The plan, or null.
+     * @return The configuration.
+     */
+    public PlanningConfig forPlan(Plan plan) {
+        if (plan == null || plan.getLabel() == null || !plan.getLabel().hasAnnot()) {return this;}
+        PlanningConfig config = this;
+        for (Term annot : plan.getLabel().getAnnots()) {
+            if (!(annot instanceof Literal) || !((Literal) annot).getFunctor().equals(ANNOTATION)) {continue;}
+            for (Term setting : ((Literal) annot).getTerms()) {
+                if (!(setting instanceof Structure) || ((Structure) setting).getArity() != 1) {continue;}
+                Term value = ((Structure) setting).getTerm(0);
+                String text = value.isNumeric() ? numeric((NumberTerm) value) : value.toString().replace("\"", "");
+                config = config.with(((Structure) setting).getFunctor(), text);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Changes one setting by name, ignoring names and values that are not understood.
+     *
+     * @param key The setting: search, heuristic, weight, nodes or timeout.
+     * @param value The value, e.g. greedy, max, 2 or 500.
+     * @return The changed configuration.
+     */
+    private PlanningConfig with(String key, String value) {
+        try {
+            switch (key) {
+                case "search": return withSearch(Search.valueOf(value.toUpperCase(Locale.ROOT)));
+                case "heuristic": return withHeuristic(Heuristic.valueOf(value.toUpperCase(Locale.ROOT)));
+                case "weight": return withWeight(Double.parseDouble(value));
+                case "nodes": return withMaxNodes(Integer.parseInt(value));
+                case "timeout": return withTimeout(Long.parseLong(value));
+                default: return this;
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error occured reading the planning setting " + key + "=" + value);
+            return this;
+        }
+    }
+
+    private static String numeric(NumberTerm value) {
+        try {
+            double number = value.solve();
+            return number == Math.rint(number) ? Long.toString((long) number) : Double.toString(number);
+        } catch (Exception e) {
+            return value.toString();
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof PlanningConfig)) {return false;}
+        PlanningConfig config = (PlanningConfig) other;
+        return search == config.search && heuristic == config.heuristic && getWeight() == config.getWeight() && maxNodes == config.maxNodes && timeoutMillis == config.timeoutMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(search, heuristic, getWeight(), maxNodes, timeoutMillis);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PlanningConfig[search=%s, heuristic=%s, weight=%s, nodes=%d, timeout=%dms]", search, heuristic == null ? "default" : heuristic, getWeight(), maxNodes, timeoutMillis);
+    }
+}
@@ -0,0 +1,409 @@
+package example;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The PlanningMetrics class collects planning and recovery measurements from RunPlanner, Action, Planner and
+ * CustomAgent. Planning latency is kept per agent, per choice of planner and per goal, alongside plan lengths and the
+ * number of plans each recovery needed. Everything is registered as JMX MBeans under the "example" domain, and a
+ * snapshot is logged periodically so it is clear which agents and goals use the planning budget.
+ */
+public class PlanningMetrics implements PlanningMetricsMBean {
+    // Shared metrics, the snapshot interval in seconds can be set with -Dmetrics.interval=n, where 0 disables it
+    private static final PlanningMetrics instance = new PlanningMetrics(Long.getLong("metrics.interval", 60));
+    // Goals are keyed by their predicates, later goals share one histogram once this many are tracked
+    private static final int MAX_GOALS = 256;
+    // Goals listed in a snapshot, by total planning time
+    private static final int TOP_GOALS = 10;
+
+    /**
+     * Where a recovery started: a failed action precondition, an unfulfilled plan context or a direct planning call
+     */
+    public static final String ACTION = "action";
+    public static final String CONTEXT = "context";
+    public static final String PLANNER = "planner";
+
+    private Logger logger = Logger.getLogger("t1."+"Metrics");
+
+    private final long intervalSeconds;
+    private final Map<String, Histogram> latencyByAgent = new ConcurrentHashMap<>();
+    private final Map<Integer, Histogram> latencyByPlanner = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> latencyByGoal = new ConcurrentHashMap<>();
+    private final Map<Integer, Histogram> planLength = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> recoveryIterations = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> recoverySuccesses = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> recoveryFailures = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> recoveryStopped = new ConcurrentHashMap<>();
+    private final Map<PlanResult.Status, LongAdder> ffResults = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> portfolioWins = new ConcurrentHashMap<>();
+    private final LongAdder emptyPlans = new LongAdder();
+    private final LongAdder unreachable = new LongAdder();
+    private final LongAdder policyHits = new LongAdder();
+    private final LongAdder policyMisses = new LongAdder();
+    private final LongAdder incrementalReuses = new LongAdder();
+    private final LongAdder incrementalSearches = new LongAdder();
+    private final LongAdder groundings = new LongAdder();
+    private final LongAdder groundActions = new LongAdder();
+    private final Histogram groundingTime = new Histogram("us");
+    private final LongAdder macrosLearned = new LongAdder();
+    private final LongAdder macroPlans = new LongAdder();
+    // Sizes of the problems before and after relevance pruning: actions, facts and beliefs
+    private final LongAdder[] relevanceTotals = {new LongAdder(), new LongAdder(), new LongAdder()};
+    private final LongAdder[] relevanceKept = {new LongAdder(), new LongAdder(), new LongAdder()};
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> dump;
+
+    /**
+     * Gets the metrics shared by all agents.
+     *
+     * @return The shared metrics.
+     */
+    public static PlanningMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates empty metrics and registers them with the platform MBean server.
+     *
+     * @param intervalSeconds How often a snapshot is logged once started, 0 to never log one.
+     */
+    public PlanningMetrics(long intervalSeconds) {
+        this.intervalSeconds = intervalSeconds;
+        register("example:type=PlanningMetrics", this);
+    }
+
+    /**
+     * Starts logging a snapshot periodically.
+     */
+    public synchronized void start() {
+        if (intervalSeconds <= 0 || dump != null) {return;}
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "planning-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dump = scheduler.scheduleAtFixedRate(() -> logger.info(snapshot()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic snapshots and logs a final one.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            dump = null;
+        }
+        logger.info(snapshot());
+    }
+
+    /**
+     * Records a call to a planner that was not answered from the plan cache.
+     *
+     * @param agName The name of the agent.
+     * @param choiceOfPlanner The choice of planner.
+     * @param predicates The predicates to achieve.
+     * @param nanos How long the planner took, in nanoseconds.
+     * @param plan The plan found, empty or null if there is none.
+     */
+    public void recordPlan(String agName, int choiceOfPlanner, List<String> predicates, long nanos, List<String> plan) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        histogram(latencyByAgent, agName, "type=PlanningLatency,agent="+ObjectName.quote(agName), "us").record(micros);
+        histogram(latencyByPlanner, choiceOfPlanner, "type=PlanningLatency,planner="+choiceOfPlanner, "us").record(micros);
+        histogram(latencyByGoal, goalKey(predicates), null, "us").record(micros);
+        histogram(planLength, choiceOfPlanner, "type=PlanLength,planner="+choiceOfPlanner, " steps").record(plan == null ? 0 : plan.size());
+        if (plan == null || plan.isEmpty()) {emptyPlans.increment();}
+    }
+
+    /**
+     * Records goals rejected as unreachable before any planner was called.
+     */
+    public void recordUnreachable() {
+        unreachable.increment();
+    }
+
+    /**
+     * Records a lookup in a recovery policy.
+     *
+     * @param hit True if the policy gave the plan, false if a planner had to search for it.
+     */
+    public void recordPolicy(boolean hit) {
+        (hit ? policyHits : policyMisses).increment();
+    }
+
+    /**
+     * Records a call to the incremental planner.
+     *
+     * @param reused True if the rest of an earlier plan was returned, false if it searched.
+     */
+    public void recordIncremental(boolean reused) {
+        (reused ? incrementalReuses : incrementalSearches).increment();
+    }
+
+    /**
+     * Records the grounding of a lifted domain for a new world.
+     *
+     * @param nanos The time taken to ground and encode the domain.
+     * @param actions The number of ground actions.
+     */
+    public void recordGrounding(long nanos, int actions) {
+        groundings.increment();
+        groundActions.add(actions);
+        groundingTime.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * Records a macro learned from the recovery history.
+     */
+    public void recordMacro() {
+        macrosLearned.increment();
+    }
+
+    /**
+     * Records a plan that used a learned macro.
+     */
+    public void recordMacroPlan() {
+        macroPlans.increment();
+    }
+
+    /**
+     * Records how much of the domain relevance pruning left for a call to a planner.
+     *
+     * @param relevance The relevant part of the domain.
+     * @param beliefs The number of beliefs of the agent.
+     * @param relevantBeliefs The number of beliefs kept.
+     */
+    public void recordRelevance(Relevance relevance, int beliefs, int relevantBeliefs) {
+        relevanceTotals[0].add(relevance.getTotalOperators());
+        relevanceKept[0].add(relevance.getOperators());
+        relevanceTotals[1].add(relevance.getTotalFacts());
+        relevanceKept[1].add(relevance.getFacts());
+        relevanceTotals[2].add(beliefs);
+        relevanceKept[2].add(relevantBeliefs);
+    }
+
+    /**
+     * Records the outcome of a request to FF.
+     *
+     * @param status The outcome.
+     */
+    public void recordFF(PlanResult.Status status) {
+        ffResults.computeIfAbsent(status, s -> new LongAdder()).increment();
+    }
+
+    /**
+     * Records the member of the planner portfolio whose plan was used.
+     *
+     * @param member The name of the member, e.g. strips or pddl4j:greedy.
+     */
+    public void recordPortfolioWin(String member) {
+        portfolioWins.computeIfAbsent(member, m -> new LongAdder()).increment();
+    }
+
+    /**
+     * Records a finished recovery.
+     *
+     * @param source Where the recovery started, ACTION, CONTEXT or PLANNER.
+     * @param budget The budget of the recovery, giving the number of plans it asked for and whether it ran out.
+     * @param success True if the recovery achieved its predicates.
+     */
+    public void recordRecovery(String source, RecoveryBudget budget, boolean success) {
+        histogram(recoveryIterations, source, "type=RecoveryIterations,source="+source, " plans").record(budget.getPlannerCalls());
+        (success ? recoverySuccesses : recoveryFailures).computeIfAbsent(source, s -> new LongAdder()).increment();
+        if (!success && budget.getReason() != null) {recoveryStopped.computeIfAbsent(source, s -> new LongAdder()).increment();}
+    }
+
+    @Override
+    public long getPlanningRequests() {return sum(latencyByPlanner);}
+
+    @Override
+    public long getEmptyPlans() {return emptyPlans.sum();}
+
+    @Override
+    public long getUnreachableGoals() {return unreachable.sum();}
+
+    @Override
+    public long getPolicyHits() {return policyHits.sum();}
+
+    @Override
+    public long getPolicyMisses() {return policyMisses.sum();}
+
+    @Override
+    public long getIncrementalReuses() {return incrementalReuses.sum();}
+
+    @Override
+    public long getGroundings() {return groundings.sum();}
+
+    @Override
+    public long getMacroPlans() {return macroPlans.sum();}
+
+    @Override
+    public long getPrunedActions() {return relevanceTotals[0].sum() - relevanceKept[0].sum();}
+
+    @Override
+    public long getPrunedFacts() {return relevanceTotals[1].sum() - relevanceKept[1].sum();}
+
+    @Override
+    public long getPrunedBeliefs() {return relevanceTotals[2].sum() - relevanceKept[2].sum();}
+
+    @Override
+    public long getRecoverySuccesses() {return total(recoverySuccesses);}
+
+    @Override
+    public long getRecoveryFailures() {return total(recoveryFailures);}
+
+    @Override
+    public long getRecoveriesOutOfBudget() {return total(recoveryStopped);}
+
+    @Override
+    public int getCacheSize() {return PlanCache.getInstance().size();}
+
+    @Override
+    public long getCacheHits() {return PlanCache.getInstance().getHits();}
+
+    @Override
+    public long getCacheMisses() {return PlanCache.getInstance().getMisses();}
+
+    @Override
+    public int getPlannerThreads() {return PlanningService.getInstance().getThreads();}
+
+    @Override
+    public int getActivePlanners() {return PlanningService.getInstance().getActive();}
+
+    @Override
+    public int getQueuedRequests() {return PlanningService.getInstance().getQueued();}
+
+    @Override
+    public long getMergedRequests() {return PlanningService.getInstance().getMerged();}
+
+    @Override
+    public int getWarmFFWorkers() {return FFExecutor.getInstance().getWarmWorkers();}
+
+    @Override
+    public long getFFColdStarts() {return FFExecutor.getInstance().getColdStarts();}
+
+    @Override
+    public long getFFTimeouts() {return count(ffResults, PlanResult.Status.TIMEOUT);}
+
+    @Override
+    public String getPortfolioWins() {return new TreeMap<>(portfolioWins).toString();}
+
+    @Override
+    public long getFFErrors() {return count(ffResults, PlanResult.Status.ERROR);}
+
+    /**
+     * Describes every metric, with the goals that took the most planning time first.
+     *
+     * @return The snapshot.
+     */
+    @Override
+    public String snapshot() {
+        StringBuilder out = new StringBuilder("Planning metrics:");
+        out.append(String.format("%n  plans=%d, empty=%d, unreachable=%d, recoveries ok=%d, failed=%d, out of budget=%d", getPlanningRequests(), getEmptyPlans(), getUnreachableGoals(), getRecoverySuccesses(), getRecoveryFailures(), getRecoveriesOutOfBudget()));
+        out.append(String.format("%n  %s", PlanCache.getInstance()));
+        out.append(String.format("%n  policy[hits=%d, misses=%d], incremental[reused=%d, searched=%d]", getPolicyHits(), getPolicyMisses(), getIncrementalReuses(), incrementalSearches.sum()));
+        if (getGroundings() > 0) {out.append(String.format("%n  grounding[groundings=%d, actions=%d, time %s]", getGroundings(), groundActions.sum(), groundingTime));}
+        if (MacroLibrary.getInstance().size() > 0) {out.append(String.format("%n  macros[known=%d, learned=%d, plans using them=%d]", MacroLibrary.getInstance().size(), macrosLearned.sum(), getMacroPlans()));}
+        out.append(String.format("%n  pruned[actions=%d/%d, facts=%d/%d, beliefs=%d/%d]", getPrunedActions(), relevanceTotals[0].sum(), getPrunedFacts(), relevanceTotals[1].sum(), getPrunedBeliefs(), relevanceTotals[2].sum()));
+        out.append(String.format("%n  pool[threads=%d, active=%d, queued=%d, searches=%d, merged=%d]", getPlannerThreads(), getActivePlanners(), getQueuedRequests(), PlanningService.getInstance().getSearches(), getMergedRequests()));
+        out.append(String.format("%n  ff[warm=%d, cold starts=%d, results=%s]", getWarmFFWorkers(), getFFColdStarts(), ffResults));
+        if (!portfolioWins.isEmpty()) {out.append(String.format("%n  portfolio wins=%s", getPortfolioWins()));}
+        for (Object planner : new TreeSet<>(latencyByPlanner.keySet())) {
+            out.append(String.format("%n  latency planner=%s: %s", planner, latencyByPlanner.get(planner)));
+            out.append(String.format("%n  length planner=%s: %s", planner, planLength.get(planner)));
+        }
+        for (String agName : new TreeSet<>(latencyByAgent.keySet())) {
+            out.append(String.format("%n  latency agent=%s: %s", agName, latencyByAgent.get(agName)));
+        }
+        List<Map.Entry<String, Histogram>> goals = new ArrayList<>(latencyByGoal.entrySet());
+        goals.sort((a, b) -> Long.compare(b.getValue().getTotal(), a.getValue().getTotal()));
+        for (Map.Entry<String, Histogram> goal : goals.subList(0, Math.min(TOP_GOALS, goals.size()))) {
+            out.append(String.format("%n  latency goal=%s: %s", goal.getKey(), goal.getValue()));
+        }
+        for (String source : new TreeSet<>(recoveryIterations.keySet())) {
+            out.append(String.format("%n  recovery source=%s: ok=%d, failed=%d, out of budget=%d, iterations %s", source, count(recoverySuccesses, source), count(recoveryFailures, source), count(recoveryStopped, source), recoveryIterations.get(source)));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Gets the histogram for a key, creating and registering it on first use.
+     *
+     * @param histograms The histograms to look in.
+     * @param key The key.
+     * @param name The properties of its MBean name, or null to not register it.
+     * @param unit The unit of its values.
+     * @return The histogram.
+     */
+    private <K> Histogram histogram(Map<K, Histogram> histograms, K key, String name, String unit) {
+        Histogram histogram = histograms.get(key);
+        if (histogram != null) {return histogram;}
+        return histograms.computeIfAbsent(key, k -> {
+            Histogram created = new Histogram(unit);
+            if (name != null) {register("example:"+name, created);}
+            return created;
+        });
+    }
+
+    /**
+     * Gets the key of a goal, the same for the same predicates in any order.
+     *
+     * @param predicates The predicates to achieve.
+     * @return The key.
+     */
+    private String goalKey(List<String> predicates) {
+        String key = String.join(",", new TreeSet<>(predicates));
+        if (latencyByGoal.size() >= MAX_GOALS && !latencyByGoal.containsKey(key)) {return "other";}
+        return key;
+    }
+
+    /**
+     * Registers an MBean, replacing any registered under the same name, e.g. by an earlier run in the same JVM.
+     *
+     * @param name The MBean name.
+     * @param mbean The MBean.
+     */
+    private static void register(String name, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {server.unregisterMBean(objectName);}
+            server.registerMBean(mbean, objectName);
+        } catch (Exception e) {
+            System.out.println("Error occured registering " + name);
+            e.printStackTrace();
+        }
+    }
+
+    private static long sum(Map<?, Histogram> histograms) {
+        long n = 0;
+        for (Histogram histogram : histograms.values()) {n += histogram.getCount();}
+        return n;
+    }
+
+    private static long total(Map<?, LongAdder> counters) {
+        long n = 0;
+        for (LongAdder counter : counters.values()) {n += counter.sum();}
+        return n;
+    }
+
+    private static <K> long count(Map<K, LongAdder> counters, K key) {
+        LongAdder counter = counters.get(key);
+        return counter == null ? 0 : counter.sum();
+    }
+}
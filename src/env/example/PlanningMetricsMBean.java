@@ -0,0 +1,61 @@
+package example;
+
+/**
+ * The management interface of the PlanningMetrics, as seen from JMX clients such as jconsole.
+ * Latency, plan length and recovery iteration histograms are registered as separate Histogram MBeans.
+ */
+public interface PlanningMetricsMBean {
+    long getPlanningRequests();
+
+    long getEmptyPlans();
+
+    long getUnreachableGoals();
+
+    long getPolicyHits();
+
+    long getPolicyMisses();
+
+    long getIncrementalReuses();
+
+    long getGroundings();
+
+    long getMacroPlans();
+
+    long getPrunedActions();
+
+    long getPrunedFacts();
+
+    long getPrunedBeliefs();
+
+    long getRecoverySuccesses();
+
+    long getRecoveryFailures();
+
+    long getRecoveriesOutOfBudget();
+
+    int getCacheSize();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    int getPlannerThreads();
+
+    int getActivePlanners();
+
+    int getQueuedRequests();
+
+    long getMergedRequests();
+
+    int getWarmFFWorkers();
+
+    long getFFColdStarts();
+
+    long getFFTimeouts();
+
+    long getFFErrors();
+
+    String getPortfolioWins();
+
+    String snapshot();
+}
@@ -0,0 +1,241 @@
+package example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * The PlanningService class runs the planning requests of every agent on a fixed pool of planner threads.
+ * Requests for the same problem that arrive while it is queued or being solved are merged into one search, and its
+ * plan is handed to every agent that asked, as long as the search must answer no later than the request. A request
+ * that had more time than the search does not take a plan the search's deadline cut short, it searches on its own.
+ * Waiting requests are kept in one queue per agent and the threads serve the agents in turn, so an agent that fails
+ * many goals at once cannot hold up the others.
+ * The size of the pool can be set with -Dplanner.threads=n, by default one thread per core.
+ */
+public class PlanningService {
+    // Shared service, started by Env before any agent plans
+    private static final PlanningService instance = new PlanningService(Integer.getInteger("planner.threads", Runtime.getRuntime().availableProcessors()));
+
+    private final int threads;
+    // Problems being queued or solved, with the search every request for them waits for
+    private final Map<Object, Search> inFlight = new ConcurrentHashMap<>();
+    // Waiting tasks of each agent, and the agents in the order they are served
+    private final Map<String, ArrayDeque<Runnable>> queues = new HashMap<>();
+    private final ArrayDeque<String> turns = new ArrayDeque<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+    private int queued;
+
+    /**
+     * Gets the service shared by all agents.
+     *
+     * @return The shared service.
+     */
+    public static PlanningService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a service and starts its planner threads. The threads are daemons so they never keep the MAS alive.
+     *
+     * @param threads The number of planner threads.
+     */
+    public PlanningService(int threads) {
+        this.threads = Math.max(1, threads);
+        for (int i = 1; i <= this.threads; i++) {
+            Thread thread = new Thread(this::work, "planner-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Submits a search, merging it with a search for the same problem that has not finished yet.
+     *
+     * @param agName The name of the agent, whose queue the search waits in.
+     * @param key The problem, equal for requests that must get the same plan, or null to never merge.
+     * @param deadline The deadline of the request in System.nanoTime() terms, or 0 for none.
+     * @param complete Checks if a plan reaches the whole problem, rather than the part found by a deadline.
+     * @param search The search.
+     * @return The future plan, a copy of its own for each request.
+     */
+    public CompletableFuture<List<String>> submit(String agName, Object key, long deadline, Predicate<List<String>> complete, Supplier<List<String>> search) {
+        return share(key, deadline, complete, () -> {
+            CompletableFuture<List<String>> plan = new CompletableFuture<>();
+            execute(agName, () -> {
+                try {
+                    plan.complete(search.get());
+                } catch (Throwable e) {
+                    plan.completeExceptionally(e);
+                }
+            });
+            return plan;
+        });
+    }
+
+    /**
+     * Starts work for a problem, unless work for the same problem has not finished yet and must answer by this
+     * request's deadline, in which case its plan is shared instead. A request sharing the plan of a search with an
+     * earlier deadline starts work of its own if that plan is not complete, and stops waiting at its own deadline.
+     *
+     * @param key The problem, or null to never share.
+     * @param deadline The deadline of the request in System.nanoTime() terms, or 0 for none.
+     * @param complete Checks if a plan reaches the whole problem, rather than the part found by a deadline.
+     * @param start Starts the work and returns its future plan.
+     * @return The future plan, a copy of its own for each request.
+     */
+    public CompletableFuture<List<String>> share(Object key, long deadline, Predicate<List<String>> complete, Supplier<CompletableFuture<List<String>>> start) {
+        if (key == null) {return start(start);}
+        Search shared = new Search(deadline);
+        Search existing = inFlight.putIfAbsent(key, shared);
+        if (existing != null) {
+            // A search that may run past this request's deadline would keep it waiting too long
+            if (!existing.answersBy(deadline)) {return start(start);}
+            merged.increment();
+            CompletableFuture<List<String>> plan = existing.plan.thenCompose(found -> existing.deadline == deadline || complete.test(found) ? CompletableFuture.completedFuture(found) : start(start));
+            if (deadline == 0) {return plan.thenApply(PlanningService::copy);}
+            return plan.thenApply(PlanningService::copy).completeOnTimeout(new ArrayList<>(), RecoveryBudget.remainingMillis(deadline, Long.MAX_VALUE), TimeUnit.MILLISECONDS);
+        }
+        searches.increment();
+        try {
+            start.get().whenComplete((plan, error) -> {
+                // Requests from now on search again, or find the plan in the plan cache
+                inFlight.remove(key, shared);
+                if (error != null) {shared.plan.completeExceptionally(error);} else {shared.plan.complete(plan);}
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, shared);
+            shared.plan.completeExceptionally(e);
+        }
+        return shared.plan.thenApply(PlanningService::copy);
+    }
+
+    /**
+     * Starts work that is never shared.
+     *
+     * @param start Starts the work and returns its future plan.
+     * @return The future plan, a copy of its own.
+     */
+    private CompletableFuture<List<String>> start(Supplier<CompletableFuture<List<String>>> start) {
+        searches.increment();
+        return start.get().thenApply(PlanningService::copy);
+    }
+
+    /**
+     * Queues a task for a planner thread behind the agent's earlier tasks.
+     *
+     * @param agName The name of the agent.
+     * @param task The task.
+     */
+    public void execute(String agName, Runnable task) {
+        synchronized (queues) {
+            ArrayDeque<Runnable> queue = queues.computeIfAbsent(agName, name -> new ArrayDeque<>());
+            if (queue.isEmpty()) {turns.add(agName);}
+            queue.add(task);
+            queued++;
+            queues.notify();
+        }
+    }
+
+    /**
+     * Runs the tasks of each agent in turn, one task per turn.
+     */
+    private void work() {
+        while (true) {
+            Runnable task;
+            synchronized (queues) {
+                while (turns.isEmpty()) {
+                    try {
+                        queues.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                String agName = turns.poll();
+                ArrayDeque<Runnable> queue = queues.get(agName);
+                task = queue.poll();
+                queued--;
+                // An agent with more work waits for every other agent's turn before its next task
+                if (queue.isEmpty()) {queues.remove(agName);} else {turns.add(agName);}
+            }
+            active.incrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                System.out.println("Error occured in PlanningService.work");
+                e.printStackTrace();
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A search that requests for the same problem can wait for, with the deadline it was started with.
+     */
+    private static final class Search {
+        private final CompletableFuture<List<String>> plan = new CompletableFuture<>();
+        private final long deadline;
+
+        Search(long deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * Checks if the search must answer no later than a request's deadline.
+         *
+         * @param deadline The deadline of the request in System.nanoTime() terms, or 0 for none.
+         * @return True if the request can wait for the search, false otherwise.
+         */
+        boolean answersBy(long deadline) {
+            return deadline == 0 || (this.deadline != 0 && deadline - this.deadline >= 0);
+        }
+    }
+
+    private static List<String> copy(List<String> plan) {
+        return plan == null ? new ArrayList<>() : new ArrayList<>(plan);
+    }
+
+    public int getThreads() {return threads;}
+
+    /**
+     * Gets the number of tasks being worked on.
+     *
+     * @return The number of busy planner threads.
+     */
+    public int getActive() {return active.get();}
+
+    /**
+     * Gets the number of tasks waiting for a planner thread.
+     *
+     * @return The number of queued tasks.
+     */
+    public int getQueued() {
+        synchronized (queues) {return queued;}
+    }
+
+    /**
+     * Gets the number of searches started, not counting requests merged into them.
+     *
+     * @return The number of searches.
+     */
+    public long getSearches() {return searches.sum();}
+
+    /**
+     * Gets the number of requests answered by a search started for another request.
+     *
+     * @return The number of merged requests.
+     */
+    public long getMerged() {return merged.sum();}
+}
@@ -0,0 +1,183 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RecoveryBudget class bounds a single recovery: how many times it may call the planner, how many actions it may
+ * execute and how long it may run. Once any limit is reached the recovery stops, and the budget says which limit it
+ * was.
+ */
+public class RecoveryBudget {
+    // Maximum number of planner calls per recovery, set with -Drecovery.maxPlans=n
+    private static final int MAX_PLANNER_CALLS = Integer.getInteger("recovery.maxPlans", 10);
+    // Maximum number of actions executed per recovery, set with -Drecovery.maxActions=n
+    private static final int MAX_ACTIONS = Integer.getInteger("recovery.maxActions", 50);
+    // Wall-clock time a recovery may take in milliseconds, set with -Drecovery.deadline=ms
+    private static final long DEADLINE_MILLIS = Long.getLong("recovery.deadline", 10000);
+
+    private final long millis;
+    private final long deadline;
+    private int plannerCalls;
+    private int actions;
+    private String reason;
+    // Actions the recovery executed successfully, which the macro library learns from when the recovery succeeds,
+    // and how deeply the recovery currently running is nested in it
+    private final List<String> steps = new ArrayList<>();
+    private int depth;
+
+    /**
+     * Starts a budget with the configured limits.
+     *
+     * @return The budget.
+     */
+    public static RecoveryBudget start() {
+        return new RecoveryBudget(DEADLINE_MILLIS);
+    }
+
+    /**
+     * Creates a budget whose deadline is the given time from now.
+     *
+     * @param millis The time the recovery may take in milliseconds.
+     */
+    public RecoveryBudget(long millis) {
+        this.millis = millis;
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Takes one planner call from the budget.
+     *
+     * @return True if the planner may be called, false if the budget is used up.
+     */
+    public boolean plannerCall() {
+        if (expired()) {return false;}
+        if (plannerCalls >= MAX_PLANNER_CALLS) {
+            reason = "used all " + MAX_PLANNER_CALLS + " planner calls";
+            return false;
+        }
+        plannerCalls++;
+        return true;
+    }
+
+    /**
+     * Takes one executed action from the budget.
+     *
+     * @return True if the action may be executed, false if the budget is used up.
+     */
+    public boolean action() {
+        if (expired()) {return false;}
+        if (actions >= MAX_ACTIONS) {
+            reason = "executed all " + MAX_ACTIONS + " actions";
+            return false;
+        }
+        actions++;
+        return true;
+    }
+
+    /**
+     * Records an action that was executed successfully. Actions of a nested recovery are left out, so the steps are
+     * the run of the recovery itself, in the order they succeeded.
+     *
+     * @param step The name of the action.
+     */
+    public void executed(String step) {
+        if (depth == 0) {steps.add(step);}
+    }
+
+    /**
+     * Starts a recovery nested in this one, which spends this budget until leaveNested is called.
+     */
+    public void enterNested() {
+        depth++;
+    }
+
+    /**
+     * Ends a recovery nested in this one.
+     */
+    public void leaveNested() {
+        depth--;
+    }
+
+    /**
+     * Checks if the deadline has passed.
+     *
+     * @return True if the deadline has passed, otherwise false.
+     */
+    public boolean expired() {
+        if (reason != null) {return true;}
+        if (System.nanoTime() - deadline < 0) {return false;}
+        reason = "passed the deadline of " + millis + "ms";
+        return true;
+    }
+
+    /**
+     * Gets the deadline in System.nanoTime() terms, for planners that stop early.
+     *
+     * @return The deadline.
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Gets the maximum number of planner calls per recovery.
+     *
+     * @return The limit set with -Drecovery.maxPlans.
+     */
+    public static int getMaxPlannerCalls() {return MAX_PLANNER_CALLS;}
+
+    /**
+     * Gets the maximum number of actions executed per recovery.
+     *
+     * @return The limit set with -Drecovery.maxActions.
+     */
+    public static int getMaxActions() {return MAX_ACTIONS;}
+
+    /**
+     * Gets the time a recovery may take.
+     *
+     * @return The time in milliseconds set with -Drecovery.deadline.
+     */
+    public static long getDeadlineMillis() {return DEADLINE_MILLIS;}
+
+    public int getPlannerCalls() {return plannerCalls;}
+
+    public int getActions() {return actions;}
+
+    /**
+     * Gets the actions the recovery executed successfully so far, without those of nested recoveries.
+     *
+     * @return The actions, in the order they were executed.
+     */
+    public List<String> getSteps() {return Collections.unmodifiableList(steps);}
+
+    /**
+     * Gets the limit that stopped the recovery.
+     *
+     * @return The reason, or null if the budget is not used up.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Gets the time left before a deadline, for planners that take a timeout.
+     *
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param otherwise The timeout in milliseconds to use when there is no deadline.
+     * @return The time left in milliseconds, at least 1.
+     */
+    public static long remainingMillis(long deadline, long otherwise) {
+        if (deadline == 0) {return otherwise;}
+        long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        return Math.max(1, Math.min(left, otherwise));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RecoveryBudget[planner calls=%d/%d, actions=%d/%d, reason=%s]", plannerCalls, MAX_PLANNER_CALLS, actions, MAX_ACTIONS, reason);
+    }
+}
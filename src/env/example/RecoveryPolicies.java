@@ -0,0 +1,204 @@
+package example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * The RecoveryPolicies class holds the recovery policies of the goals agents recover most often, set with
+ * -Dpolicy.goals=onPhone,hasPhone,inCar, where a goal of several predicates joins them with '+'.
+ * The policies are compiled at build time by {@code gradle compilePolicies} into policies.bin, set with
+ * -Dpolicy.file=..., and read when the domain is loaded. Policies missing from the file, or a file written for another
+ * version of the domain, are compiled when the domain is loaded instead.
+ */
+public class RecoveryPolicies {
+    // First bytes of a policy file
+    private static final int MAGIC = 0x504f4c31;
+    // Goals to compile, the file to read and the most relevant facts a table may have
+    private static final String GOALS = System.getProperty("policy.goals", "onPhone,hasPhone,inCar");
+    private static final String FILE = System.getProperty("policy.file", "policies.bin");
+    private static final int MAX_FACTS = Integer.getInteger("policy.maxFacts", 20);
+
+    private static Logger logger = Logger.getLogger("t1."+"Policy");
+
+    private final Map<String, RecoveryPolicy> policies = new HashMap<>();
+
+    /**
+     * Gets the key of a goal, the same for the same predicates in any order or case.
+     *
+     * @param predicates The predicates to achieve.
+     * @return The key.
+     */
+    public static String key(List<String> predicates) {
+        TreeSet<String> sorted = new TreeSet<>();
+        for (String predicate : predicates) {sorted.add(predicate.toLowerCase(Locale.ROOT));}
+        return String.join(",", sorted);
+    }
+
+    /**
+     * Gets the policies of a domain being loaded, read from the policy file where it matches the domain and compiled
+     * otherwise.
+     *
+     * @param domain The domain being loaded.
+     * @param file The domain file.
+     * @return The policies.
+     */
+    public static RecoveryPolicies create(DomainCache domain, String file) {
+        RecoveryPolicies result = new RecoveryPolicies();
+        List<List<String>> goals = goals(GOALS);
+        if (goals.isEmpty()) {return result;}
+        try {
+            long fingerprint = fingerprint(file);
+            if (new File(FILE).isFile()) {result.read(FILE, fingerprint);}
+            int read = result.policies.size();
+            for (List<String> goal : goals) {
+                if (!result.policies.containsKey(key(goal))) {result.add(domain, goal);}
+            }
+            logger.info("Recovery policies: " + read + " read from " + FILE + ", " + (result.policies.size() - read) + " compiled");
+        } catch (Exception e) {
+            System.out.println("Error occured loading the recovery policies");
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    /**
+     * Compiles the policies of the given goals, e.g. for writing to the policy file.
+     *
+     * @param domain The domain.
+     * @param goals The goals, separated by commas, with the predicates of each joined by '+'.
+     * @return The policies.
+     */
+    public static RecoveryPolicies compile(DomainCache domain, String goals) {
+        RecoveryPolicies result = new RecoveryPolicies();
+        for (List<String> goal : goals(goals)) {result.add(domain, goal);}
+        return result;
+    }
+
+    /**
+     * Gets the policy of a goal.
+     *
+     * @param predicates The predicates to achieve.
+     * @return The policy, or null if none was compiled for exactly these predicates.
+     */
+    public RecoveryPolicy get(List<String> predicates) {
+        if (policies.isEmpty()) {return null;}
+        return policies.get(key(predicates));
+    }
+
+    public int size() {return policies.size();}
+
+    /**
+     * Compiles the policy of one goal, leaving it out if its table would be too large.
+     *
+     * @param domain The domain.
+     * @param goal The predicates of the goal.
+     */
+    private void add(DomainCache domain, List<String> goal) {
+        Relevance relevance = domain.getRelevanceAnalysis().analyse(goal);
+        RecoveryPolicy policy = domain.getStripsPlanner().compilePolicy(goal, relevance, MAX_FACTS);
+        if (policy == null) {
+            System.out.println("Error occured compiling the recovery policy of " + goal + ": unknown goal or too many facts (" + relevance + ")");
+            return;
+        }
+        policies.put(policy.getGoal(), policy);
+    }
+
+    /**
+     * Writes the policies for a domain.
+     *
+     * @param file The policy file.
+     * @param fingerprint The fingerprint of the domain file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(String file, long fingerprint) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(fingerprint);
+            out.writeInt(policies.size());
+            for (RecoveryPolicy policy : policies.values()) {policy.write(out);}
+        }
+    }
+
+    /**
+     * Reads the policies of a file, unless it was written for another domain.
+     *
+     * @param file The policy file.
+     * @param fingerprint The fingerprint of the domain file.
+     * @throws IOException If the file cannot be read.
+     */
+    private void read(String file, long fingerprint) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {throw new IOException(file + " is not a policy file");}
+            if (in.readLong() != fingerprint) {
+                logger.info(file + " was compiled for another version of the domain and is ignored");
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                RecoveryPolicy policy = RecoveryPolicy.read(in);
+                policies.put(policy.getGoal(), policy);
+            }
+        }
+    }
+
+    /**
+     * Gets a checksum of the domain file, so policies are never used with a domain they were not compiled for.
+     *
+     * @param file The domain file.
+     * @return The checksum.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long fingerprint(String file) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(Paths.get(file)));
+        return crc.getValue();
+    }
+
+    /**
+     * Splits the goals setting into the predicates of each goal.
+     *
+     * @param goals The goals, separated by commas, with the predicates of each joined by '+'.
+     * @return The goals.
+     */
+    private static List<List<String>> goals(String goals) {
+        List<List<String>> result = new ArrayList<>();
+        for (String goal : goals.split(",")) {
+            if (goal.trim().isEmpty()) {continue;}
+            List<String> predicates = new ArrayList<>();
+            for (String predicate : goal.split("\\+")) {predicates.add(predicate.trim());}
+            result.add(predicates);
+        }
+        return result;
+    }
+
+    /**
+     * Compiles the policies of -Dpolicy.goals and writes them to the policy file, run by gradle compilePolicies.
+     *
+     * @param args The domain file and the policy file, by default domain.pddl and policies.bin.
+     * @throws Exception If the domain cannot be loaded or the file cannot be written.
+     */
+    public static void main(String[] args) throws Exception {
+        String domainFile = args.length > 0 ? args[0] : DomainCache.DOMAIN_FILE;
+        String file = args.length > 1 ? args[1] : FILE;
+        RecoveryPolicies result = compile(DomainCache.load(domainFile), GOALS);
+        result.write(file, fingerprint(domainFile));
+        System.out.println("Wrote " + result.size() + " recovery policies to " + file + ": " + Arrays.toString(result.policies.values().toArray()));
+    }
+}
@@ -0,0 +1,194 @@
+package example;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The RecoveryPolicy class is a universal plan for one goal: for every state of the facts relevant to the goal it
+ * holds the first action of a shortest plan to the goal. The table is built once by a backward breadth-first sweep
+ * from the goal states, after which recovering towards the goal only takes one lookup per step.
+ * States are numbered by the bits of their relevant facts, so the table has 2^facts entries of one byte each.
+ */
+public class RecoveryPolicy {
+    // Entries of the table for states with no next action
+    private static final byte GOAL = -1;
+    private static final byte UNSOLVABLE = -2;
+
+    private final String goal;
+    private final String[] facts;
+    private final String[] actions;
+    private final int[] pre;
+    private final int[] preNegative;
+    private final int[] add;
+    private final int[] del;
+    private final byte[] next;
+    private final Map<String, Integer> factIndex = new HashMap<>();
+
+    private RecoveryPolicy(String goal, String[] facts, String[] actions, int[] pre, int[] preNegative, int[] add, int[] del, byte[] next) {
+        this.goal = goal;
+        this.facts = facts;
+        this.actions = actions;
+        this.pre = pre;
+        this.preNegative = preNegative;
+        this.add = add;
+        this.del = del;
+        this.next = next;
+        for (int i = 0; i < facts.length; i++) {factIndex.put(facts[i], i);}
+    }
+
+    /**
+     * Builds the policy for a goal. Actions are given as masks over the relevant facts, bit i being facts[i].
+     *
+     * @param goal The key of the goal, see RecoveryPolicies.key.
+     * @param facts The names of the relevant facts, at most 30.
+     * @param actions The names of the relevant actions, at most 127.
+     * @param pre The facts each action needs to be true.
+     * @param preNegative The facts each action needs to be false.
+     * @param add The facts each action makes true.
+     * @param del The facts each action makes false.
+     * @param goalMask The facts the goal needs to be true.
+     * @return The policy.
+     */
+    public static RecoveryPolicy compile(String goal, String[] facts, String[] actions, int[] pre, int[] preNegative, int[] add, int[] del, int goalMask) {
+        int states = 1 << facts.length;
+        byte[] next = new byte[states];
+        Arrays.fill(next, UNSOLVABLE);
+
+        // Every state holding the goal is at distance 0
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        for (int s = 0; s < states; s++) {
+            if ((s & goalMask) == goalMask) {
+                next[s] = GOAL;
+                queue[tail++] = s;
+            }
+        }
+
+        // Breadth-first over predecessors, so each state is reached first by the end of a shortest plan
+        while (head < tail) {
+            int target = queue[head++];
+            for (int a = 0; a < actions.length; a++) {
+                // A predecessor must already hold what the action adds and lacks what it only deletes
+                if ((target & add[a]) != add[a] || (target & del[a] & ~add[a]) != 0) {continue;}
+                int changed = add[a] | del[a];
+                int fixed = target & ~changed;
+                // The facts the action changes could have been anything before it, try each combination
+                for (int free = changed; ; free = (free - 1) & changed) {
+                    int source = fixed | free;
+                    if (next[source] == UNSOLVABLE && (source & pre[a]) == pre[a] && (source & preNegative[a]) == 0 && ((source & ~del[a]) | add[a]) == target) {
+                        next[source] = (byte) a;
+                        queue[tail++] = source;
+                    }
+                    if (free == 0) {break;}
+                }
+            }
+        }
+        return new RecoveryPolicy(goal, facts, actions, pre, preNegative, add, del, next);
+    }
+
+    /**
+     * Follows the policy from the given beliefs.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param maxSteps The most steps to return, e.g. 1 for online planning.
+     * @return The names of the actions of a shortest plan, or its first steps, or null if the goal already holds or
+     * cannot be reached.
+     */
+    public List<String> plan(List<String> beliefs, int maxSteps) {
+        int state = encode(beliefs);
+        if (next[state] < 0) {return null;}
+        List<String> plan = new ArrayList<>();
+        while (next[state] >= 0 && plan.size() < maxSteps) {
+            int a = next[state];
+            plan.add(actions[a]);
+            state = (state & ~del[a]) | add[a];
+        }
+        return plan;
+    }
+
+    /**
+     * Numbers the state of the relevant facts, ignoring every other belief.
+     *
+     * @param beliefs The agent's beliefs.
+     * @return The number of the state.
+     */
+    private int encode(List<String> beliefs) {
+        int state = 0;
+        for (String belief : beliefs) {
+            Integer index = factIndex.get(belief.toLowerCase());
+            if (index != null) {state |= 1 << index;}
+        }
+        // Mirrors the dummyPredicate that PDDLGenerator always writes to :init
+        Integer dummy = factIndex.get("dummypredicate");
+        if (dummy != null) {state |= 1 << dummy;}
+        return state;
+    }
+
+    public String getGoal() {return goal;}
+
+    /**
+     * Gets the number of states in the table.
+     *
+     * @return The number of states.
+     */
+    public int getStates() {return next.length;}
+
+    /**
+     * Writes the policy, so it can be compiled at build time and read when the MAS starts.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the policy cannot be written.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeUTF(goal);
+        out.writeInt(facts.length);
+        for (String fact : facts) {out.writeUTF(fact);}
+        out.writeInt(actions.length);
+        for (int a = 0; a < actions.length; a++) {
+            out.writeUTF(actions[a]);
+            out.writeInt(pre[a]);
+            out.writeInt(preNegative[a]);
+            out.writeInt(add[a]);
+            out.writeInt(del[a]);
+        }
+        out.write(next);
+    }
+
+    /**
+     * Reads a policy written by write.
+     *
+     * @param in The stream to read from.
+     * @return The policy.
+     * @throws IOException If the policy cannot be read.
+     */
+    public static RecoveryPolicy read(DataInputStream in) throws IOException {
+        String goal = in.readUTF();
+        String[] facts = new String[in.readInt()];
+        if (facts.length > 30) {throw new IOException("Policy for " + goal + " has too many facts");}
+        for (int i = 0; i < facts.length; i++) {facts[i] = in.readUTF();}
+        int count = in.readInt();
+        String[] actions = new String[count];
+        int[] pre = new int[count], preNegative = new int[count], add = new int[count], del = new int[count];
+        for (int a = 0; a < count; a++) {
+            actions[a] = in.readUTF();
+            pre[a] = in.readInt();
+            preNegative[a] = in.readInt();
+            add[a] = in.readInt();
+            del[a] = in.readInt();
+        }
+        byte[] next = new byte[1 << facts.length];
+        in.readFully(next);
+        return new RecoveryPolicy(goal, facts, actions, pre, preNegative, add, del, next);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RecoveryPolicy[goal=%s, facts=%d, actions=%d, states=%d]", goal, facts.length, actions.length, next.length);
+    }
+}
@@ -0,0 +1,157 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import main.java.fr.uga.pddl4j.encoding.CodedProblem;
+import main.java.fr.uga.pddl4j.util.BitOp;
+import main.java.fr.uga.pddl4j.util.CondBitExp;
+
+/**
+ * The RelaxedPlanningGraph class answers whether goals can be reached from a state before any search is run.
+ * Delete effects and negative preconditions are ignored, so a goal the relaxed graph cannot reach cannot be reached by
+ * any planner, while a goal it can reach may still have no plan. Each action is compiled once into a count of its
+ * preconditions and, for each fact, the actions waiting on it, so a check visits every fact and action at most once.
+ */
+public class RelaxedPlanningGraph {
+    private final int facts;
+    private final Map<String, Integer> factIndex;
+
+    // Relaxed actions, one per effect of each action, with the conditions of conditional effects as preconditions
+    private final int[] preCount;
+    private final int[][] addFacts;
+    // Relaxed actions waiting on each fact, and those without preconditions
+    private final int[][] consumers;
+    private final int[] free;
+
+    /**
+     * Compiles the actions of an encoded domain into relaxed actions.
+     *
+     * @param domain The encoded domain.
+     * @param factIndex The number of each fact in the encoding.
+     */
+    public RelaxedPlanningGraph(CodedProblem domain, Map<String, Integer> factIndex) {
+        this.factIndex = factIndex;
+        this.facts = domain.getRelevantFacts().size();
+
+        List<BitSet> pre = new ArrayList<>();
+        List<BitSet> add = new ArrayList<>();
+        for (BitOp op : domain.getOperators()) {
+            if (DomainCache.isGuardAction(op.getName())) {continue;}
+            for (CondBitExp effect : op.getCondEffects()) {
+                if (effect.getEffects().getPositive().isEmpty()) {continue;}
+                BitSet needs = (BitSet) op.getPreconditions().getPositive().clone();
+                needs.or(effect.getCondition().getPositive());
+                pre.add(needs);
+                add.add(effect.getEffects().getPositive());
+            }
+        }
+
+        int count = pre.size();
+        this.preCount = new int[count];
+        this.addFacts = new int[count][];
+        int[] uses = new int[facts];
+        int freeCount = 0;
+        for (int a = 0; a < count; a++) {
+            preCount[a] = pre.get(a).cardinality();
+            addFacts[a] = add.get(a).stream().toArray();
+            if (preCount[a] == 0) {freeCount++;}
+            for (int p = pre.get(a).nextSetBit(0); p >= 0; p = pre.get(a).nextSetBit(p + 1)) {uses[p]++;}
+        }
+        this.consumers = new int[facts][];
+        for (int p = 0; p < facts; p++) {consumers[p] = new int[uses[p]];}
+        this.free = new int[freeCount];
+        freeCount = 0;
+        for (int a = 0; a < count; a++) {
+            if (preCount[a] == 0) {free[freeCount++] = a;}
+            for (int p = pre.get(a).nextSetBit(0); p >= 0; p = pre.get(a).nextSetBit(p + 1)) {consumers[p][--uses[p]] = a;}
+        }
+    }
+
+    /**
+     * Checks if every predicate can be reached from the given beliefs.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @return True if the relaxed graph reaches every predicate, false if no plan can exist.
+     */
+    public boolean reachable(List<String> beliefs, List<String> predicates) {
+        return unreachable(beliefs, predicates).isEmpty();
+    }
+
+    /**
+     * Finds the predicates that cannot be reached from the given beliefs.
+     * Predicates the domain does not know about can never be reached.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @return The predicates no plan can achieve, empty if the relaxed graph reaches them all.
+     */
+    public List<String> unreachable(List<String> beliefs, List<String> predicates) {
+        boolean[] reached = new boolean[facts];
+        int[] queue = new int[facts];
+        int tail = 0;
+        for (String belief : beliefs) {
+            Integer index = factIndex.get(belief.toLowerCase());
+            if (index != null && !reached[index]) {
+                reached[index] = true;
+                queue[tail++] = index;
+            }
+        }
+        // Mirrors the dummyPredicate that PDDLGenerator always writes to :init
+        Integer dummy = factIndex.get("dummypredicate");
+        if (dummy != null && !reached[dummy]) {
+            reached[dummy] = true;
+            queue[tail++] = dummy;
+        }
+
+        List<String> missing = new ArrayList<>();
+        int[] goals = new int[predicates.size()];
+        int left = 0;
+        for (String predicate : predicates) {
+            Integer index = factIndex.get(predicate.toLowerCase());
+            if (index == null) {missing.add(predicate);} else if (!reached[index]) {goals[left++] = index;}
+        }
+        if (left == 0) {return missing;}
+
+        int[] waiting = preCount.clone();
+        for (int a : free) {tail = fire(a, reached, queue, tail);}
+        for (int head = 0; head < tail; head++) {
+            for (int a : consumers[queue[head]]) {
+                if (--waiting[a] == 0) {tail = fire(a, reached, queue, tail);}
+            }
+            // Stop as soon as every goal is reached, most checks end long before the fixpoint
+            if (head % 16 == 15 && all(reached, goals, left)) {return missing;}
+        }
+
+        for (String predicate : predicates) {
+            Integer index = factIndex.get(predicate.toLowerCase());
+            if (index != null && !reached[index]) {missing.add(predicate);}
+        }
+        return missing;
+    }
+
+    /**
+     * Adds the effects of a relaxed action whose preconditions have all been reached.
+     *
+     * @return The new end of the queue.
+     */
+    private int fire(int a, boolean[] reached, int[] queue, int tail) {
+        for (int e : addFacts[a]) {
+            if (!reached[e]) {
+                reached[e] = true;
+                queue[tail++] = e;
+            }
+        }
+        return tail;
+    }
+
+    private static boolean all(boolean[] reached, int[] goals, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!reached[goals[i]]) {return false;}
+        }
+        return true;
+    }
+}
@@ -0,0 +1,84 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Relevance class is the part of a domain that can contribute to one goal, as found by the RelevanceAnalysis.
+ * Actions are numbered as in the encoded domain's operators and facts as in its relevant facts.
+ */
+public class Relevance {
+    private final BitSet operators;
+    private final int totalOperators;
+    private final BitSet facts;
+    private final int totalFacts;
+    private final Map<String, Integer> factIndex;
+
+    /**
+     * Creates the result of an analysis.
+     *
+     * @param operators The relevant actions.
+     * @param totalOperators The number of actions in the domain.
+     * @param facts The relevant facts.
+     * @param totalFacts The number of facts in the domain.
+     * @param factIndex The number of each fact in the encoding.
+     */
+    public Relevance(BitSet operators, int totalOperators, BitSet facts, int totalFacts, Map<String, Integer> factIndex) {
+        this.operators = operators;
+        this.totalOperators = totalOperators;
+        this.facts = facts;
+        this.totalFacts = totalFacts;
+        this.factIndex = factIndex;
+    }
+
+    /**
+     * Checks if an action can contribute to the goal.
+     *
+     * @param operator The number of the action in the encoded domain.
+     * @return True if the action is relevant, otherwise false.
+     */
+    public boolean isRelevant(int operator) {
+        return operators.get(operator);
+    }
+
+    /**
+     * Checks if a fact can change which actions of a plan for the goal apply, or is part of the goal.
+     *
+     * @param fact The number of the fact in the encoding.
+     * @return True if the fact is relevant, otherwise false.
+     */
+    public boolean isRelevantFact(int fact) {
+        return facts.get(fact);
+    }
+
+    /**
+     * Keeps only the beliefs that a relevant action reads or the goal needs.
+     * The other beliefs cannot change which plans work, they only make more states distinct.
+     *
+     * @param beliefs The agent's beliefs.
+     * @return The relevant beliefs.
+     */
+    public List<String> prune(List<String> beliefs) {
+        List<String> relevant = new ArrayList<>();
+        for (String belief : beliefs) {
+            Integer index = factIndex.get(belief.toLowerCase());
+            if (index != null && facts.get(index)) {relevant.add(belief);}
+        }
+        return relevant;
+    }
+
+    public int getOperators() {return operators.cardinality();}
+
+    public int getTotalOperators() {return totalOperators;}
+
+    public int getFacts() {return facts.cardinality();}
+
+    public int getTotalFacts() {return totalFacts;}
+
+    @Override
+    public String toString() {
+        return String.format("kept %d/%d actions and %d/%d facts", getOperators(), totalOperators, getFacts(), totalFacts);
+    }
+}
@@ -0,0 +1,134 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import main.java.fr.uga.pddl4j.encoding.CodedProblem;
+import main.java.fr.uga.pddl4j.util.BitExp;
+import main.java.fr.uga.pddl4j.util.BitOp;
+import main.java.fr.uga.pddl4j.util.CondBitExp;
+
+/**
+ * The RelevanceAnalysis class finds the actions and facts that can contribute to a goal, by regressing from the goal
+ * predicates. A fact is relevant if it is a goal or a precondition of a relevant action. An action is relevant if it
+ * adds a relevant fact, or deletes a fact that a relevant action needs to be false. Every other action can be left
+ * out of a plan without breaking it, so the planners only search over the relevant ones.
+ */
+public class RelevanceAnalysis {
+    private final int facts;
+    private final int operators;
+    // Actions that can appear in a plan, without the guarded actions
+    private final int actions;
+    private final Map<String, Integer> factIndex;
+
+    // Preconditions of each action, including the conditions of its conditional effects
+    private final int[][] needs;
+    private final int[][] needsAbsent;
+    // Actions adding and deleting each fact
+    private final int[][] achievers;
+    private final int[][] deleters;
+
+    /**
+     * Compiles the actions of an encoded domain for the analysis. Actions are numbered as in the domain's operators.
+     *
+     * @param domain The encoded domain.
+     * @param factIndex The number of each fact in the encoding.
+     */
+    public RelevanceAnalysis(CodedProblem domain, Map<String, Integer> factIndex) {
+        this.factIndex = factIndex;
+        this.facts = domain.getRelevantFacts().size();
+        List<BitOp> ops = domain.getOperators();
+        this.operators = ops.size();
+        this.needs = new int[operators][];
+        this.needsAbsent = new int[operators][];
+
+        List<List<Integer>> adding = new ArrayList<>();
+        List<List<Integer>> deleting = new ArrayList<>();
+        for (int f = 0; f < facts; f++) {
+            adding.add(new ArrayList<>());
+            deleting.add(new ArrayList<>());
+        }
+        int actions = 0;
+        for (int a = 0; a < operators; a++) {
+            BitOp op = ops.get(a);
+            BitSet positive = (BitSet) op.getPreconditions().getPositive().clone();
+            BitSet negative = (BitSet) op.getPreconditions().getNegative().clone();
+            BitSet adds = new BitSet();
+            BitSet deletes = new BitSet();
+            for (CondBitExp effect : op.getCondEffects()) {
+                BitExp condition = effect.getCondition();
+                positive.or(condition.getPositive());
+                negative.or(condition.getNegative());
+                adds.or(effect.getEffects().getPositive());
+                deletes.or(effect.getEffects().getNegative());
+            }
+            needs[a] = positive.stream().toArray();
+            needsAbsent[a] = negative.stream().toArray();
+            // Guarded actions can never be applied, so nothing ever depends on them
+            if (DomainCache.isGuardAction(op.getName())) {continue;}
+            actions++;
+            for (int f = adds.nextSetBit(0); f >= 0; f = adds.nextSetBit(f + 1)) {adding.get(f).add(a);}
+            for (int f = deletes.nextSetBit(0); f >= 0; f = deletes.nextSetBit(f + 1)) {deleting.get(f).add(a);}
+        }
+        this.actions = actions;
+        this.achievers = new int[facts][];
+        this.deleters = new int[facts][];
+        for (int f = 0; f < facts; f++) {
+            achievers[f] = adding.get(f).stream().mapToInt(Integer::intValue).toArray();
+            deleters[f] = deleting.get(f).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Finds the actions and facts relevant to the given predicates.
+     * Predicates the domain does not know about are ignored.
+     *
+     * @param predicates The predicates to achieve.
+     * @return The relevant part of the domain.
+     */
+    public Relevance analyse(List<String> predicates) {
+        BitSet relevantOperators = new BitSet(operators);
+        // Facts needed true and facts needed false, each fact is queued once for each
+        boolean[] needed = new boolean[facts];
+        boolean[] neededAbsent = new boolean[facts];
+        int[] queue = new int[2 * facts];
+        int tail = 0;
+        for (String predicate : predicates) {
+            Integer index = factIndex.get(predicate.toLowerCase());
+            if (index != null && !needed[index]) {
+                needed[index] = true;
+                queue[tail++] = index;
+            }
+        }
+
+        for (int head = 0; head < tail; head++) {
+            // Entries of facts needed false are stored as -(fact + 1)
+            int entry = queue[head];
+            int[] contributors = entry >= 0 ? achievers[entry] : deleters[-entry - 1];
+            for (int a : contributors) {
+                if (relevantOperators.get(a)) {continue;}
+                relevantOperators.set(a);
+                for (int p : needs[a]) {
+                    if (!needed[p]) {
+                        needed[p] = true;
+                        queue[tail++] = p;
+                    }
+                }
+                for (int p : needsAbsent[a]) {
+                    if (!neededAbsent[p]) {
+                        neededAbsent[p] = true;
+                        queue[tail++] = -p - 1;
+                    }
+                }
+            }
+        }
+
+        BitSet relevantFacts = new BitSet(facts);
+        for (int f = 0; f < facts; f++) {
+            if (needed[f] || neededAbsent[f]) {relevantFacts.set(f);}
+        }
+        return new Relevance(relevantOperators, actions, relevantFacts, facts, factIndex);
+    }
+}
@@ -1,125 +1,448 @@
 package example;
 
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Properties;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
 
 import main.java.fr.uga.pddl4j.encoding.CodedProblem;
 import main.java.fr.uga.pddl4j.planners.hsp.AStarPlanner;
 import main.java.fr.uga.pddl4j.util.BitOp;
+import main.java.fr.uga.pddl4j.util.SequentialPlan;
 
 /**
  * The RunPlanner class provides functionality to run a planner and extract plan steps.
  */
 public class RunPlanner {
-    // Define a lock object for synchronization
-    private static final Object lock = new Object();
-    
+    // Logs how much of the domain each call pruned, enable with t1.Relevance.level = FINE
+    private static Logger relevanceLogger = Logger.getLogger("t1."+"Relevance");
+
     /**
-     * Runs a planner to generate a plan based on given beliefs and predicates.
+     * Runs a planner to generate a plan based on given beliefs and predicates, waiting for the result.
      * 
      * @param agName The name of the agent.
      * @param beliefs The agent's beliefs.
      * @param predicate The predicates to achieve.
-     * @param choiceOfPlanner The choice of planner (1 for FF planner, 2 for PDDL4J Implementation).
+     * @param choiceOfPlanner The choice of planner (1 for FF planner, 2 for PDDL4J Implementation, 3 for the built-in STRIPS planner, 4 for the full PDDL4J plan, 5 for the planner portfolio, 6 for the incremental built-in STRIPS planner).
      * @return The generated plan as a list of steps.
      */
     public static List<String> run(String agName, List<String> beliefs, List<String> predicate, int choiceOfPlanner) {
-        PDDLGenerator.generate(agName, beliefs, predicate); 
-        List<String> plan = new ArrayList<>();
-        if (choiceOfPlanner == 1) {
-            try {
-                // Command to execute
-                String command = "./ff -o domain.pddl -f " + agName + "problem.pddl";
-    
-                // Create ProcessBuilder
-                ProcessBuilder processBuilder = new ProcessBuilder(command.split(" "));
-    
-                // Redirect error stream to output stream
-                processBuilder.redirectErrorStream(true);
-    
-                // Start the process
-                Process process = processBuilder.start();
-                String output;
-                try (// Read the output of the process
-                java.util.Scanner scanner = new java.util.Scanner(process.getInputStream()).useDelimiter("\\A")) {
-                    output = scanner.hasNext() ? scanner.next() : "";}
-    
-                // Wait for the process to finish
-                process.waitFor();
-                
-                //System.out.println(output);
-                plan = extractSteps(output);
-                //System.out.println(plan);
-                return plan;
-            } catch (IOException | InterruptedException e) {
-                System.out.println("Error occured in RunPlanner.Run");
-                e.printStackTrace();
-            }
-            return null;
+        return run(agName, beliefs, predicate, choiceOfPlanner, 0);
+    }
+
+    /**
+     * Runs a planner that must answer by a deadline, waiting for the result.
+     * The built-in STRIPS planner returns the best partial plan found by then. FF and PDDL4J are given the time left as
+     * their timeout and return no plan if they run out.
+     * 
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param choiceOfPlanner The choice of planner (1 for FF planner, 2 for PDDL4J Implementation, 3 for the built-in STRIPS planner, 4 for the full PDDL4J plan, 5 for the planner portfolio, 6 for the incremental built-in STRIPS planner).
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @return The generated plan as a list of steps.
+     */
+    public static List<String> run(String agName, List<String> beliefs, List<String> predicate, int choiceOfPlanner, long deadline) {
+        return run(agName, beliefs, predicate, choiceOfPlanner, deadline, PlanningConfig.DEFAULT);
+    }
+
+    /**
+     * Runs a planner with a planning configuration that must answer by a deadline, waiting for the result.
+     * 
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param choiceOfPlanner The choice of planner (1 for FF planner, 2 for PDDL4J Implementation, 3 for the built-in STRIPS planner, 4 for the full PDDL4J plan, 5 for the planner portfolio, 6 for the incremental built-in STRIPS planner).
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param config The search strategy, heuristic and limits to plan with.
+     * @return The generated plan as a list of steps.
+     */
+    public static List<String> run(String agName, List<String> beliefs, List<String> predicate, int choiceOfPlanner, long deadline, PlanningConfig config) {
+        try {
+            return submit(agName, beliefs, predicate, choiceOfPlanner, deadline, config).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("Error occured in RunPlanner.Run");
+            e.getCause().printStackTrace();
         }
-        //Calling PDDL4J
-        if (choiceOfPlanner == 2) {
-            String args[] = new String[]{"-o", "domain.pddl", "-f", agName+"problem.pddl", "-u", "7"};
-            
-            // Synchronize access to ensure mutual exclusion
-            synchronized (lock) {
-                plan = runPlannerSafely(args);
-                return plan;
-            }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Submits a planning request to the planner pool without waiting for the result.
+     * Callers can chain the next step on the returned future instead of blocking a thread.
+     * 
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param choiceOfPlanner The choice of planner (1 for FF planner, 2 for PDDL4J Implementation, 3 for the built-in STRIPS planner, 4 for the full PDDL4J plan, 5 for the planner portfolio, 6 for the incremental built-in STRIPS planner).
+     * @return The future plan as a list of steps.
+     */
+    public static CompletableFuture<List<String>> submit(String agName, List<String> beliefs, List<String> predicate, int choiceOfPlanner) {
+        return submit(agName, beliefs, predicate, choiceOfPlanner, 0);
+    }
+
+    /**
+     * Submits a planning request that must answer by a deadline to the planner pool without waiting for the result.
+     * 
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param choiceOfPlanner The choice of planner (1 for FF planner, 2 for PDDL4J Implementation, 3 for the built-in STRIPS planner, 4 for the full PDDL4J plan, 5 for the planner portfolio, 6 for the incremental built-in STRIPS planner).
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @return The future plan as a list of steps.
+     */
+    public static CompletableFuture<List<String>> submit(String agName, List<String> beliefs, List<String> predicate, int choiceOfPlanner, long deadline) {
+        return submit(agName, beliefs, predicate, choiceOfPlanner, deadline, PlanningConfig.DEFAULT);
+    }
+
+    /**
+     * Submits a planning request with a planning configuration to the planner pool without waiting for the result.
+     * The configuration's timeout counts from now, so it includes any time spent waiting for a planner thread.
+     * A request for the same problem as one that has not finished yet, from any agent, waits for its plan instead of
+     * searching again, unless that search may answer after the request's deadline. Requests for the incremental
+     * built-in STRIPS planner (6) are never merged, each agent's planner learns from its own searches.
+     * 
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param choiceOfPlanner The choice of planner (1 for FF planner, 2 for PDDL4J Implementation, 3 for the built-in STRIPS planner, 4 for the full PDDL4J plan, 5 for the planner portfolio, 6 for the incremental built-in STRIPS planner).
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param config The search strategy, heuristic and limits to plan with.
+     * @return The future plan as a list of steps.
+     */
+    public static CompletableFuture<List<String>> submit(String agName, List<String> beliefs, List<String> predicate, int choiceOfPlanner, long deadline, PlanningConfig config) {
+        // Copy the inputs, the caller may keep changing its lists while the request waits
+        List<String> beliefsCopy = new ArrayList<>(beliefs);
+        List<String> predicateCopy = new ArrayList<>(predicate);
+        // Goals no action can reach fail at once, without queueing for a planner thread
+        if (!unreachable(beliefsCopy, predicateCopy).isEmpty()) {return CompletableFuture.completedFuture(new ArrayList<>());}
+        // Goals with a precomputed policy are answered by table lookups, without queueing for a planner thread
+        List<String> policyPlan = policyPlan(beliefsCopy, predicateCopy, choiceOfPlanner);
+        if (policyPlan != null) {return CompletableFuture.completedFuture(policyPlan);}
+        long callDeadline = config.deadline(deadline);
+        PlanningService service = PlanningService.getInstance();
+        Object key = choiceOfPlanner == 6 ? null : problemKey(beliefsCopy, predicateCopy, choiceOfPlanner, config);
+        Predicate<List<String>> complete = plan -> valid(beliefsCopy, predicateCopy, plan);
+        if (choiceOfPlanner == 5) {return service.share(key, callDeadline, complete, () -> portfolio(agName, beliefsCopy, predicateCopy, callDeadline, config));}
+        return service.submit(agName, key, callDeadline, complete, () -> cachedPlan(agName, beliefsCopy, predicateCopy, choiceOfPlanner, callDeadline, config, null));
+    }
+
+    /**
+     * Gets the key under which requests for the same problem are merged. Beliefs that cannot contribute to the goal
+     * are left out, so agents that only differ in those share one search.
+     * 
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param choiceOfPlanner The choice of planner.
+     * @param config The search strategy, heuristic and limits to plan with.
+     * @return The key, or null if the domain cannot be read, so the request is never merged.
+     */
+    private static Object problemKey(List<String> beliefs, List<String> predicate, int choiceOfPlanner, PlanningConfig config) {
+        try {
+            List<String> goals = PDDLGenerator.preprocessPredicates(predicate);
+            List<String> relevant = DomainCache.getInstance(beliefs).getRelevanceAnalysis().analyse(goals).prune(beliefs);
+            return Arrays.asList(RecoveryPolicies.key(relevant), RecoveryPolicies.key(goals), choiceOfPlanner, config);
+        } catch (Exception e) {
+            System.out.println("Error occured in RunPlanner.problemKey");
+            e.printStackTrace();
         }
         return null;
     }
-    
+
     /**
-     * Extracts plan steps from the output of the planner.
+     * Races the members of the planner portfolio on the same problem. The first valid plan wins and the other members
+     * are cancelled, which kills FF and stops the built-in STRIPS planner. PDDL4J cannot be interrupted, so it runs
+     * until it finishes or reaches the deadline, but its plan is ignored.
+     * Each member is queued for a planner thread on its own, so the request never holds a planner thread while it
+     * waits for them.
      * 
-     * @param output The output of the planner.
-     * @return The list of plan steps.
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param config The search strategy, heuristic and limits to plan with, changed by each member's own settings.
+     * @return The future plan of the winning member, empty if no member found one.
      */
-    private static List<String> extractSteps(String output) {
-        List<String> steps = new ArrayList<>();
+    private static CompletableFuture<List<String>> portfolio(String agName, List<String> beliefs, List<String> predicate, long deadline, PlanningConfig config) {
+        PlanCache cache = PlanCache.getInstance();
+        List<String> cached = cache.get(beliefs, predicate, 5, config);
+        if (cached != null) {return CompletableFuture.completedFuture(cached);}
 
-        // Define a pattern to match lines starting with a number followed by a colon
-        Pattern pattern = Pattern.compile("\\d+:\\s+([A-Z]+)");
+        List<PlannerPortfolio.Member> members = PlannerPortfolio.getInstance().getMembers();
+        CompletableFuture<List<String>> result = new CompletableFuture<>();
+        if (members.isEmpty()) {
+            result.complete(new ArrayList<>());
+            return result;
+        }
+        Cancellation cancellation = new Cancellation();
+        AtomicInteger remaining = new AtomicInteger(members.size());
+        long start = System.nanoTime();
+        for (PlannerPortfolio.Member member : members) {
+            PlanningConfig memberConfig = member.configure(config);
+            PlanningService.getInstance().execute(agName, () -> {
+                List<String> plan = null;
+                try {
+                    // A member still queued when another wins is not started at all
+                    if (!cancellation.isCancelled()) {plan = cachedPlan(agName, beliefs, predicate, member.getChoiceOfPlanner(), deadline, memberConfig, cancellation);}
+                } catch (Exception e) {
+                    System.out.println("Error occured in RunPlanner.portfolio with " + member);
+                    e.printStackTrace();
+                }
+                if (plan != null && !plan.isEmpty() && !cancellation.isCancelled() && valid(beliefs, predicate, plan) && result.complete(plan)) {
+                    cancellation.cancel();
+                    long end = System.nanoTime();
+                    PlanningMetrics.getInstance().recordPortfolioWin(member.getName());
+                    PlanningMetrics.getInstance().recordPlan(agName, 5, predicate, end - start, plan);
+                    if (deadline == 0 || end - deadline < 0) {cache.put(beliefs, predicate, 5, config, plan);}
+                }
+                if (remaining.decrementAndGet() == 0) {result.complete(new ArrayList<>());}
+            });
+        }
+        return result;
+    }
 
-        // Create a matcher with the input string
-        Matcher matcher = pattern.matcher(output);
+    /**
+     * Checks a portfolio member's plan against the actions of the cached domain before it wins. Plans that reach only
+     * part of the goal, such as a partial plan found at the deadline, are not valid. Plans the built-in STRIPS planner
+     * cannot judge, because they use conditional effects, are trusted.
+     * 
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param plan The plan.
+     * @return True if the plan reaches the predicates from the beliefs, or cannot be judged.
+     */
+    private static boolean valid(List<String> beliefs, List<String> predicate, List<String> plan) {
+        try {
+            StripsPlanner model = DomainCache.getInstance(beliefs).getStripsPlanner();
+            return !model.knows(plan) || model.reaches(beliefs, plan, PDDLGenerator.preprocessPredicates(predicate));
+        } catch (Exception e) {
+            System.out.println("Error occured in RunPlanner.valid");
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    /**
+     * Follows the recovery policy of the predicates, if one was compiled for them.
+     * 
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param choiceOfPlanner The choice of planner, online planning (2 and 6) only takes the first step.
+     * @return The plan, or null if there is no policy for the predicates or it has no plan from these beliefs, in
+     * which case a planner searches for one.
+     */
+    private static List<String> policyPlan(List<String> beliefs, List<String> predicate, int choiceOfPlanner) {
+        try {
+            List<String> goals = PDDLGenerator.preprocessPredicates(predicate);
+            RecoveryPolicy policy = DomainCache.getInstance(beliefs).getRecoveryPolicies().get(goals);
+            if (policy == null) {return null;}
+            List<String> plan = policy.plan(beliefs, choiceOfPlanner == 2 || choiceOfPlanner == 6 ? 1 : Integer.MAX_VALUE);
+            PlanningMetrics.getInstance().recordPolicy(plan != null);
+            return plan;
+        } catch (Exception e) {
+            System.out.println("Error occured in RunPlanner.policyPlan");
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Estimates the length of a plan for the given predicates on the calling thread, to compare alternatives before
+     * planning for one of them. Goals with a recovery policy are looked up, others are searched by the built-in STRIPS
+     * planner, which is fast enough to run several times per recovery.
+     * 
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param config The search strategy, heuristic and limits to plan with.
+     * @return The number of steps, -1 if the predicates are unreachable, or Integer.MAX_VALUE if no estimate was found.
+     */
+    public static int estimate(List<String> beliefs, List<String> predicate, long deadline, PlanningConfig config) {
+        try {
+            DomainCache domain = DomainCache.getInstance(beliefs);
+            List<String> goals = PDDLGenerator.preprocessPredicates(predicate);
+            if (!domain.getRelaxedPlanningGraph().reachable(beliefs, goals)) {return -1;}
+            RecoveryPolicy policy = domain.getRecoveryPolicies().get(goals);
+            List<String> plan = policy == null ? null : policy.plan(beliefs, Integer.MAX_VALUE);
+            if (plan == null) {plan = expand(domain.getStripsPlanner().plan(beliefs, goals, config.deadline(deadline), domain.getRelevanceAnalysis().analyse(goals), config));}
+            return plan.isEmpty() ? Integer.MAX_VALUE : plan.size();
+        } catch (Exception e) {
+            System.out.println("Error occured in RunPlanner.estimate");
+            e.printStackTrace();
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Finds the predicates that cannot be reached from the given beliefs by any plan, using the relaxed planning graph
+     * of the cached domain. This takes microseconds, so it is checked before every search.
+     * 
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @return The unreachable predicates, empty if every predicate may be reachable or the domain cannot be read.
+     */
+    public static List<String> unreachable(List<String> beliefs, List<String> predicate) {
+        try {
+            List<String> unreachable = DomainCache.getInstance(beliefs).getRelaxedPlanningGraph().unreachable(beliefs, PDDLGenerator.preprocessPredicates(predicate));
+            if (!unreachable.isEmpty()) {PlanningMetrics.getInstance().recordUnreachable();}
+            return unreachable;
+        } catch (Exception e) {
+            System.out.println("Error occured in RunPlanner.unreachable");
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Runs a planner, answering from the plan cache when possible.
+     * 
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param choiceOfPlanner The choice of planner (1 for FF planner, 2 for PDDL4J Implementation, 3 for the built-in STRIPS planner, 4 for the full PDDL4J plan, 5 for the planner portfolio, 6 for the incremental built-in STRIPS planner).
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param config The search strategy, heuristic and limits to plan with.
+     * @param cancellation The cancellation of the request, or null if it cannot be cancelled.
+     * @return The generated plan as a list of steps.
+     */
+    private static List<String> cachedPlan(String agName, List<String> beliefs, List<String> predicate, int choiceOfPlanner, long deadline, PlanningConfig config, Cancellation cancellation) {
+        // Agents often recover from the same beliefs towards the same goals
+        PlanCache cache = PlanCache.getInstance();
+        List<String> plan = cache.get(beliefs, predicate, choiceOfPlanner, config);
+        if (plan != null) {return plan;}
+
+        long start = System.nanoTime();
+        plan = plan(agName, beliefs, predicate, choiceOfPlanner, deadline, config, cancellation);
+        long end = System.nanoTime();
+        // A cancelled planner's answer was not needed, and may be cut short
+        if (cancellation != null && cancellation.isCancelled()) {return plan;}
+        PlanningMetrics.getInstance().recordPlan(agName, choiceOfPlanner, predicate, end - start, plan);
+        // A plan found after the deadline may be partial, and is only good for these beliefs this once
+        boolean complete = deadline == 0 || end - deadline < 0;
+        // A node limit can also cut the built-in search short, so its plans are not cached either
+        if (choiceOfPlanner == 3 && config.getMaxNodes() > 0) {complete = false;}
+        if (plan != null && !plan.isEmpty() && complete) {cache.put(beliefs, predicate, choiceOfPlanner, config, plan);}
+        return plan;
+    }
+
+    /**
+     * Runs the chosen planner without consulting the plan cache.
+     * 
+     * @param agName The name of the agent.
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param choiceOfPlanner The choice of planner.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param config The search strategy, heuristic and limits to plan with.
+     * @param cancellation The cancellation of the request, or null if it cannot be cancelled.
+     * @return The generated plan as a list of steps.
+     */
+    private static List<String> plan(String agName, List<String> beliefs, List<String> predicate, int choiceOfPlanner, long deadline, PlanningConfig config, Cancellation cancellation) {
+        List<String> plan = new ArrayList<>();
+        DomainCache domain;
+        try {
+            // Lifted domains are grounded over the objects of these beliefs
+            domain = DomainCache.getInstance(beliefs);
+        } catch (Exception e) {
+            System.out.println("Error occured in RunPlanner.Run");
+            e.printStackTrace();
+            return plan;
+        }
+
+        // Regress from the goal first, so each planner only sees the beliefs and actions that can contribute to it
+        List<String> goals = PDDLGenerator.preprocessPredicates(predicate);
+        Relevance relevance = domain.getRelevanceAnalysis().analyse(goals);
+        List<String> relevantBeliefs = relevance.prune(beliefs);
+        PlanningMetrics.getInstance().recordRelevance(relevance, beliefs.size(), relevantBeliefs.size());
+        relevanceLogger.fine(agName+" --> "+goals+" --> "+relevance+", "+relevantBeliefs.size()+"/"+beliefs.size()+" beliefs");
 
-        // Find all matches
-        while (matcher.find()) {
-            String step = matcher.group(1);
-            steps.add(step);
+        // Problems are built in memory, the file is only a debugging aid
+        if (PDDLGenerator.debugDump) {PDDLGenerator.generate(agName, relevantBeliefs, predicate);}
+        if (choiceOfPlanner == 1) {
+            // FF runs in a pre-started process with a deadline, failures are reported instead of returning null
+            // FF reads domain.pddl itself, so only its initial state is pruned
+            PlanResult result = FFExecutor.getInstance().plan(agName, relevantBeliefs, predicate, domain.getObjects(), deadline, cancellation);
+            if (cancellation != null && cancellation.isCancelled()) {return plan;}
+            PlanningMetrics.getInstance().recordFF(result.getStatus());
+            if (!result.isSolved()) {System.out.println("FF found no plan for " + agName + ": " + result);}
+            plan.addAll(result.getPlan());
+            return plan;
+        }
+        //Calling PDDL4J
+        if (choiceOfPlanner == 2) {
+            plan = expand(runPlannerSafely(domain, beliefs, goals, relevance, deadline, config));
+            // Online planning only executes the first step, of the macro's actions if the plan starts with a macro
+            if (plan.size() > 1) {plan = new ArrayList<>(plan.subList(0, 1));}
+            return plan;
+        }
+        //Calling the built-in STRIPS planner
+        if (choiceOfPlanner == 3) {
+            return expand(domain.getStripsPlanner().plan(beliefs, goals, deadline, relevance, config, cancellation));
+        }
+        //Calling the built-in STRIPS planner, continuing from what this agent's last search learned
+        if (choiceOfPlanner == 6) {
+            plan = expand(domain.getIncrementalPlanner().plan(agName, beliefs, goals, deadline, relevance, config, cancellation));
+            // Online planning only executes the first step
+            if (plan.size() > 1) {plan = new ArrayList<>(plan.subList(0, 1));}
+            return plan;
         }
-        return steps;
+        //Calling PDDL4J for the full plan, executed under monitoring
+        if (choiceOfPlanner == 4) {
+            return expand(runPlannerSafely(domain, beliefs, goals, relevance, deadline, config));
+        }
+        return null;
     }
 
     /**
-     * Method to run the planner safely within a synchronized block.
+     * Replaces the learned macros in a plan by their actions, so only actions of the domain are executed, cached and
+     * validated.
      * 
-     * @param args The arguments for the planner.
+     * @param plan The plan.
+     * @return The plan of domain actions.
+     */
+    private static List<String> expand(List<String> plan) {
+        List<String> expanded = MacroLibrary.getInstance().expand(plan);
+        if (expanded != plan) {PlanningMetrics.getInstance().recordMacroPlan();}
+        return expanded;
+    }
+    
+    /**
+     * Method to run the PDDL4J planner safely.
+     * The domain is taken from the DomainCache, so only the initial state and goal are encoded per call, with the
+     * actions that cannot contribute to the goal left out. Each call has its own problem and planner, so calls can run
+     * concurrently.
+     * 
+     * @param domain The cached domain.
+     * @param beliefs The agent's beliefs.
+     * @param predicate The predicates to achieve.
+     * @param relevance The relevant part of the domain.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param config The heuristic and search strategy to plan with.
      * @return A list of actions in the plan.
      */
-    private synchronized static List<String> runPlannerSafely(String[] args) {
+    private static List<String> runPlannerSafely(DomainCache domain, List<String> beliefs, List<String> predicate, Relevance relevance, long deadline, PlanningConfig config) {
         List<String> plan = new ArrayList<>();
         try {
-            // Parse planner arguments
-            Properties arguments = AStarPlanner.parseArguments(args);
+            // Encode the problem against the cached domain
+            CodedProblem problem = domain.encode(beliefs, predicate, relevance);
+            if (problem == null) {return plan;}
+
             // Instantiate A* planner
-            AStarPlanner planner = new AStarPlanner(arguments);
+            AStarPlanner planner = new AStarPlanner(domain.getArguments(config, deadline == 0 ? 0 : RecoveryBudget.remainingMillis(deadline, Long.MAX_VALUE)));
             
-            // Parse and encode the problem
-            CodedProblem problem = planner.parseAndEncode();
-            
-            // Generate one-step plan
-            BitOp action = planner.oneStepPlan(arguments);
-            // Convert action to string representation
-            String actionString = problem.toShortString(action);
-            // Add action to the plan
-            plan.add(actionString); 
+            // Search for a plan
+            SequentialPlan result = planner.search(problem);
+            if (result == null || result.isEmpty()) {return plan;}
+            for (BitOp action : result.actions()) {
+                // Convert action to string representation and add it to the plan
+                plan.add(problem.toShortString(action));
+            }
         } catch (Exception e) {
             // Print stack trace if an exception occurs
             System.out.println("Error occured in RunPlanner.runPlannerSafely");
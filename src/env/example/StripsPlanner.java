@@ -0,0 +1,762 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import main.java.fr.uga.pddl4j.encoding.CodedProblem;
+import main.java.fr.uga.pddl4j.util.BitExp;
+import main.java.fr.uga.pddl4j.util.BitOp;
+
+/**
+ * The StripsPlanner class is a built-in planner for propositional STRIPS domains.
+ * States are bitsets stored in long words and every action is compiled into precondition, add and delete masks.
+ * Plans are found with an A* search guided by the additive (hAdd) heuristic. The compiled domain is immutable and each
+ * search keeps its own state, so agents can plan concurrently without any lock.
+ */
+public class StripsPlanner {
+    // Heuristic value of an unreachable fact
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    private final int facts;
+    private final int words;
+    private final Map<String, Integer> factIndex;
+    private final Map<String, Integer> actionIndex = new HashMap<>();
+
+    // Compiled actions, action i uses words [i*words, (i+1)*words) of each mask
+    private final String[] names;
+    // Number of each compiled action among the domain's operators
+    private final int[] operatorOf;
+    private final long[] pre;
+    private final long[] preNegative;
+    private final long[] add;
+    private final long[] del;
+
+    // Precondition and add lists as fact numbers, used by the heuristic
+    private final int[][] preFacts;
+    private final int[][] addFacts;
+
+    /**
+     * Compiles the actions of an encoded domain into bitset masks.
+     * Actions with conditional effects cannot be represented and are left out.
+     *
+     * @param domain The encoded domain.
+     * @param factIndex The number of each fact in the encoding.
+     */
+    public StripsPlanner(CodedProblem domain, Map<String, Integer> factIndex) {
+        this.factIndex = factIndex;
+        this.facts = domain.getRelevantFacts().size();
+        this.words = Math.max(1, (facts + 63) >>> 6);
+
+        List<BitOp> operators = new ArrayList<>();
+        List<Integer> numbers = new ArrayList<>();
+        for (int i = 0; i < domain.getOperators().size(); i++) {
+            BitOp op = domain.getOperators().get(i);
+            if (DomainCache.isGuardAction(op.getName())) {continue;}
+            if (op.getCondEffects().size() != 1 || !op.getCondEffects().get(0).getCondition().isEmpty()) {continue;}
+            operators.add(op);
+            numbers.add(i);
+        }
+
+        int count = operators.size();
+        this.names = new String[count];
+        this.operatorOf = numbers.stream().mapToInt(Integer::intValue).toArray();
+        this.pre = new long[count * words];
+        this.preNegative = new long[count * words];
+        this.add = new long[count * words];
+        this.del = new long[count * words];
+        this.preFacts = new int[count][];
+        this.addFacts = new int[count][];
+
+        for (int i = 0; i < count; i++) {
+            BitOp op = operators.get(i);
+            BitExp effects = op.getUnconditionalEffects();
+            names[i] = domain.toShortString(op);
+            actionIndex.put(names[i].toLowerCase(), i);
+            copy(op.getPreconditions().getPositive(), pre, i);
+            copy(op.getPreconditions().getNegative(), preNegative, i);
+            copy(effects.getPositive(), add, i);
+            copy(effects.getNegative(), del, i);
+            preFacts[i] = op.getPreconditions().getPositive().stream().toArray();
+            addFacts[i] = effects.getPositive().stream().toArray();
+        }
+    }
+
+    /**
+     * Finds a plan from the given beliefs to the given predicates.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @return The names of the actions in the plan, empty if there is no plan.
+     */
+    public List<String> plan(List<String> beliefs, List<String> predicates) {
+        return plan(beliefs, predicates, 0);
+    }
+
+    /**
+     * Finds a plan from the given beliefs to the given predicates, stopping at a deadline.
+     * This is the anytime mode: if the deadline passes first, the best partial plan found so far is returned, the one
+     * leading to the state closest to the goal by the heuristic. Executing it and planning again makes progress.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @return The names of the actions in the plan, empty if there is no plan.
+     */
+    public List<String> plan(List<String> beliefs, List<String> predicates, long deadline) {
+        return plan(beliefs, predicates, deadline, null);
+    }
+
+    /**
+     * Finds a plan from the given beliefs to the given predicates, searching only over the actions and beliefs
+     * relevant to the predicates.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param relevance The relevant part of the domain, from the analysis of these predicates, or null to use it all.
+     * @return The names of the actions in the plan, empty if there is no plan.
+     */
+    public List<String> plan(List<String> beliefs, List<String> predicates, long deadline, Relevance relevance) {
+        return plan(beliefs, predicates, deadline, relevance, PlanningConfig.DEFAULT);
+    }
+
+    /**
+     * Finds a plan with the search strategy, heuristic and node limit of a planning configuration.
+     * Only the MAX and SUM heuristics are computed here, every other heuristic is treated as SUM.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param relevance The relevant part of the domain, from the analysis of these predicates, or null to use it all.
+     * @param config The planning configuration.
+     * @return The names of the actions in the plan, empty if there is no plan.
+     */
+    public List<String> plan(List<String> beliefs, List<String> predicates, long deadline, Relevance relevance, PlanningConfig config) {
+        return plan(beliefs, predicates, deadline, relevance, config, null);
+    }
+
+    /**
+     * Finds a plan with a planning configuration, giving up as soon as the request is cancelled.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param relevance The relevant part of the domain, from the analysis of these predicates, or null to use it all.
+     * @param config The planning configuration.
+     * @param cancellation The cancellation of the request, or null if it cannot be cancelled.
+     * @return The names of the actions in the plan, empty if there is no plan or the request was cancelled.
+     */
+    public List<String> plan(List<String> beliefs, List<String> predicates, long deadline, Relevance relevance, PlanningConfig config, Cancellation cancellation) {
+        return plan(beliefs, predicates, deadline, relevance, config, cancellation, null);
+    }
+
+    /**
+     * Finds a plan, starting from what earlier searches for the same goal learned and teaching the next ones.
+     * The heuristic value of every state met is remembered, and after a plan is found each expanded state learns the
+     * cost of the plan minus its distance from the start (Adaptive A*), so the next search looks at fewer states.
+     * Every state on the plan also remembers the rest of the plan from there.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param predicates The predicates to achieve.
+     * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+     * @param relevance The relevant part of the domain, from the analysis of these predicates, or null to use it all.
+     * @param config The planning configuration.
+     * @param cancellation The cancellation of the request, or null if it cannot be cancelled.
+     * @param memory What earlier searches for these predicates with this configuration learned, or null for none.
+     * @return The names of the actions in the plan, empty if there is no plan or the request was cancelled.
+     */
+    public List<String> plan(List<String> beliefs, List<String> predicates, long deadline, Relevance relevance, PlanningConfig config, Cancellation cancellation, IncrementalPlanner.Memory memory) {
+        long[] goal = new long[words];
+        for (String predicate : predicates) {
+            Integer index = factIndex.get(predicate.toLowerCase());
+            if (index == null) {return new ArrayList<>();}
+            goal[index >>> 6] |= 1L << index;
+        }
+        int[] actions = new int[names.length];
+        int count = 0;
+        for (int a = 0; a < names.length; a++) {
+            if (relevance == null || relevance.isRelevant(operatorOf[a])) {actions[count++] = a;}
+        }
+        List<String> state = relevance == null ? beliefs : relevance.prune(beliefs);
+        return new Search(encodeState(state), goal, Arrays.copyOf(actions, count), config, memory, memory == null ? null : relevantMask(relevance)).run(deadline, cancellation);
+    }
+
+    /**
+     * Gets the relevant facts of a state, the key under which earlier searches remember it.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param relevance The relevant part of the domain, or null to use it all.
+     * @return The state of the relevant facts.
+     */
+    public BitSet state(List<String> beliefs, Relevance relevance) {
+        long[] state = encodeState(beliefs);
+        long[] mask = relevantMask(relevance);
+        for (int w = 0; w < words; w++) {state[w] &= mask[w];}
+        return BitSet.valueOf(state);
+    }
+
+    /**
+     * Gets the facts relevant to a goal as a mask. Effects on other facts cannot change the rest of a plan, so states
+     * that only differ in them are remembered as one.
+     *
+     * @param relevance The relevant part of the domain, or null to use it all.
+     * @return The mask.
+     */
+    private long[] relevantMask(Relevance relevance) {
+        long[] mask = new long[words];
+        for (int f = 0; f < facts; f++) {
+            if (relevance == null || relevance.isRelevantFact(f)) {mask[f >>> 6] |= 1L << f;}
+        }
+        return mask;
+    }
+
+    /**
+     * Compiles a recovery policy for the given predicates over the facts and actions relevant to them.
+     *
+     * @param predicates The predicates to achieve.
+     * @param relevance The relevant part of the domain, from the analysis of these predicates.
+     * @param maxFacts The most relevant facts to build a table for, the table has 2^maxFacts entries.
+     * @return The policy, or null if a predicate is unknown or the goal has too many relevant facts or actions.
+     */
+    public RecoveryPolicy compilePolicy(List<String> predicates, Relevance relevance, int maxFacts) {
+        String[] factName = new String[facts];
+        for (Map.Entry<String, Integer> entry : factIndex.entrySet()) {factName[entry.getValue()] = entry.getKey();}
+        int[] local = new int[facts];
+        List<String> localFacts = new ArrayList<>();
+        for (int f = 0; f < facts; f++) {
+            local[f] = relevance.isRelevantFact(f) ? localFacts.size() : -1;
+            if (local[f] >= 0) {localFacts.add(factName[f]);}
+        }
+        if (localFacts.size() > Math.min(maxFacts, 30)) {return null;}
+
+        int goalMask = 0;
+        for (String predicate : predicates) {
+            Integer index = factIndex.get(predicate.toLowerCase());
+            if (index == null || local[index] < 0) {return null;}
+            goalMask |= 1 << local[index];
+        }
+
+        List<String> localActions = new ArrayList<>();
+        int[][] masks = new int[4][names.length];
+        for (int a = 0; a < names.length; a++) {
+            // Policies already hold shortest plans, and macros are not kept in the policy file
+            if (!relevance.isRelevant(operatorOf[a]) || MacroLibrary.isMacro(names[a])) {continue;}
+            int[] projected = new int[4];
+            long[][] sources = {pre, preNegative, add, del};
+            boolean known = true;
+            for (int m = 0; m < 4; m++) {
+                for (int f = 0; f < facts; f++) {
+                    if ((sources[m][a * words + (f >>> 6)] & (1L << f)) == 0) {continue;}
+                    // Effects on other facts do not matter to this goal, but an unknown precondition would
+                    if (local[f] >= 0) {projected[m] |= 1 << local[f];} else if (m < 2) {known = false;}
+                }
+            }
+            if (!known) {continue;}
+            for (int m = 0; m < 4; m++) {masks[m][localActions.size()] = projected[m];}
+            localActions.add(names[a]);
+        }
+        if (localActions.size() > Byte.MAX_VALUE) {return null;}
+
+        int count = localActions.size();
+        return RecoveryPolicy.compile(RecoveryPolicies.key(predicates), localFacts.toArray(new String[0]), localActions.toArray(new String[0]),
+            Arrays.copyOf(masks[0], count), Arrays.copyOf(masks[1], count), Arrays.copyOf(masks[2], count), Arrays.copyOf(masks[3], count), goalMask);
+    }
+
+    /**
+     * Predicts the state after each step of a plan, using the compiled actions as the model of the world.
+     *
+     * @param beliefs The agent's beliefs before the plan.
+     * @param plan The names of the actions in the plan.
+     * @return The expected state after each step. The list ends early at the first step that is not applicable or not
+     * a compiled action, as nothing can be expected from there on.
+     */
+    public List<BitSet> predict(List<String> beliefs, List<String> plan) {
+        List<BitSet> expected = new ArrayList<>();
+        long[] state = encodeState(beliefs);
+        for (String step : plan) {
+            if (!progress(state, step)) {break;}
+            expected.add(BitSet.valueOf(state));
+        }
+        return expected;
+    }
+
+    /**
+     * Encodes the agent's beliefs in the same form as the states returned by predict.
+     *
+     * @param beliefs The agent's beliefs.
+     * @return The observed state.
+     */
+    public BitSet observe(List<String> beliefs) {
+        return BitSet.valueOf(encodeState(beliefs));
+    }
+
+    /**
+     * Checks if a plan can still be executed from the given beliefs and achieves the given predicates.
+     *
+     * @param beliefs The agent's beliefs.
+     * @param plan The names of the actions in the plan.
+     * @param predicates The predicates to achieve.
+     * @return True if every step is applicable in turn and the predicates hold at the end, false otherwise.
+     */
+    public boolean reaches(List<String> beliefs, List<String> plan, List<String> predicates) {
+        long[] state = encodeState(beliefs);
+        for (String step : plan) {
+            if (!progress(state, step)) {return false;}
+        }
+        for (String predicate : predicates) {
+            Integer index = factIndex.get(predicate.toLowerCase());
+            if (index == null || (state[index >>> 6] & (1L << index)) == 0) {return false;}
+        }
+        return true;
+    }
+
+    /**
+     * Checks if every step of a plan is a compiled action, so that reaches can judge the plan.
+     *
+     * @param plan The names of the actions in the plan.
+     * @return True if every step is known, false if a step is unknown or has conditional effects.
+     */
+    public boolean knows(List<String> plan) {
+        for (String step : plan) {
+            if (!actionIndex.containsKey(step.toLowerCase())) {return false;}
+        }
+        return true;
+    }
+
+    /**
+     * Applies an action to a state in place.
+     *
+     * @param state The state bitset.
+     * @param name The name of the action.
+     * @return True if the action was applied, false if it is unknown or not applicable.
+     */
+    private boolean progress(long[] state, String name) {
+        Integer a = actionIndex.get(name.toLowerCase());
+        if (a == null) {return false;}
+        int mask = a * words;
+        for (int w = 0; w < words; w++) {
+            if ((state[w] & pre[mask + w]) != pre[mask + w] || (state[w] & preNegative[mask + w]) != 0) {return false;}
+        }
+        for (int w = 0; w < words; w++) {state[w] = (state[w] & ~del[mask + w]) | add[mask + w];}
+        return true;
+    }
+
+    /**
+     * Encodes beliefs as a state bitset, ignoring beliefs the domain does not know about.
+     *
+     * @param beliefs The agent's beliefs.
+     * @return The state bitset.
+     */
+    private long[] encodeState(List<String> beliefs) {
+        long[] state = new long[words];
+        for (String belief : beliefs) {
+            Integer index = factIndex.get(belief.toLowerCase());
+            if (index != null) {state[index >>> 6] |= 1L << index;}
+        }
+        // Mirrors the dummyPredicate that PDDLGenerator always writes to :init
+        Integer dummy = factIndex.get("dummypredicate");
+        if (dummy != null) {state[dummy >>> 6] |= 1L << dummy;}
+        return state;
+    }
+
+    /**
+     * Copies a bitset into the words of one action's mask.
+     *
+     * @param bits The bitset to copy.
+     * @param mask The mask array.
+     * @param action The action number.
+     */
+    private void copy(BitSet bits, long[] mask, int action) {
+        long[] source = bits.toLongArray();
+        System.arraycopy(source, 0, mask, action * words, Math.min(source.length, words));
+    }
+
+    /**
+     * The state of a single search. Nodes are numbered and their states, parents and costs are kept in flat arrays,
+     * the open list is a binary heap of node numbers and visited states are found through an open addressing table.
+     */
+    private final class Search {
+        // Nodes expanded between checks of the deadline
+        private static final int DEADLINE_CHECK = 128;
+
+        private final long[] goal;
+        private final int[] actions;
+        private final PlanningConfig.Search strategy;
+        private final double weight;
+        private final boolean max;
+        private final int maxNodes;
+        private final IncrementalPlanner.Memory memory;
+        // Facts that make up the states remembered in the memory
+        private final long[] keyMask;
+        private final int[] factCost = new int[facts];
+
+        // Nodes expanded so far, only kept when there is a memory to teach
+        private int[] expandedNodes = new int[64];
+        private int expandedCount;
+
+        private long[] states = new long[64 * words];
+        private int[] parent = new int[64];
+        private int[] action = new int[64];
+        private int[] g = new int[64];
+        private int[] f = new int[64];
+        private int[] h = new int[64];
+        // Times each node was pushed, a reopened node leaves a stale entry behind which may have the same priority
+        private int[] pushes = new int[64];
+        private int nodes;
+
+        // Heap entries carry the priority and the push of the node they were made by, only the latest push is expanded
+        private long[] heapKey = new long[64];
+        private int[] heapNode = new int[64];
+        private int[] heapPush = new int[64];
+        private int heapSize;
+
+        private int[] table = new int[128];
+
+        /**
+         * Creates a search from the initial state towards the goal.
+         *
+         * @param init The initial state.
+         * @param goal The goal bitset.
+         * @param actions The numbers of the actions to search over.
+         * @param config The planning configuration.
+         * @param memory What earlier searches learned, or null for none.
+         * @param keyMask The facts that make up the states remembered in the memory.
+         */
+        Search(long[] init, long[] goal, int[] actions, PlanningConfig config, IncrementalPlanner.Memory memory, long[] keyMask) {
+            this.goal = goal;
+            this.memory = memory;
+            this.keyMask = keyMask;
+            this.actions = actions;
+            this.strategy = config.getSearch();
+            this.weight = config.getWeight();
+            this.max = config.getHeuristic() == PlanningConfig.Heuristic.MAX;
+            this.maxNodes = config.getMaxNodes();
+            Arrays.fill(table, -1);
+            int heuristic = estimate(init, 0);
+            if (heuristic < INFINITY) {
+                int root = addNode(init, 0, -1, -1, 0, heuristic);
+                push(root);
+            }
+        }
+
+        /**
+         * Runs the search.
+         *
+         * @param deadline The deadline in System.nanoTime() terms, or 0 for none.
+         * @param cancellation The cancellation of the request, or null if it cannot be cancelled.
+         * @return The names of the actions in the plan, the best partial plan if the deadline passed or the node limit
+         * was reached, or empty if there is no plan or the request was cancelled.
+         */
+        List<String> run(long deadline, Cancellation cancellation) {
+            long[] next = new long[words];
+            int best = 0;
+            int expanded = 0;
+            while (heapSize > 0) {
+                int push = heapPush[0];
+                int node = pop();
+                if (push != pushes[node]) {continue;}
+                int offset = node * words;
+                if (satisfies(states, offset, goal)) {
+                    if (memory != null) {learn(node);}
+                    return extractPlan(node);
+                }
+                if (memory != null) {
+                    if (expandedCount == expandedNodes.length) {expandedNodes = Arrays.copyOf(expandedNodes, expandedCount * 2);}
+                    expandedNodes[expandedCount++] = node;
+                }
+
+                // Remember the node closest to the goal, preferring shorter paths
+                if (h[node] < h[best] || (h[node] == h[best] && g[node] < g[best])) {best = node;}
+                if (++expanded % DEADLINE_CHECK == 0) {
+                    if (cancellation != null && cancellation.isCancelled()) {return new ArrayList<>();}
+                    if (deadline != 0 && System.nanoTime() - deadline >= 0) {return extractPlan(best);}
+                }
+                if (maxNodes > 0 && nodes >= maxNodes) {return extractPlan(best);}
+
+                for (int a : actions) {
+                    if (!applicable(offset, a)) {continue;}
+                    int mask = a * words;
+                    for (int w = 0; w < words; w++) {
+                        next[w] = (states[offset + w] & ~del[mask + w]) | add[mask + w];
+                    }
+                    int cost = g[node] + 1;
+                    int existing = find(next, 0);
+                    if (existing >= 0) {
+                        // Reopen a known state only when a cheaper path was found
+                        if (cost >= g[existing]) {continue;}
+                        parent[existing] = node;
+                        action[existing] = a;
+                        g[existing] = cost;
+                        f[existing] = priority(cost, h[existing]);
+                        push(existing);
+                        continue;
+                    }
+                    int heuristic = estimate(next, 0);
+                    if (heuristic >= INFINITY) {continue;}
+                    push(addNode(next, 0, node, a, cost, heuristic));
+                }
+            }
+            return new ArrayList<>();
+        }
+
+        /**
+         * Orders nodes by the search strategy: A* by g + h, weighted A* by g + w * h and greedy search by h alone.
+         *
+         * @param cost The path cost g.
+         * @param heuristic The heuristic value h.
+         * @return The priority, lower is expanded first.
+         */
+        private int priority(int cost, int heuristic) {
+            if (strategy == PlanningConfig.Search.GREEDY) {return heuristic;}
+            if (strategy == PlanningConfig.Search.WEIGHTED_ASTAR) {return cost + (int) Math.min(INFINITY, Math.ceil(weight * heuristic));}
+            return cost + heuristic;
+        }
+
+        /**
+         * Checks if an action is applicable in a node's state.
+         *
+         * @param offset The offset of the state.
+         * @param a The action number.
+         * @return True if the action is applicable, false otherwise.
+         */
+        private boolean applicable(int offset, int a) {
+            int mask = a * words;
+            for (int w = 0; w < words; w++) {
+                long state = states[offset + w];
+                if ((state & pre[mask + w]) != pre[mask + w] || (state & preNegative[mask + w]) != 0) {return false;}
+            }
+            return true;
+        }
+
+        /**
+         * Gets the heuristic value of a state, from the memory if an earlier search met or learned it.
+         *
+         * @param state The state array.
+         * @param offset The offset of the state.
+         * @return The heuristic value, or INFINITY if a goal fact cannot be reached.
+         */
+        private int estimate(long[] state, int offset) {
+            if (memory == null) {return heuristic(state, offset);}
+            BitSet key = key(state, offset);
+            Integer known = memory.heuristic(key);
+            if (known != null) {return known;}
+            int heuristic = heuristic(state, offset);
+            memory.learnHeuristic(key, heuristic);
+            return heuristic;
+        }
+
+        /**
+         * Teaches the memory what this search found: each expanded state is at least the rest of the plan's cost from
+         * the goal, and each state on the plan gets the rest of the plan.
+         *
+         * @param goalNode The node that reached the goal.
+         */
+        private void learn(int goalNode) {
+            int total = g[goalNode];
+            for (int i = 0; i < expandedCount; i++) {
+                int n = expandedNodes[i];
+                if (total - g[n] > h[n]) {memory.learnHeuristic(stateOf(n), total - g[n]);}
+            }
+            List<String> plan = extractPlan(goalNode);
+            int step = plan.size();
+            for (int n = parent[goalNode]; n >= 0; n = parent[n]) {memory.learnPlan(stateOf(n), plan.subList(--step, plan.size()));}
+        }
+
+        private BitSet stateOf(int node) {
+            return key(states, node * words);
+        }
+
+        private BitSet key(long[] state, int offset) {
+            long[] key = Arrays.copyOfRange(state, offset, offset + words);
+            for (int w = 0; w < words; w++) {key[w] &= keyMask[w];}
+            return BitSet.valueOf(key);
+        }
+
+        /**
+         * Computes the additive heuristic: the sum over the goal facts of the relaxed cost of reaching each fact.
+         * With the MAX heuristic the costs of preconditions and goal facts are combined by their maximum instead, which
+         * never overestimates, so A* finds optimal plans.
+         *
+         * @param state The state array.
+         * @param offset The offset of the state.
+         * @return The heuristic value, or INFINITY if a goal fact cannot be reached.
+         */
+        private int heuristic(long[] state, int offset) {
+            for (int i = 0; i < facts; i++) {
+                factCost[i] = (state[offset + (i >>> 6)] & (1L << i)) != 0 ? 0 : INFINITY;
+            }
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int a : actions) {
+                    int cost = 1;
+                    for (int p : preFacts[a]) {
+                        cost = max ? Math.max(cost, factCost[p] + 1) : cost + factCost[p];
+                        if (cost >= INFINITY) {break;}
+                    }
+                    if (cost >= INFINITY) {continue;}
+                    for (int e : addFacts[a]) {
+                        if (cost < factCost[e]) {
+                            factCost[e] = cost;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            int sum = 0;
+            for (int w = 0; w < words; w++) {
+                long bits = goal[w];
+                while (bits != 0) {
+                    int fact = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    sum = max ? Math.max(sum, factCost[fact]) : sum + factCost[fact];
+                    if (sum >= INFINITY) {return INFINITY;}
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * Walks back from a goal node to the initial state.
+         *
+         * @param node The goal node.
+         * @return The names of the actions in the plan.
+         */
+        private List<String> extractPlan(int node) {
+            List<String> plan = new ArrayList<>();
+            for (int n = node; parent[n] >= 0; n = parent[n]) {plan.add(names[action[n]]);}
+            Collections.reverse(plan);
+            return plan;
+        }
+
+        /**
+         * Stores a new node and indexes its state.
+         *
+         * @return The node number.
+         */
+        private int addNode(long[] state, int offset, int parentNode, int a, int cost, int heuristic) {
+            if (nodes == parent.length) {
+                int capacity = nodes * 2;
+                states = Arrays.copyOf(states, capacity * words);
+                parent = Arrays.copyOf(parent, capacity);
+                action = Arrays.copyOf(action, capacity);
+                g = Arrays.copyOf(g, capacity);
+                f = Arrays.copyOf(f, capacity);
+                h = Arrays.copyOf(h, capacity);
+                pushes = Arrays.copyOf(pushes, capacity);
+            }
+            int node = nodes++;
+            System.arraycopy(state, offset, states, node * words, words);
+            parent[node] = parentNode;
+            action[node] = a;
+            g[node] = cost;
+            h[node] = heuristic;
+            f[node] = priority(cost, heuristic);
+
+            if (nodes * 2 > table.length) {rehash();}
+            insert(node);
+            return node;
+        }
+
+        /**
+         * Finds the node holding a state.
+         *
+         * @return The node number, or -1 if the state has not been seen.
+         */
+        private int find(long[] state, int offset) {
+            int mask = table.length - 1;
+            for (int slot = hash(state, offset) & mask; table[slot] >= 0; slot = (slot + 1) & mask) {
+                if (Arrays.equals(states, table[slot] * words, table[slot] * words + words, state, offset, offset + words)) {
+                    return table[slot];
+                }
+            }
+            return -1;
+        }
+
+        private void insert(int node) {
+            int mask = table.length - 1;
+            int slot = hash(states, node * words) & mask;
+            while (table[slot] >= 0) {slot = (slot + 1) & mask;}
+            table[slot] = node;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            Arrays.fill(table, -1);
+            for (int n = 0; n < nodes; n++) {insert(n);}
+        }
+
+        private int hash(long[] state, int offset) {
+            long hash = 0;
+            for (int w = 0; w < words; w++) {hash = hash * 31 + state[offset + w];}
+            return (int) (hash ^ (hash >>> 32)) * 0x9E3779B9;
+        }
+
+        /**
+         * Pushes a node ordered by f, breaking ties towards the lower heuristic value.
+         */
+        private void push(int node) {
+            if (heapSize == heapKey.length) {
+                heapKey = Arrays.copyOf(heapKey, heapSize * 2);
+                heapNode = Arrays.copyOf(heapNode, heapSize * 2);
+                heapPush = Arrays.copyOf(heapPush, heapSize * 2);
+            }
+            long key = ((long) f[node] << 32) | h[node];
+            int push = ++pushes[node];
+            int i = heapSize++;
+            while (i > 0) {
+                int up = (i - 1) >>> 1;
+                if (heapKey[up] <= key) {break;}
+                heapKey[i] = heapKey[up];
+                heapNode[i] = heapNode[up];
+                heapPush[i] = heapPush[up];
+                i = up;
+            }
+            heapKey[i] = key;
+            heapNode[i] = node;
+            heapPush[i] = push;
+        }
+
+        private int pop() {
+            int top = heapNode[0];
+            long key = heapKey[--heapSize];
+            int node = heapNode[heapSize];
+            int push = heapPush[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {break;}
+                if (child + 1 < heapSize && heapKey[child + 1] < heapKey[child]) {child++;}
+                if (key <= heapKey[child]) {break;}
+                heapKey[i] = heapKey[child];
+                heapNode[i] = heapNode[child];
+                heapPush[i] = heapPush[child];
+                i = child;
+            }
+            heapKey[i] = key;
+            heapNode[i] = node;
+            heapPush[i] = push;
+            return top;
+        }
+    }
+
+    /**
+     * Checks if a state contains every fact of a bitset.
+     *
+     * @param states The state array.
+     * @param offset The offset of the state.
+     * @param bits The bitset to check.
+     * @return True if every fact is present, false otherwise.
+     */
+    private static boolean satisfies(long[] states, int offset, long[] bits) {
+        for (int w = 0; w < bits.length; w++) {
+            if ((states[offset + w] & bits[w]) != bits[w]) {return false;}
+        }
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jason.asSemantics.Agent;
+import jason.asSyntax.Literal;
+
+/**
+ * The ActionBenchmark class measures Action.startAction on an agent outside a running MAS: an action whose
+ * preconditions hold, an action that needs a one step recovery, and a full recovery cycle for each type of planning.
+ * Applying large effect lists is measured as one BeliefUpdate and as one addBel or delBel per belief.
+ * The agent's beliefs are reset before every call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionBenchmark {
+    /**
+     * An agent and the action runner, with the plan cache disabled so every recovery plans.
+     */
+    @State(Scope.Thread)
+    public static class AgentState {
+        Agent ag;
+        Action action = new Action();
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            BenchmarkAgent.silenceLogging();
+            PlanCache.getInstance().setCapacity(0);
+            ag = BenchmarkAgent.create("bench");
+        }
+    }
+
+    /**
+     * The type of planning used by the recovery cycle.
+     */
+    @State(Scope.Thread)
+    public static class RecoveryState extends AgentState {
+        @Param({"2", "3", "4"})
+        public int typeOfPlanning;
+
+        @Setup(Level.Trial)
+        public void choosePlanning() {
+            action = new Action(typeOfPlanning);
+        }
+
+        @Setup(Level.Invocation)
+        public void resetBeliefs() throws Exception {
+            BenchmarkAgent.reset(ag);
+        }
+    }
+
+    /**
+     * An action that deletes as many beliefs as it adds, with the agent holding the beliefs it deletes.
+     */
+    @State(Scope.Thread)
+    public static class EffectState extends AgentState {
+        @Param({"1", "16", "128"})
+        public int effects;
+
+        String[] held;
+        List<Literal> beliefsToAdd;
+        List<Literal> beliefsToDelete;
+
+        @Setup(Level.Trial)
+        public void createEffects() {
+            held = new String[effects];
+            for (int i = 0; i < effects; i++) {held[i] = "old" + i;}
+        }
+
+        @Setup(Level.Invocation)
+        public void resetBeliefs() throws Exception {
+            BenchmarkAgent.reset(ag, held);
+            beliefsToAdd = new ArrayList<>();
+            beliefsToDelete = new ArrayList<>();
+            for (int i = 0; i < effects; i++) {
+                beliefsToAdd.add(Literal.parseLiteral("new" + i));
+                beliefsToDelete.add(Literal.parseLiteral(held[i]));
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean startActionSatisfied(AgentState state) throws Exception {
+        BenchmarkAgent.reset(state.ag, "hasPhone");
+        return state.action.startAction(state.ag, "usephone");
+    }
+
+    @Benchmark
+    public boolean startActionUnsatisfied(AgentState state) throws Exception {
+        BenchmarkAgent.reset(state.ag);
+        return state.action.startAction(state.ag, "buyphone");
+    }
+
+    @Benchmark
+    public boolean applyEffectsBatched(EffectState state) {
+        return state.action.runAction(state.ag, "effects", null, state.beliefsToAdd, state.beliefsToDelete);
+    }
+
+    @Benchmark
+    public boolean applyEffectsEach(EffectState state) throws Exception {
+        // How runAction applied effects before BeliefUpdate, one belief revision and event update per belief
+        for (Literal belief : state.beliefsToAdd) {state.ag.addBel(belief);}
+        for (Literal belief : state.beliefsToDelete) {state.ag.delBel(belief);}
+        return true;
+    }
+
+    @Benchmark
+    public boolean recoveryCycle(RecoveryState state) {
+        // textfriend needs money, a phone and being on it: a three step recovery from no beliefs
+        return state.action.startAction(state.ag, "textfriend");
+    }
+}
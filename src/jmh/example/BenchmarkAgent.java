@@ -0,0 +1,62 @@
+package example;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jason.architecture.AgArch;
+import jason.asSemantics.Agent;
+import jason.asSemantics.Circumstance;
+import jason.asSemantics.TransitionSystem;
+import jason.asSyntax.Literal;
+import jason.runtime.Settings;
+
+/**
+ * The BenchmarkAgent class creates agents that are not part of a running MAS, for benchmarks that execute actions.
+ * The agents have a belief base and a name but never run a reasoning cycle.
+ */
+public class BenchmarkAgent {
+    // Held so the level set on it is not lost when the logger is garbage collected
+    private static final Logger projectLogger = Logger.getLogger("t1");
+
+    /**
+     * Silences the project's loggers, which would otherwise dominate the measurements.
+     */
+    public static void silenceLogging() {
+        projectLogger.setLevel(Level.OFF);
+    }
+
+    /**
+     * Creates an agent holding the given beliefs.
+     * initAg is not called, as it would start the mind inspector.
+     *
+     * @param name The name of the agent.
+     * @param beliefs The initial beliefs.
+     * @return The agent.
+     * @throws Exception If a belief cannot be added.
+     */
+    public static Agent create(String name, String... beliefs) throws Exception {
+        Agent ag = new Agent();
+        ag.setBB(new FactBeliefBase());
+        AgArch arch = new AgArch() {
+            @Override
+            public String getAgName() {
+                return name;
+            }
+        };
+        new TransitionSystem(ag, new Circumstance(), new Settings(), arch);
+        reset(ag, beliefs);
+        return ag;
+    }
+
+    /**
+     * Replaces the agent's beliefs.
+     *
+     * @param ag The agent.
+     * @param beliefs The beliefs to hold.
+     * @throws Exception If a belief cannot be added.
+     */
+    public static void reset(Agent ag, String... beliefs) throws Exception {
+        ag.getBB().clear();
+        for (String belief : beliefs) {ag.addBel(Literal.parseLiteral(belief));}
+    }
+}
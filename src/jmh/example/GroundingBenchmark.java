@@ -0,0 +1,108 @@
+package example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.fr.uga.pddl4j.parser.Parser;
+
+/**
+ * The GroundingBenchmark class measures grounding a lifted domain over a growing number of objects, instantiating
+ * only the actions reachable from the beliefs against instantiating every action over objects of the right types.
+ * A world of size n has n locations joined by roads in a ring and n/4 items lying at some of them. The agent can go
+ * along a road and pick up an item where it is, so most pairs of locations never have a go action.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroundingBenchmark {
+    @Param({"10", "50", "200"})
+    public int size;
+
+    @Param({"reachable", "full"})
+    public String grounding;
+
+    private Path file;
+    private Grounder grounder;
+    private Grounder.World world;
+    private List<String> beliefs;
+
+    @Setup
+    public void setup() throws Exception {
+        file = Files.createTempFile("lifted" + size, ".pddl");
+        Files.write(file, ringDomain().getBytes(StandardCharsets.UTF_8));
+        Parser parser = new Parser();
+        parser.parseDomain(file.toString());
+        grounder = new Grounder(parser.getDomain());
+        beliefs = ringBeliefs(size);
+        world = grounder.world(beliefs);
+        List<String> goals = new ArrayList<>();
+        goals.add("has(i" + (size / 4 - 1) + ")");
+        if (DomainCache.load(file.toString()).ground(beliefs).getStripsPlanner().plan(beliefs, goals).isEmpty()) {throw new IllegalStateException("No plan for size " + size);}
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Grounds the domain over the objects of the beliefs.
+     *
+     * @return The number of ground actions.
+     */
+    @Benchmark
+    public int ground() {
+        return grounder.ground(world, grounding.equals("full") ? null : new HashSet<>(world.getFluents())).getActions();
+    }
+
+    /**
+     * Gets the lifted domain of locations, roads and items.
+     *
+     * @return The PDDL text of the domain.
+     */
+    static String ringDomain() {
+        return "(define (domain ring)\n"
+            + "  (:requirements :strips :typing)\n"
+            + "  (:types location item - object)\n"
+            + "  (:predicates (at ?l - location) (road ?from - location ?to - location) (lying ?i - item ?l - location) (has ?i - item) (dummyPredicate))\n"
+            + "  (:action go :parameters (?from - location ?to - location) :precondition (and (at ?from) (road ?from ?to)) :effect (and (at ?to) (not (at ?from))))\n"
+            + "  (:action pick :parameters (?i - item ?l - location) :precondition (and (at ?l) (lying ?i ?l)) :effect (and (has ?i) (not (lying ?i ?l))))\n"
+            + ")\n";
+    }
+
+    /**
+     * Gets the beliefs of an agent at the first of n locations in a ring, with an item at every fourth location.
+     *
+     * @param n The number of locations.
+     * @return The beliefs.
+     */
+    static List<String> ringBeliefs(int n) {
+        List<String> beliefs = new ArrayList<>();
+        beliefs.add("at(l0)");
+        for (int i = 0; i < n; i++) {beliefs.add("road(l" + i + ",l" + (i + 1) % n + ")");}
+        for (int i = 0; i < n / 4; i++) {beliefs.add("lying(i" + i + ",l" + (4 * i + 3) + ")");}
+        return beliefs;
+    }
+}
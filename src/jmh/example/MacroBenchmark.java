@@ -0,0 +1,91 @@
+package example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The MacroBenchmark class measures the built-in STRIPS planner on a recurring repair with and without the macros the
+ * MacroLibrary would learn from it. The domain is the chain of SyntheticDomainBenchmark, and each macro is the merge
+ * of the next 4 steps along the chain, as compiled from recoveries that executed them, so the plan is about a quarter
+ * as deep.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MacroBenchmark {
+    @Param({"8", "32", "128"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean macros;
+
+    private Path file;
+    private DomainCache domain;
+    private List<String> beliefs;
+    private List<String> goals;
+
+    @Setup
+    public void setup() throws Exception {
+        String pddl = SyntheticDomainBenchmark.chainDomain(size);
+        if (macros) {pddl = pddl.substring(0, pddl.lastIndexOf(')')) + chainMacros(size) + ")\n";}
+        file = Files.createTempFile("macro" + size, ".pddl");
+        Files.write(file, pddl.getBytes(StandardCharsets.UTF_8));
+        domain = DomainCache.load(file.toString());
+        beliefs = new ArrayList<>();
+        goals = new ArrayList<>();
+        goals.add("p" + size);
+        goals.add("q" + size / 2);
+        if (plan() > size + 2) {throw new IllegalStateException("Unexpected plan length for size " + size);}
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Plans from the empty state to the goal.
+     *
+     * @return The number of steps in the plan, a macro counting as one.
+     */
+    @Benchmark
+    public int plan() {
+        return domain.getStripsPlanner().plan(beliefs, goals, 0, domain.getRelevanceAnalysis().analyse(goals)).size();
+    }
+
+    /**
+     * Writes the merged macros of the chain taken 4 steps at a time, from p(i-1) to p(i+3).
+     *
+     * @param n The length of the chain.
+     * @return The PDDL text of the macro actions.
+     */
+    static String chainMacros(int n) {
+        StringBuilder pddl = new StringBuilder();
+        for (int i = 1; i + 3 <= n; i += 4) {
+            pddl.append("  (:action macro").append(i).append(" :parameters () :precondition (p").append(i - 1)
+                .append(") :effect (and (p").append(i + 3).append(") (not (p").append(i - 1).append("))))\n");
+        }
+        return pddl.toString();
+    }
+}
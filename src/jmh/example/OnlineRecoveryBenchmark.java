@@ -0,0 +1,99 @@
+package example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The OnlineRecoveryBenchmark class measures a whole online recovery on the chain domains of SyntheticDomainBenchmark:
+ * plan, execute the first step and plan again until the goal holds. The built-in STRIPS planner searches from scratch
+ * at every step, the incremental planner continues from what its last search learned.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OnlineRecoveryBenchmark {
+    @Param({"8", "32", "128"})
+    public int size;
+
+    @Param({"strips", "incremental"})
+    public String planner;
+
+    private Path file;
+    private DomainCache domain;
+    private List<String> goals;
+
+    @Setup
+    public void setup() throws Exception {
+        file = Files.createTempFile("online" + size, ".pddl");
+        Files.write(file, SyntheticDomainBenchmark.chainDomain(size).getBytes(StandardCharsets.UTF_8));
+        domain = DomainCache.load(file.toString());
+        goals = new ArrayList<>();
+        goals.add("p" + size);
+        goals.add("q" + size / 2);
+        if (recover() != size + 2) {throw new IllegalStateException("Unexpected recovery length for size " + size);}
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Recovers from the empty state one planned step at a time.
+     *
+     * @return The number of steps executed.
+     */
+    @Benchmark
+    public int recover() {
+        domain.getIncrementalPlanner().forget("bench");
+        Relevance relevance = domain.getRelevanceAnalysis().analyse(goals);
+        List<String> beliefs = new ArrayList<>();
+        int steps = 0;
+        while (!beliefs.containsAll(goals)) {
+            List<String> plan = planner.equals("incremental")
+                ? domain.getIncrementalPlanner().plan("bench", beliefs, goals, 0, relevance, PlanningConfig.DEFAULT, null)
+                : domain.getStripsPlanner().plan(beliefs, goals, 0, relevance);
+            if (plan.isEmpty()) {throw new IllegalStateException("No plan after " + steps + " steps");}
+            execute(beliefs, plan.get(0).toLowerCase());
+            steps++;
+        }
+        return steps;
+    }
+
+    /**
+     * Applies an action of the chain domain to the beliefs.
+     *
+     * @param beliefs The beliefs.
+     * @param action The name of the action, stepi or sidei.
+     */
+    private static void execute(List<String> beliefs, String action) {
+        if (action.startsWith("side")) {
+            beliefs.add("q" + action.substring(4));
+            return;
+        }
+        int i = Integer.parseInt(action.substring(4));
+        if (i > 0) {beliefs.remove("p" + (i - 1));}
+        beliefs.add("p" + i);
+    }
+}
@@ -0,0 +1,73 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The PlannerScalingBenchmark class measures planning throughput as more agents plan at the same time.
+ * Each simulated agent calls RunPlanner.run in a loop, with the plan cache disabled so every call searches.
+ */
+public class PlannerScalingBenchmark {
+    // Beliefs and goals the simulated agents plan between
+    private static final String[][] BELIEFS = {{}, {"hasCar"}, {"hasMoney"}, {"hasPhone", "hasCar"}};
+    private static final String[][] GOALS = {{"onPhone"}, {"messageSent", "atWork"}, {"hasPhone"}, {"bossHappy"}};
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Optional choice of planner (default 2) and seconds per measurement (default 3).
+     * @throws Exception If the benchmark is interrupted.
+     */
+    public static void main(String[] args) throws Exception {
+        int choiceOfPlanner = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 3;
+        int cores = Runtime.getRuntime().availableProcessors();
+        PlanCache.getInstance().setCapacity(0);
+
+        // Warm up the domain cache and the JIT
+        measure(choiceOfPlanner, cores, 1);
+
+        System.out.println("planner " + choiceOfPlanner + ", " + cores + " cores");
+        System.out.println("agents\tplans/s");
+        for (int agents = 1; agents <= 2 * cores; agents *= 2) {
+            System.out.printf("%d\t%.0f%n", agents, measure(choiceOfPlanner, agents, seconds));
+        }
+    }
+
+    /**
+     * Measures throughput with a number of agents planning concurrently.
+     *
+     * @param choiceOfPlanner The choice of planner.
+     * @param agents The number of concurrent agents.
+     * @param seconds How long to measure for.
+     * @return The number of plans found per second.
+     * @throws InterruptedException If the benchmark is interrupted.
+     */
+    private static double measure(int choiceOfPlanner, int agents, long seconds) throws InterruptedException {
+        AtomicLong plans = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(agents);
+        for (int a = 0; a < agents; a++) {
+            String agName = "agent" + a;
+            new Thread(() -> {
+                int i = 0;
+                while (System.nanoTime() < deadline) {
+                    int problem = i++ % GOALS.length;
+                    List<String> plan = RunPlanner.run(agName, list(BELIEFS[problem]), list(GOALS[problem]), choiceOfPlanner);
+                    if (plan != null && !plan.isEmpty()) {plans.incrementAndGet();}
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        return plans.get() / (double) seconds;
+    }
+
+    private static List<String> list(String[] facts) {
+        List<String> list = new ArrayList<>();
+        for (String fact : facts) {list.add(fact);}
+        return list;
+    }
+}
@@ -0,0 +1,62 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The PlanningBenchmark class measures RunPlanner.run for each choice of planner on the problems of domain.pddl.
+ * The plan cache is disabled so every call searches. FF (1) needs ./ff and is only run when asked for with
+ * -p choiceOfPlanner=1.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlanningBenchmark {
+    // Beliefs and goals of the problems, from already solved to several steps away
+    private static final String[][] BELIEFS = {{"hasPhone", "onPhone"}, {}, {"hasCar"}, {"hasMoney"}};
+    private static final String[][] GOALS = {{"onPhone"}, {"messageSent"}, {"atWork", "bossHappy"}, {"onPhone"}};
+
+    @Param({"2", "3", "4"})
+    public int choiceOfPlanner;
+
+    @Param({"0", "1", "2", "3"})
+    public int problem;
+
+    private List<String> beliefs;
+    private List<String> goals;
+
+    @Setup
+    public void setup() throws Exception {
+        PlanCache.getInstance().setCapacity(0);
+        DomainCache.getInstance();
+        beliefs = list(BELIEFS[problem]);
+        goals = list(GOALS[problem]);
+    }
+
+    @Benchmark
+    public List<String> run() {
+        return RunPlanner.run("bench", beliefs, goals, choiceOfPlanner);
+    }
+
+    static List<String> list(String[] facts) {
+        List<String> list = new ArrayList<>();
+        for (String fact : facts) {list.add(fact);}
+        return list;
+    }
+}
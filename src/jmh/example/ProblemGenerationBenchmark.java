@@ -0,0 +1,61 @@
+package example;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The ProblemGenerationBenchmark class measures building PDDL problems in memory and writing them to disk, for belief
+ * bases of growing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProblemGenerationBenchmark {
+    @Param({"4", "64", "1024"})
+    public int beliefCount;
+
+    private List<String> beliefs;
+    private List<String> goals;
+
+    @Setup
+    public void setup() {
+        beliefs = new ArrayList<>();
+        for (int i = 0; i < beliefCount; i++) {beliefs.add("belief" + i);}
+        goals = new ArrayList<>();
+        goals.add("hasPhone");
+        goals.add("onPhone");
+    }
+
+    @Benchmark
+    public String build() {
+        return PDDLGenerator.build(beliefs, goals);
+    }
+
+    @Benchmark
+    public void generate() {
+        PDDLGenerator.generate("bench", beliefs, goals);
+    }
+
+    @TearDown
+    public void tearDown() {
+        new File("benchproblem.pddl").delete();
+    }
+}
@@ -0,0 +1,119 @@
+package example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.fr.uga.pddl4j.encoding.CodedProblem;
+import main.java.fr.uga.pddl4j.planners.hsp.AStarPlanner;
+import main.java.fr.uga.pddl4j.util.SequentialPlan;
+
+/**
+ * The SyntheticDomainBenchmark class measures the planners on generated domains of growing size, to track how the
+ * planning core scales.
+ * A domain of size n is a chain p0, ..., pn where each step deletes the previous fact, with a side action from every
+ * pi to qi. The goal is pn together with q(n/2), so the plan has n + 2 steps and every side action is a distraction
+ * except one. Relevance pruning removes the other side actions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyntheticDomainBenchmark {
+    @Param({"8", "32", "128"})
+    public int size;
+
+    @Param({"strips", "pddl4j"})
+    public String planner;
+
+    @Param({"true", "false"})
+    public boolean prune;
+
+    private Path file;
+    private DomainCache domain;
+    private List<String> beliefs;
+    private List<String> goals;
+
+    @Setup
+    public void setup() throws Exception {
+        file = Files.createTempFile("synthetic" + size, ".pddl");
+        Files.write(file, chainDomain(size).getBytes(StandardCharsets.UTF_8));
+        domain = DomainCache.load(file.toString());
+        beliefs = new ArrayList<>();
+        goals = new ArrayList<>();
+        goals.add("p" + size);
+        goals.add("q" + size / 2);
+        if (plan() != size + 2) {throw new IllegalStateException("Unexpected plan length for size " + size);}
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Plans from the empty state to the goal, with or without pruning the actions irrelevant to the goal first.
+     *
+     * @return The length of the plan.
+     */
+    @Benchmark
+    public int plan() {
+        Relevance relevance = prune ? domain.getRelevanceAnalysis().analyse(goals) : null;
+        if (planner.equals("strips")) {return domain.getStripsPlanner().plan(beliefs, goals, 0, relevance).size();}
+        CodedProblem problem = prune ? domain.encode(beliefs, goals, relevance) : domain.encode(beliefs, goals);
+        SequentialPlan plan = new AStarPlanner(domain.getArguments()).search(problem);
+        return plan == null ? 0 : plan.size();
+    }
+
+    /**
+     * Checks that the goal is reachable, the test RunPlanner makes before every search.
+     *
+     * @return True if the goal is reachable.
+     */
+    @Benchmark
+    public boolean reachable() {
+        return domain.getRelaxedPlanningGraph().reachable(beliefs, goals);
+    }
+
+    /**
+     * Writes the chain domain of the given size.
+     *
+     * @param n The length of the chain.
+     * @return The PDDL text of the domain.
+     */
+    static String chainDomain(int n) {
+        StringBuilder pddl = new StringBuilder();
+        pddl.append("(define (domain chain").append(n).append(")\n  (:requirements :strips)\n  (:predicates (dummyPredicate)");
+        for (int i = 0; i <= n; i++) {pddl.append(" (p").append(i).append(") (q").append(i).append(")");}
+        pddl.append(")\n");
+        pddl.append("  (:action step0 :parameters () :precondition (dummyPredicate) :effect (p0))\n");
+        for (int i = 1; i <= n; i++) {
+            pddl.append("  (:action step").append(i).append(" :parameters () :precondition (p").append(i - 1)
+                .append(") :effect (and (p").append(i).append(") (not (p").append(i - 1).append("))))\n");
+        }
+        for (int i = 0; i <= n; i++) {
+            pddl.append("  (:action side").append(i).append(" :parameters () :precondition (p").append(i)
+                .append(") :effect (q").append(i).append("))\n");
+        }
+        return pddl.append(")\n").toString();
+    }
+}
@@ -0,0 +1,102 @@
+package example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import jason.architecture.AgArch;
+import jason.asSemantics.Agent;
+import jason.asSemantics.Circumstance;
+import jason.asSemantics.Event;
+import jason.asSemantics.TransitionSystem;
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Literal;
+import jason.asSyntax.PlanLibrary;
+import jason.runtime.Settings;
+
+/**
+ * Tests that BeliefUpdate applies the effects of an action all together or not at all.
+ */
+public class BeliefUpdateTest {
+    private Agent ag;
+
+    /**
+     * A belief base that cannot add the belief boom, so belief revision fails partway through a batch.
+     */
+    private static class FailingBeliefBase extends FactBeliefBase {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean add(Literal l, boolean addInEnd) {
+            if (l.getFunctor().equals("boom")) {throw new IllegalStateException("Cannot add " + l);}
+            return super.add(l, addInEnd);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ag = new Agent();
+        ag.setBB(new FailingBeliefBase());
+        ag.setPL(new PlanLibrary());
+        new TransitionSystem(ag, new Circumstance(), new Settings(), new AgArch());
+        // Plans for the changes, so each of them would raise an event
+        ag.getPL().add(ASSyntax.parsePlan("+a <- .print(a)."));
+        ag.getPL().add(ASSyntax.parsePlan("+b <- .print(b)."));
+        ag.getPL().add(ASSyntax.parsePlan("-c <- .print(c)."));
+        ag.addBel(Literal.parseLiteral("c"));
+        ag.addBel(Literal.parseLiteral("d"));
+        ag.getTS().getC().clearEvents();
+    }
+
+    @Test
+    public void appliesEveryEffectAndRaisesTheirEvents() {
+        assertTrue(BeliefUpdate.apply(ag, literals("a", "b"), literals("c")));
+        assertEquals(new TreeSet<>(Arrays.asList("a", "b", "d")), beliefs());
+        assertEquals(new TreeSet<>(Arrays.asList("a", "b", "d")), new TreeSet<>(FactTable.names(FactTable.snapshot(ag))));
+        assertEquals(new TreeSet<>(Arrays.asList("+a", "+b", "-c")), events());
+    }
+
+    @Test
+    public void keepsABeliefThatIsDeletedAndAdded() {
+        assertTrue(BeliefUpdate.apply(ag, literals("d"), literals("d")));
+        assertEquals(new TreeSet<>(Arrays.asList("c", "d")), beliefs());
+        assertTrue(events().isEmpty());
+    }
+
+    @Test
+    public void failedRevisionLeavesTheBeliefBaseUnchanged() {
+        assertFalse(BeliefUpdate.apply(ag, literals("a", "boom", "b"), literals("c")));
+        assertEquals(new TreeSet<>(Arrays.asList("c", "d")), beliefs());
+        assertEquals(new TreeSet<>(Arrays.asList("c", "d")), new TreeSet<>(FactTable.names(FactTable.snapshot(ag))));
+        assertTrue(events().isEmpty());
+    }
+
+    private static List<Literal> literals(String... beliefs) {
+        List<Literal> literals = new ArrayList<>();
+        for (String belief : beliefs) {literals.add(Literal.parseLiteral(belief));}
+        return literals;
+    }
+
+    private Set<String> beliefs() {
+        Set<String> beliefs = new TreeSet<>();
+        for (Literal belief : ag.getBB()) {beliefs.add(belief.getFunctor());}
+        return beliefs;
+    }
+
+    private Set<String> events() {
+        Set<String> events = new TreeSet<>();
+        for (Event event : ag.getTS().getC().getEvents()) {
+            events.add(event.getTrigger().getOperator() + event.getTrigger().getLiteral().getFunctor());
+        }
+        return events;
+    }
+}
@@ -0,0 +1,138 @@
+package example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import main.java.fr.uga.pddl4j.encoding.CodedProblem;
+import main.java.fr.uga.pddl4j.parser.NamedTypedList;
+import main.java.fr.uga.pddl4j.parser.Parser;
+import main.java.fr.uga.pddl4j.planners.hsp.AStarPlanner;
+import main.java.fr.uga.pddl4j.util.SequentialPlan;
+
+/**
+ * Tests the built-in STRIPS planner on random problems of the shipped domain against PDDL4J.
+ */
+public class StripsPlannerTest {
+    // Number of random problems, and the seed they are drawn with so a failure can be repeated
+    private static final int PROBLEMS = 237;
+    private static final long SEED = 42;
+
+    private static DomainCache domain;
+    private static StripsPlanner planner;
+    private static List<String> facts;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        domain = DomainCache.load(DomainCache.DOMAIN_FILE);
+        planner = domain.getStripsPlanner();
+        Parser parser = new Parser();
+        parser.parseDomain(DomainCache.DOMAIN_FILE);
+        facts = new ArrayList<>();
+        for (NamedTypedList predicate : parser.getDomain().getPredicates()) {
+            String name = predicate.getName().getImage();
+            if (!name.equalsIgnoreCase("dummyPredicate")) {facts.add(name);}
+        }
+    }
+
+    @Test
+    public void solvesTheSameProblemsAsPddl4j() {
+        Random random = new Random(SEED);
+        int solved = 0;
+        for (int i = 0; i < PROBLEMS; i++) {
+            List<String> beliefs = sample(random, 0.4);
+            List<String> goals = missing(beliefs, sample(random, 0.15));
+            if (goals.isEmpty()) {continue;}
+            List<String> plan = planner.plan(beliefs, goals);
+            boolean expected = pddl4j(beliefs, goals) != null;
+            assertEquals("Solvability of " + goals + " from " + beliefs, expected, !plan.isEmpty());
+            if (!plan.isEmpty()) {
+                assertTrue("Plan " + plan + " reaches " + goals + " from " + beliefs, planner.reaches(beliefs, plan, goals));
+                solved++;
+            }
+        }
+        assertTrue("Some random problems are solvable", solved > 0);
+    }
+
+    @Test
+    public void everySearchStrategyFindsValidPlans() {
+        PlanningConfig optimal = PlanningConfig.DEFAULT.withHeuristic(PlanningConfig.Heuristic.MAX);
+        PlanningConfig[] configs = {
+            PlanningConfig.DEFAULT,
+            PlanningConfig.DEFAULT.withSearch(PlanningConfig.Search.WEIGHTED_ASTAR).withWeight(3),
+            PlanningConfig.DEFAULT.withSearch(PlanningConfig.Search.GREEDY),
+            PlanningConfig.DEFAULT.withSearch(PlanningConfig.Search.GREEDY).withHeuristic(PlanningConfig.Heuristic.MAX)
+        };
+        Random random = new Random(SEED + 1);
+        for (int i = 0; i < PROBLEMS; i++) {
+            List<String> beliefs = sample(random, 0.4);
+            List<String> goals = missing(beliefs, sample(random, 0.15));
+            if (goals.isEmpty()) {continue;}
+            // A* with an admissible heuristic finds the shortest plan, so no strategy's plan is shorter
+            List<String> shortest = planner.plan(beliefs, goals, 0, null, optimal);
+            for (PlanningConfig config : configs) {
+                List<String> plan = planner.plan(beliefs, goals, 0, null, config);
+                assertEquals(config + " solvability of " + goals + " from " + beliefs, shortest.isEmpty(), plan.isEmpty());
+                if (plan.isEmpty()) {continue;}
+                assertTrue(config + " plan " + plan + " reaches " + goals, planner.reaches(beliefs, plan, goals));
+                assertTrue(config + " plan " + plan + " is shorter than " + shortest, plan.size() >= shortest.size());
+            }
+        }
+    }
+
+    @Test
+    public void returnsAPartialPlanAtTheNodeLimit() {
+        List<String> beliefs = new ArrayList<>();
+        List<String> goals = new ArrayList<>();
+        goals.add("onPhone");
+        List<String> full = planner.plan(beliefs, goals);
+        assertTrue(full.size() > 1);
+        List<String> partial = planner.plan(beliefs, goals, 0, null, PlanningConfig.DEFAULT.withMaxNodes(2));
+        assertFalse(partial.isEmpty());
+        assertTrue("Partial plan " + partial + " is shorter than " + full, partial.size() < full.size());
+        assertEquals(full.subList(0, partial.size()), partial);
+        assertFalse(planner.reaches(beliefs, partial, goals));
+    }
+
+    @Test
+    public void findsNoPlanForAnUnknownGoal() {
+        List<String> goals = new ArrayList<>();
+        goals.add("noSuchPredicate");
+        assertTrue(planner.plan(new ArrayList<>(), goals).isEmpty());
+    }
+
+    /**
+     * Draws a random set of the domain's facts.
+     */
+    private static List<String> sample(Random random, double probability) {
+        List<String> sample = new ArrayList<>();
+        for (String fact : facts) {
+            if (random.nextDouble() < probability) {sample.add(fact);}
+        }
+        return sample;
+    }
+
+    private static List<String> missing(List<String> beliefs, List<String> goals) {
+        List<String> missing = new ArrayList<>(goals);
+        missing.removeAll(beliefs);
+        return missing;
+    }
+
+    /**
+     * Solves a problem with PDDL4J's A* planner.
+     *
+     * @return The plan, or null if PDDL4J found none.
+     */
+    private static SequentialPlan pddl4j(List<String> beliefs, List<String> goals) {
+        CodedProblem problem = domain.encode(beliefs, goals);
+        if (problem == null) {return null;}
+        return new AStarPlanner(domain.getArguments()).search(problem);
+    }
+}